@@ -0,0 +1,138 @@
+package crux;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Compiles the programs of the stage tests on many threads at the same time and checks that every
+ * compilation prints exactly what it prints when it runs alone.
+ */
+final class ConcurrencyTests {
+  private static final int ROUNDS = 20;
+  private static final int THREADS = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+
+  private static final List<Consumer<Driver>> CONFIGURATIONS = List.of(
+      Driver::enablePrintAst,
+      driver -> {
+        driver.enableTypeCheck();
+        driver.enableIncludeTypes();
+      },
+      Driver::enableEmulator,
+      Driver::enableDebugEmulator,
+      driver -> {
+        driver.enableSSA();
+        driver.setOptimizationLevel(1);
+      });
+
+  @Test
+  void parallelCompilationsMatchSequentialOnes() throws Exception {
+    var compilations = new ArrayList<Compilation>();
+    for (String program : getPrograms("ir")) {
+      for (var configuration : CONFIGURATIONS) {
+        var compilation = new Compilation(program, configuration);
+        compilation.expected = compilation.run();
+        compilations.add(compilation);
+      }
+    }
+
+    var schedule = new ArrayList<Compilation>();
+    for (int i = 0; i < ROUNDS; i++) {
+      schedule.addAll(compilations);
+    }
+    Collections.shuffle(schedule, new Random(ROUNDS));
+
+    var pool = Executors.newFixedThreadPool(THREADS);
+    try {
+      var results = new ArrayList<Future<byte[]>>();
+      for (var compilation : schedule) {
+        results.add(pool.submit(compilation::run));
+      }
+      for (int i = 0; i < schedule.size(); i++) {
+        Assertions.assertArrayEquals(schedule.get(i).expected, get(results.get(i)),
+            String.format("Compiling %s in parallel changed its output.", schedule.get(i).program));
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void parallelFunctionsMatchSequentialOnes() throws Exception {
+    for (String program : getPrograms("ir")) {
+      for (var configuration : CONFIGURATIONS) {
+        var expected = new Compilation(program, configuration).run();
+        var actual = new Compilation(program,
+            configuration.andThen(Driver::enableParallelFunctions)).run();
+        Assertions.assertArrayEquals(expected, actual, String.format(
+            "Checking and lowering the functions of %s in parallel changed its output.", program));
+      }
+    }
+  }
+
+  private static byte[] get(Future<byte[]> result) throws Exception {
+    try {
+      return result.get();
+    } catch (ExecutionException e) {
+      throw (Exception) e.getCause();
+    }
+  }
+
+  private final class Compilation {
+    final String program;
+    final Consumer<Driver> configuration;
+    byte[] expected;
+
+    Compilation(String program, Consumer<Driver> configuration) {
+      this.program = program;
+      this.configuration = configuration;
+    }
+
+    /**
+     * Returns everything the compilation printed, followed by the assembly it wrote.
+     */
+    byte[] run() throws IOException {
+      var loader = getClass().getClassLoader();
+      var outStream = new ByteArrayOutputStream();
+      var outPrintStream = new PrintStream(outStream);
+      var asmStream = new ByteArrayOutputStream();
+      var driver = new Driver(outPrintStream, outPrintStream);
+
+      try (var in = loader.getResourceAsStream(program + ".crx");
+          var input = loader.getResourceAsStream(program + ".in")) {
+        driver.setInputStream(in);
+        driver.setEmulatorInput(input);
+        driver.setOutputStream(asmStream);
+        configuration.accept(driver);
+        outPrintStream.println(driver.run());
+      }
+      outPrintStream.flush();
+      asmStream.writeTo(outStream);
+      return outStream.toByteArray();
+    }
+  }
+
+  private List<String> getPrograms(String stageName) throws IOException {
+    var loader = getClass().getClassLoader();
+    var folder = String.format("crux/stages/%s", stageName);
+    try (var programs = loader.getResourceAsStream(folder);
+        BufferedReader br =
+            new BufferedReader(new InputStreamReader(Objects.requireNonNull(programs)))) {
+
+      return br.lines().filter(resourceName -> resourceName.endsWith(".crx"))
+          .map(resourceName -> folder + "/" + resourceName.substring(0, resourceName.length() - 4))
+          .collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package crux;
+
+import crux.frontend.types.FuncType;
+import crux.frontend.types.IntType;
+import crux.frontend.types.TypeList;
+import crux.frontend.types.VoidType;
+import crux.midend.ir.core.Function;
+import crux.midend.ir.core.LocalVar;
+import crux.midend.ir.core.insts.CopyInst;
+import crux.midend.ir.core.insts.NopInst;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the control flow graph a function keeps is rebuilt whenever one of its instructions
+ * changes, without the pass that changed it having to say so.
+ */
+final class ControlFlowGraphTests {
+  private final Function function =
+      new Function("f", FuncType.of(TypeList.of(), VoidType.INSTANCE));
+  private final LocalVar x = function.getTempVar(IntType.INSTANCE);
+  private final LocalVar y = function.getTempVar(IntType.INSTANCE);
+  private final NopInst first = new NopInst();
+  private final CopyInst copy = new CopyInst(x, y);
+  private final NopInst last = new NopInst();
+
+  ControlFlowGraphTests() {
+    first.setNext(0, copy);
+    copy.setNext(0, last);
+    function.setStart(first);
+  }
+
+  @Test
+  void keptWhileNothingChanges() {
+    var cfg = function.getControlFlowGraph();
+    Assertions.assertSame(cfg, function.getControlFlowGraph());
+    Assertions.assertEquals(3, cfg.getNumInstructions());
+  }
+
+  @Test
+  void rebuiltAfterAnEdgeChanges() {
+    var cfg = function.getControlFlowGraph();
+    first.setNext(0, last);
+    Assertions.assertNotSame(cfg, function.getControlFlowGraph());
+    Assertions.assertEquals(2, function.getControlFlowGraph().getNumInstructions());
+  }
+
+  @Test
+  void rebuiltAfterAnOperandOrDestinationChanges() {
+    var cfg = function.getControlFlowGraph();
+    copy.setOperand(0, x);
+    var afterOperand = function.getControlFlowGraph();
+    Assertions.assertNotSame(cfg, afterOperand);
+    copy.setDestVar(y);
+    Assertions.assertNotSame(afterOperand, function.getControlFlowGraph());
+  }
+
+  @Test
+  void newInstructionsJoinThroughAnEdge() {
+    var cfg = function.getControlFlowGraph();
+    var inserted = new NopInst();
+    inserted.setNext(0, last);
+    Assertions.assertSame(cfg, function.getControlFlowGraph());
+    copy.setNext(0, inserted);
+    Assertions.assertEquals(4, function.getControlFlowGraph().getNumInstructions());
+  }
+}
@@ -0,0 +1,116 @@
+package crux;
+
+import crux.frontend.CruxTokenSource;
+import crux.frontend.pt.CruxLexer;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Scans the stage programs and many random inputs with both the hand-written lexer and the
+ * generated one, and checks that they make the same tokens at the same positions and report the
+ * same errors.
+ */
+final class CruxTokenSourceTests {
+  private static final int INPUTS = 5_000;
+  // Pieces of Crux, the characters that need care, and some that are not Crux at all.
+  private static final String[] PIECES = {
+      " ", "  ", "\t", "\n", "\r\n", "\r", ";", "(", ")", "{", "}", "[", "]", "+", "-", "*", "/",
+      ",", ">", ">=", "<", "<=", "!", "!=", "=", "==", "&&", "||", "&", "|", "0", "00", "7", "42",
+      "1234567890", "x", "foo", "a_b", "x1", "_", "_x", "true", "false", "if", "else", "loop",
+      "continue", "break", "return", "iff", "returns", "int", "bool", "void", "main", "// comment",
+      "//", "#", "$", "?", "\"", "'", ".", "\u00e9", "\u20ac", "\ud83d\ude00", "\u0000"};
+
+  @Test
+  void stagePrograms() throws IOException {
+    var loader = getClass().getClassLoader();
+    for (String program : getPrograms("ir")) {
+      try (var in = loader.getResourceAsStream(program + ".crx")) {
+        String text = new String(Objects.requireNonNull(in).readAllBytes(), StandardCharsets.UTF_8);
+        assertSameTokens(text);
+      }
+    }
+  }
+
+  @Test
+  void randomInputs() {
+    var random = new Random(15);
+    for (int i = 0; i < INPUTS; i++) {
+      var text = new StringBuilder();
+      int length = random.nextInt(60);
+      for (int j = 0; j < length; j++) {
+        text.append(PIECES[random.nextInt(PIECES.length)]);
+      }
+      assertSameTokens(text.toString());
+    }
+  }
+
+  private static void assertSameTokens(String text) {
+    List<String> expectedErrors = new ArrayList<>();
+    var lexer = new CruxLexer(CharStreams.fromString(text));
+    lexer.removeErrorListeners();
+    lexer.addErrorListener(new Recorder(expectedErrors));
+    List<String> errors = new ArrayList<>();
+    var tokenSource = new CruxTokenSource(CharStreams.fromString(text));
+    tokenSource.removeErrorListeners();
+    tokenSource.addErrorListener(new Recorder(errors));
+
+    List<String> expected = tokens(lexer);
+    Assertions.assertEquals(expected, tokens(tokenSource), text);
+    Assertions.assertEquals(expectedErrors, errors, text);
+  }
+
+  private static List<String> tokens(TokenSource source) {
+    List<String> tokens = new ArrayList<>();
+    Token token;
+    do {
+      token = source.nextToken();
+      tokens.add(String.format("%d %d:%d [%d,%d] %s", token.getType(), token.getLine(),
+          token.getCharPositionInLine(), token.getStartIndex(), token.getStopIndex(),
+          token.getText()));
+    } while (token.getType() != Token.EOF);
+    return tokens;
+  }
+
+  private static final class Recorder extends BaseErrorListener {
+    private final List<String> errors;
+
+    Recorder(List<String> errors) {
+      this.errors = errors;
+    }
+
+    @Override
+    public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+        int charPositionInLine, String msg, RecognitionException e) {
+      errors.add(line + ":" + charPositionInLine + " " + msg);
+    }
+  }
+
+  private List<String> getPrograms(String stageName) throws IOException {
+    var loader = getClass().getClassLoader();
+    var folder = String.format("crux/stages/%s", stageName);
+    try (var programs = loader.getResourceAsStream(folder);
+        BufferedReader br =
+            new BufferedReader(new InputStreamReader(Objects.requireNonNull(programs)))) {
+
+      return br.lines().filter(resourceName -> resourceName.endsWith(".crx"))
+          .map(resourceName -> folder + "/" + resourceName.substring(0, resourceName.length() - 4))
+          .sorted().collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package crux;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compiles and emulates programs that nest 10000 levels deep, which overflow the default stack of
+ * a stage that recurses for every level, like the generated parser does.
+ */
+final class DeepNestingTests {
+  private static final int DEPTH = 10_000;
+
+  @Test
+  void additionChain() {
+    var program = new StringBuilder("void main() {\n printInt(1");
+    for (int i = 1; i < DEPTH; i++) {
+      program.append(" + 1");
+    }
+    program.append(");\n}\n");
+    assertEmulates(program, DEPTH + "", false);
+  }
+
+  @Test
+  void nestedParentheses() {
+    var program = new StringBuilder("void main() {\n printInt(");
+    program.append("(".repeat(DEPTH)).append("7").append(")".repeat(DEPTH));
+    program.append(");\n}\n");
+    assertEmulates(program, "7", false);
+    assertEmulates(program, "7", true);
+  }
+
+  @Test
+  void nestedIfs() {
+    var program = nestedIfsProgram();
+    assertEmulates(program, "7", false);
+    assertEmulates(program, "7", true);
+  }
+
+  @Test
+  void syntaxErrorInNestedParentheses() {
+    var program = new StringBuilder("void main() {\n printInt(");
+    program.append("(".repeat(DEPTH)).append("7").append(")".repeat(DEPTH - 1));
+    program.append(");\n}\n");
+    var outStream = new ByteArrayOutputStream();
+    var outPrintStream = new PrintStream(outStream);
+    var driver = new Driver(outPrintStream, outPrintStream);
+
+    driver.setInputStream(
+        new ByteArrayInputStream(program.toString().getBytes(StandardCharsets.US_ASCII)));
+    Assertions.assertEquals(State.Error, driver.run());
+    // The parenthesis of printInt closes the innermost one, so the missing one is the last.
+    Assertions.assertEquals(String.format("line 2:%d missing ')' at ';'", 2 * DEPTH + 11),
+        outStream.toString().trim());
+  }
+
+  private static StringBuilder nestedIfsProgram() {
+    var program = new StringBuilder("void main() {\n");
+    for (int i = 0; i < DEPTH; i++) {
+      program.append("if true {\n");
+    }
+    program.append("printInt(7);\n");
+    for (int i = 0; i < DEPTH; i++) {
+      program.append("} else {\n}\n");
+    }
+    program.append("}\n");
+    return program;
+  }
+
+  private static void assertEmulates(CharSequence program, String expectedOutput,
+      boolean buildParseTree) {
+    var outStream = new ByteArrayOutputStream();
+    var outPrintStream = new PrintStream(outStream);
+    var driver = new Driver(outPrintStream, outPrintStream);
+
+    driver.setInputStream(
+        new ByteArrayInputStream(program.toString().getBytes(StandardCharsets.US_ASCII)));
+    if (buildParseTree)
+      driver.enableBuildParseTree();
+    driver.enableEmulator();
+    driver.setEmulatorInput(new ByteArrayInputStream(new byte[0]));
+
+    Assertions.assertEquals(State.Finished, driver.run());
+    Assertions.assertEquals(expectedOutput, outStream.toString().trim());
+  }
+}
@@ -0,0 +1,167 @@
+package crux;
+
+import crux.midend.ir.core.BasicBlock;
+import crux.midend.ir.core.Emulator;
+import crux.midend.ir.core.Function;
+import crux.midend.ir.core.Instruction;
+import crux.midend.ir.core.Program;
+import crux.midend.ir.core.insts.AddressAt;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Checks that the fast emulator prints exactly what the emulator prints, and how the emulators
+ * treat memory that is unusual: globals larger than an array can hold, and loads from addresses
+ * that were never computed.
+ */
+final class EmulatorTests {
+  private static final List<Consumer<Driver>> CONFIGURATIONS = List.of(
+      driver -> {},
+      driver -> driver.setOptimizationLevel(1),
+      Driver::enableSSA);
+
+  @Test
+  void fastEmulatorPrintsTheSame() throws IOException {
+    var loader = getClass().getClassLoader();
+    for (String program : getPrograms("ir")) {
+      for (var configuration : CONFIGURATIONS) {
+        String expected;
+        try (var in = loader.getResourceAsStream(program + ".crx");
+            var input = loader.getResourceAsStream(program + ".in")) {
+          expected = emulate(in, input, configuration.andThen(Driver::enableEmulator));
+        }
+        try (var in = loader.getResourceAsStream(program + ".crx");
+            var input = loader.getResourceAsStream(program + ".in")) {
+          Assertions.assertEquals(expected,
+              emulate(in, input, configuration.andThen(Driver::enableFastEmulator)), program);
+        }
+      }
+    }
+  }
+
+  /**
+   * A bool global that was never written is loaded as the int 0, but printed as a bool like the
+   * runtime prints it.
+   */
+  @Test
+  void uninitializedBoolPrintsFalse() {
+    var program = String.join("\n",
+        "bool b;",
+        "void main() {",
+        "  printBool(b);",
+        "}",
+        "");
+    String expected = "Reading from uninitialized memory\nfalse\nFinished";
+    Assertions.assertEquals(expected, emulate(program, Driver::enableEmulator));
+    Assertions.assertEquals(expected, emulate(program, Driver::enableFastEmulator));
+  }
+  /**
+   * The globals add up to more words than fit in an int, the words past the array are kept in the
+   * map on the side.
+   */
+  @Test
+  void hugeGlobals() {
+    var program = String.join("\n",
+        "int a[2000000000];",
+        "int b[2000000000];",
+        "void main() {",
+        "  b[1999999999] = 7;",
+        "  a[3] = 8;",
+        "  printInt(b[1999999999]);",
+        "  printInt(a[3]);",
+        "  printInt(b[5]);",
+        "}",
+        "");
+    String expected = "78Reading from uninitialized memory\n0\nFinished";
+    Assertions.assertEquals(expected, emulate(program, Driver::enableEmulator));
+    Assertions.assertEquals(expected, emulate(program, Driver::enableFastEmulator));
+  }
+
+  /**
+   * The address computation of a load is taken out of the IR, the load warns and reads 0 as if the
+   * memory was not initialized.
+   */
+  @Test
+  void loadFromAnAddressNeverComputed() {
+    var sink = new PrintStream(OutputStream.nullOutputStream());
+    var driver = new Driver(sink, sink);
+    driver.setInputStream(input("int g;\nvoid main() {\n  printInt(g);\n}\n"));
+    driver.enablePrintIR();
+    Assertions.assertEquals(State.Finished, driver.run());
+    Program program = driver.getIRProgram();
+
+    for (Iterator<Function> func_it = program.getFunctions(); func_it.hasNext();) {
+      Function f = func_it.next();
+      Map<Instruction, Instruction> bypass = new HashMap<>();
+      for (BasicBlock block : f.getControlFlowGraph().getBlocks()) {
+        for (Instruction inst : block.getInstructions()) {
+          if (inst instanceof AddressAt)
+            bypass.put(inst, inst.getNext(0));
+        }
+      }
+      f.replaceInstructions(bypass);
+    }
+
+    var output = new ByteArrayOutputStream();
+    new Emulator(program, new ByteArrayInputStream(new byte[0]), output).run();
+    Assertions.assertEquals("Reading from uninitialized memory\n0",
+        output.toString(StandardCharsets.US_ASCII).trim());
+  }
+
+  private static String emulate(String program, Consumer<Driver> emulator) {
+    return emulate(input(program), new ByteArrayInputStream(new byte[0]), emulator);
+  }
+
+  /**
+   * Returns everything a compilation printed, including its errors and how it ended.
+   */
+  private static String emulate(InputStream program, InputStream input,
+      Consumer<Driver> configuration) {
+    var outStream = new ByteArrayOutputStream();
+    var outPrintStream = new PrintStream(outStream);
+    var driver = new Driver(outPrintStream, outPrintStream);
+    driver.setInputStream(program);
+    driver.setEmulatorInput(input);
+    driver.setOutputStream(OutputStream.nullOutputStream());
+    configuration.accept(driver);
+    State state = driver.run();
+    outPrintStream.println();
+    outPrintStream.println(state);
+    outPrintStream.flush();
+    return outStream.toString(StandardCharsets.US_ASCII).trim();
+  }
+
+  private static ByteArrayInputStream input(String program) {
+    return new ByteArrayInputStream(program.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private List<String> getPrograms(String stageName) throws IOException {
+    var loader = getClass().getClassLoader();
+    var folder = String.format("crux/stages/%s", stageName);
+    try (var programs = loader.getResourceAsStream(folder);
+        BufferedReader br =
+            new BufferedReader(new InputStreamReader(Objects.requireNonNull(programs)))) {
+
+      return br.lines().filter(resourceName -> resourceName.endsWith(".crx"))
+          .map(resourceName -> folder + "/" + resourceName.substring(0, resourceName.length() - 4))
+          .sorted().collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,195 @@
+package crux;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks which functions the function cache finds again after a program changes, and that
+ * compiling with the cache writes the same assembly as compiling from scratch.
+ */
+final class FunctionCacheTests {
+  private static final String PROGRAM = String.join("\n",
+      "int g[4];",
+      "int h(int a) {",
+      "  return a;",
+      "}",
+      "void f() {",
+      "  h(1);",
+      "  g[0] = 2;",
+      "}",
+      "void main() {",
+      "  f();",
+      "  printInt(g[0]);",
+      "}",
+      "");
+
+  private final FunctionCache cache = new FunctionCache(FunctionCache.DEFAULT_CAPACITY);
+
+  @Test
+  void unchangedFunctionsAreHits() {
+    assertCompiles(PROGRAM, 0, 3);
+    assertCompiles(PROGRAM, 3, 0);
+    Assertions.assertEquals(3, cache.size());
+  }
+
+  /**
+   * Moving a function does not change it, changing its body does.
+   */
+  @Test
+  void changedBodyIsAMiss() {
+    assertCompiles(PROGRAM, 0, 3);
+    assertCompiles("\n\n" + PROGRAM.replace("g[0] = 2;", "g[0] = 3;"), 2, 1);
+  }
+
+  /**
+   * {@code f} is the same text, but the function it calls returns another type.
+   */
+  @Test
+  void changedSignatureOfCalleeIsAMiss() {
+    assertCompiles(PROGRAM, 0, 3);
+    assertCompiles(PROGRAM.replace("int h(int a)", "bool h(int a)")
+        .replace("return a;", "return true;"), 1, 2);
+  }
+
+  /**
+   * {@code f} and {@code main} are the same text, but the global they use has another type.
+   */
+  @Test
+  void changedTypeOfGlobalIsAMiss() {
+    assertCompiles(PROGRAM, 0, 3);
+    assertCompiles(PROGRAM.replace("int g[4];", "int g[5];"), 1, 2);
+  }
+
+  /**
+   * Compiles the stage programs in four batches that share a cache, each after an edit of every
+   * file, and compares every assembly file with the one compiled from scratch. Some stage programs
+   * have errors on purpose, they fail either way.
+   */
+  @Test
+  void incrementalBatchesMatchScratch() throws IOException {
+    Path dir = Files.createTempDirectory("crux");
+    try {
+      var loader = getClass().getClassLoader();
+      List<Path> files = new ArrayList<>();
+      for (String program : getPrograms("ir")) {
+        Path file = dir.resolve(Path.of(program).getFileName() + ".crx");
+        try (var in = loader.getResourceAsStream(program + ".crx")) {
+          Files.write(file, Objects.requireNonNull(in).readAllBytes());
+        }
+        files.add(file);
+      }
+
+      var batch = new BatchCompiler(driver -> driver.setFunctionCache(cache), 2);
+      var sink = new PrintStream(OutputStream.nullOutputStream());
+      for (int round = 0; round < 4; round++) {
+        for (Path file : files) {
+          edit(file, round);
+        }
+        State state = batch.run(files, sink, sink);
+        boolean failed = false;
+        for (Path file : files) {
+          byte[] expected = scratch(file);
+          if (expected == null) {
+            failed = true;
+            continue;
+          }
+          Assertions.assertArrayEquals(expected, Files.readAllBytes(BatchCompiler.outputFile(file)),
+              String.format("round %d changed the assembly of %s", round, file.getFileName()));
+        }
+        Assertions.assertEquals(failed ? State.Error : State.Finished, state);
+      }
+      Assertions.assertTrue(cache.getHits() > 0, "no function was found in the cache");
+    } finally {
+      try (Stream<Path> walk = Files.walk(dir)) {
+        for (Path path : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+          Files.delete(path);
+        }
+      }
+    }
+  }
+
+  /**
+   * The first round compiles the files as they are, then every round adds a global or a function,
+   * which leaves the other functions alone, or moves them all down a line.
+   */
+  private static void edit(Path file, int round) throws IOException {
+    String text = Files.readString(file);
+    switch (round) {
+      case 1:
+        text = text + "\nvoid unusedFunction() {\n  printInt(1);\n}\n";
+        break;
+      case 2:
+        text = "int unusedGlobal;\n" + text;
+        break;
+      case 3:
+        text = "\n" + text.replace("printInt(1);", "printInt(2);");
+        break;
+      default:
+        return;
+    }
+    Files.writeString(file, text);
+  }
+
+  /**
+   * Returns the assembly of a file compiled without a cache, or null if it does not compile.
+   */
+  private static byte[] scratch(Path file) {
+    var asmStream = new ByteArrayOutputStream();
+    var sink = new PrintStream(OutputStream.nullOutputStream());
+    var driver = new Driver(sink, sink);
+    driver.setInputFile(file.toString());
+    driver.setOutputStream(asmStream);
+    return driver.run() == State.Finished ? asmStream.toByteArray() : null;
+  }
+
+  private void assertCompiles(String program, long hits, long misses) {
+    long hitsBefore = cache.getHits();
+    long missesBefore = cache.getMisses();
+
+    var asmStream = new ByteArrayOutputStream();
+    var driver = new Driver(new PrintStream(OutputStream.nullOutputStream()), System.err);
+    driver.setInputStream(new ByteArrayInputStream(program.getBytes(StandardCharsets.US_ASCII)));
+    driver.setFunctionCache(cache);
+    driver.setOutputStream(asmStream);
+    Assertions.assertEquals(State.Finished, driver.run());
+
+    Assertions.assertEquals(hits, cache.getHits() - hitsBefore, "hits");
+    Assertions.assertEquals(misses, cache.getMisses() - missesBefore, "misses");
+    var expected = new ByteArrayOutputStream();
+    var scratch = new Driver(new PrintStream(OutputStream.nullOutputStream()), System.err);
+    scratch.setInputStream(new ByteArrayInputStream(program.getBytes(StandardCharsets.US_ASCII)));
+    scratch.setOutputStream(expected);
+    Assertions.assertEquals(State.Finished, scratch.run());
+    Assertions.assertArrayEquals(expected.toByteArray(), asmStream.toByteArray());
+  }
+
+  private List<String> getPrograms(String stageName) throws IOException {
+    var loader = getClass().getClassLoader();
+    var folder = String.format("crux/stages/%s", stageName);
+    try (var programs = loader.getResourceAsStream(folder);
+        BufferedReader br =
+            new BufferedReader(new InputStreamReader(Objects.requireNonNull(programs)))) {
+
+      return br.lines().filter(resourceName -> resourceName.endsWith(".crx"))
+          .map(resourceName -> folder + "/" + resourceName.substring(0, resourceName.length() - 4))
+          .sorted().collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,380 @@
+package crux;
+
+import crux.midend.ir.core.BasicBlock;
+import crux.midend.ir.core.Function;
+import crux.midend.ir.core.Instruction;
+import crux.midend.ir.core.IntegerConstant;
+import crux.midend.ir.core.LocalVar;
+import crux.midend.ir.core.Program;
+import crux.midend.ir.core.Value;
+import crux.midend.ir.core.insts.AddressAt;
+import crux.midend.ir.core.insts.BinaryOperator;
+import crux.midend.ir.core.insts.CallInst;
+import crux.midend.ir.core.insts.CompareInst;
+import crux.midend.ir.core.insts.CopyInst;
+import crux.midend.ir.core.insts.JumpInst;
+import crux.midend.ir.core.insts.LoadInst;
+import crux.midend.ir.core.insts.PhiInst;
+import crux.midend.ir.core.insts.StoreInst;
+import crux.midend.opt.ConstantFolding;
+import crux.midend.opt.DeadCodeElimination;
+import crux.midend.opt.Pass;
+import crux.midend.opt.PassManager;
+import crux.midend.opt.SSAConstruction;
+import crux.midend.opt.SSADestruction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import static crux.TestPrograms.emulate;
+import static crux.TestPrograms.getPrograms;
+import static crux.TestPrograms.lower;
+import static crux.TestPrograms.runNative;
+
+/**
+ * Lowers small programs to IR, runs single passes over it and checks what they changed, and that
+ * the emulator prints the same before and after.
+ */
+final class IRPassTests {
+  /**
+   * A global that is read in another function than the one that writes it is loaded, and the load
+   * writes the variable that is passed on.
+   */
+  @Test
+  void readingAGlobalLoadsItsValue() {
+    var program = lower(String.join("\n",
+        "int g;",
+        "void set() {",
+        "  g = 5;",
+        "}",
+        "void main() {",
+        "  set();",
+        "  printInt(g);",
+        "}",
+        ""));
+    var loads = find(program, LoadInst.class);
+    var calls = find(program, CallInst.class);
+    Assertions.assertEquals(1, loads.size());
+    Assertions.assertSame(loads.get(0).getDst(), calls.get(calls.size() - 1).getParams().get(0));
+    Assertions.assertEquals("5", emulate(program));
+  }
+
+  @Test
+  void deadCodeEliminationRemovesUnusedValues() {
+    var program = lower(String.join("\n",
+        "int g;",
+        "void main() {",
+        "  int x;",
+        "  int y;",
+        "  int z;",
+        "  x = 1;",
+        "  y = x + 2;",
+        "  z = g;",
+        "  printInt(x);",
+        "}",
+        ""));
+    Assertions.assertEquals(1, find(program, BinaryOperator.class).size());
+    Assertions.assertEquals(1, find(program, LoadInst.class).size());
+    int before = PassManager.countInstructions(program);
+
+    int removed = run(program, new DeadCodeElimination());
+    Assertions.assertEquals(before - removed, PassManager.countInstructions(program));
+    Assertions.assertEquals(0, find(program, BinaryOperator.class).size());
+    Assertions.assertEquals(0, find(program, LoadInst.class).size());
+    Assertions.assertEquals(0, find(program, AddressAt.class).size());
+    Assertions.assertEquals(1, find(program, CallInst.class).size());
+    Assertions.assertEquals("1", emulate(program));
+  }
+
+  @Test
+  void deadCodeEliminationKeepsSideEffects() {
+    var program = lower(String.join("\n",
+        "int g;",
+        "int a[2];",
+        "void main() {",
+        "  int y;",
+        "  y = 3;",
+        "  g = y;",
+        "  a[1] = y;",
+        "  printInt(0);",
+        "}",
+        ""));
+    run(program, new DeadCodeElimination());
+    Assertions.assertEquals(2, find(program, StoreInst.class).size());
+    Assertions.assertEquals(1, find(program, CallInst.class).size());
+    Assertions.assertEquals(0, run(program, new DeadCodeElimination()), "not a fixed point");
+  }
+
+  @Test
+  void deadCodeEliminationKeepsOutput() throws IOException {
+    assertStageOutputKept(program -> run(program, new DeadCodeElimination()));
+  }
+
+  /**
+   * The arithmetic and the comparison become copies of constants, the jump on the constant
+   * comparison becomes a nop and the call behind its other edge is gone.
+   */
+  @Test
+  void constantFoldingReplacesConstantComputations() {
+    var program = lower(String.join("\n",
+        "void main() {",
+        "  printInt(2 * 3 + 4);",
+        "  if 1 < 2 {",
+        "    printInt(1);",
+        "  } else {",
+        "    printInt(2);",
+        "  }",
+        "}",
+        ""));
+    Assertions.assertEquals(3, find(program, CallInst.class).size());
+    String expected = emulate(program);
+
+    run(program, new ConstantFolding());
+    Assertions.assertEquals(0, find(program, BinaryOperator.class).size());
+    Assertions.assertEquals(0, find(program, CompareInst.class).size());
+    Assertions.assertEquals(0, find(program, JumpInst.class).size());
+    var calls = find(program, CallInst.class);
+    Assertions.assertEquals(2, calls.size());
+    var sum = find(program, CopyInst.class).stream()
+        .filter(copy -> copy.getDstVar() == calls.get(0).getParams().get(0)).findFirst();
+    Assertions.assertTrue(sum.isPresent());
+    Assertions.assertEquals(10, ((IntegerConstant) sum.get().getSrcValue()).getValue());
+    Assertions.assertEquals(expected, emulate(program));
+  }
+
+  @Test
+  void constantFoldingLeavesDivisionByZero() {
+    var program = lower(String.join("\n",
+        "void main() {",
+        "  int x;",
+        "  x = 0;",
+        "  printInt(1 / x);",
+        "}",
+        ""));
+    run(program, new ConstantFolding());
+    Assertions.assertEquals(1, find(program, BinaryOperator.class).size());
+  }
+
+  @Test
+  void constantFoldingKeepsOutput() throws IOException {
+    assertStageOutputKept(program -> run(program, new ConstantFolding()));
+    assertStageOutputKept(program -> PassManager.forLevel(1).run(program));
+  }
+
+  /**
+   * {@code x} is written on both sides of the if and {@code i} before and in the loop, so both
+   * need a phi where the paths join. Converting back leaves no phi behind.
+   */
+  @Test
+  void ssaWritesEveryVariableOnce() {
+    var program = lower(String.join("\n",
+        "void f(int a) {",
+        "  int x;",
+        "  int i;",
+        "  if a > 0 {",
+        "    x = 2;",
+        "  } else {",
+        "    x = 3;",
+        "  }",
+        "  i = 0;",
+        "  loop {",
+        "    if i >= 3 {",
+        "      break;",
+        "    }",
+        "    i = i + 1;",
+        "  }",
+        "  printInt(x + i);",
+        "}",
+        "void main() {",
+        "  f(1);",
+        "  f(0);",
+        "}",
+        ""));
+    String expected = emulate(program);
+
+    run(program, new SSAConstruction());
+    Assertions.assertEquals(2, find(program, PhiInst.class).size());
+    var written = new HashSet<LocalVar>();
+    for (Instruction inst : find(program, Instruction.class)) {
+      if (inst.getDestVar() instanceof LocalVar)
+        Assertions.assertTrue(written.add((LocalVar) inst.getDestVar()),
+            "written twice: " + inst.getDestVar());
+    }
+
+    run(program, new SSADestruction());
+    Assertions.assertEquals(0, find(program, PhiInst.class).size());
+    Assertions.assertEquals(expected, emulate(program));
+  }
+
+  /**
+   * {@code g1} is only written inside the if, so the phi after it reads zero when the if is not
+   * taken, and not the variable that {@code g1} was lowered to, which nothing writes.
+   */
+  @Test
+  void ssaPhiReadsZeroForAGlobalThatIsNotWrittenOnItsPath() throws IOException {
+    assertSsaCompiles(String.join("\n",
+        "int g0;",
+        "int g1;",
+        "int f1(int a, int b) {",
+        "  return a + b;",
+        "}",
+        "void f2() {",
+        "  int a;",
+        "  a = g0;",
+        "  if 6 != 19 {",
+        "    g1 = a - f1(19, a);",
+        "  }",
+        "  g0 = g1 + 1;",
+        "}",
+        "void main() {",
+        "  f2();",
+        "  printInt(g0);",
+        "}",
+        ""), "-18");
+  }
+
+  @Test
+  void ssaPhiReadsZeroForALocalThatIsNotWrittenOnItsPath() throws IOException {
+    assertSsaCompiles(String.join("\n",
+        "void f(int n) {",
+        "  int x;",
+        "  if n > 0 {",
+        "    x = 1;",
+        "  }",
+        "  if n > 0 {",
+        "    printInt(x);",
+        "  }",
+        "}",
+        "void main() {",
+        "  f(1);",
+        "  f(0);",
+        "}",
+        ""), "1");
+  }
+
+  @Test
+  void ssaKeepsOutput() throws IOException {
+    assertStageOutputKept(program -> {
+      run(program, new SSAConstruction());
+      run(program, new SSADestruction());
+    });
+    assertStageOutputKept(program -> {
+      PassManager.forLevel(1).run(program);
+      run(program, new SSAConstruction());
+      run(program, new SSADestruction());
+    });
+  }
+
+  /**
+   * Compiles every stage program to native code once directly and once after a round trip through
+   * SSA form, so the register allocator and the code generator see the copies that replace the
+   * phis. Both print the same, without and with the optimizations.
+   */
+  @Test
+  void ssaCompilesToTheSameNativeCode() throws IOException {
+    var loader = getClass().getClassLoader();
+    for (String name : getPrograms("ir")) {
+      for (int level = 0; level <= 1; level++) {
+        Program direct;
+        Program ssa;
+        try (var in = loader.getResourceAsStream(name + ".crx");
+            var again = loader.getResourceAsStream(name + ".crx")) {
+          direct = lower(Objects.requireNonNull(in));
+          ssa = lower(Objects.requireNonNull(again));
+        }
+        if (direct == null)
+          continue;
+        if (level > 0) {
+          PassManager.forLevel(level).run(direct);
+          PassManager.forLevel(level).run(ssa);
+        }
+        run(ssa, new SSAConstruction());
+        run(ssa, new SSADestruction());
+        Assertions.assertEquals(runNative(direct, loader.getResourceAsStream(name + ".in")),
+            runNative(ssa, loader.getResourceAsStream(name + ".in")), name + " at -O" + level);
+      }
+    }
+  }
+
+  /**
+   * Compiles a program to native code through SSA form, like {@code --ssa} and {@code -O1 --ssa}
+   * do, and checks what it prints. In SSA form every variable that a phi reads is an argument or is
+   * written by some instruction.
+   */
+  private static void assertSsaCompiles(String source, String expected) throws IOException {
+    for (int level = 0; level <= 1; level++) {
+      var program = lower(source);
+      if (level > 0)
+        PassManager.forLevel(level).run(program);
+      run(program, new SSAConstruction());
+      var written = new HashSet<Value>();
+      for (Iterator<Function> func_it = program.getFunctions(); func_it.hasNext();) {
+        written.addAll(func_it.next().getArguments());
+      }
+      for (Instruction inst : find(program, Instruction.class)) {
+        written.add(inst.getDestVar());
+      }
+      for (PhiInst phi : find(program, PhiInst.class)) {
+        for (int i = 0; i < phi.numIncoming(); i++) {
+          Value value = phi.getIncomingValue(i);
+          Assertions.assertTrue(!(value instanceof LocalVar) || written.contains(value),
+              "never written: " + value);
+        }
+      }
+
+      run(program, new SSADestruction());
+      Assertions.assertEquals(expected, runNative(program), "-O" + level + " --ssa");
+    }
+  }
+
+  /**
+   * Lowers every stage program that compiles, transforms it and checks that the emulator prints the
+   * same as before.
+   */
+  private void assertStageOutputKept(Consumer<Program> transform) throws IOException {
+    var loader = getClass().getClassLoader();
+    for (String name : getPrograms("ir")) {
+      Program program;
+      try (var in = loader.getResourceAsStream(name + ".crx")) {
+        program = lower(Objects.requireNonNull(in));
+      }
+      if (program == null)
+        continue;
+      String expected = emulate(program, loader.getResourceAsStream(name + ".in"));
+      transform.accept(program);
+      Assertions.assertEquals(expected, emulate(program, loader.getResourceAsStream(name + ".in")),
+          name);
+    }
+  }
+
+  private static int run(Program program, Pass pass) {
+    int changed = 0;
+    for (Iterator<Function> func_it = program.getFunctions(); func_it.hasNext();) {
+      changed += pass.run(program, func_it.next());
+    }
+    return changed;
+  }
+
+  /**
+   * Returns the instructions of a kind in all functions, in the order of their blocks.
+   */
+  private static <T extends Instruction> List<T> find(Program program, Class<T> kind) {
+    List<T> found = new ArrayList<>();
+    for (Iterator<Function> func_it = program.getFunctions(); func_it.hasNext();) {
+      for (BasicBlock block : func_it.next().getControlFlowGraph().getBlocks()) {
+        for (Instruction inst : block.getInstructions()) {
+          if (kind.isInstance(inst))
+            found.add(kind.cast(inst));
+        }
+      }
+    }
+    return found;
+  }
+}
@@ -0,0 +1,354 @@
+package crux;
+
+import crux.frontend.IterativeCruxParser;
+import crux.frontend.pt.CruxLexer;
+import crux.frontend.pt.CruxParser;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Parses the stage programs, random programs and random programs with one token changed with both
+ * the iterative parser and the generated one, and checks that they accept the same programs, make
+ * the same parse trees and fire the same parse listener events. For a program with errors they
+ * also have to recover the same way and report the same errors.
+ */
+final class IterativeCruxParserTests {
+  private static final int PROGRAMS = 2_000;
+  private static final int MAX_DEPTH = 4;
+  private static final String[] TOKENS = {
+      ";", "(", ")", "{", "}", "[", "]", "+", "-", "*", "/", ",", ">=", "<=", "!=", "==", ">", "<",
+      "=", "true", "false", "&&", "||", "!", "if", "else", "loop", "continue", "break", "return",
+      "0", "42", "x", "int"};
+
+  @Test
+  void stagePrograms() throws IOException {
+    var loader = getClass().getClassLoader();
+    for (String program : getPrograms("ir")) {
+      try (var in = loader.getResourceAsStream(program + ".crx")) {
+        String text = new String(Objects.requireNonNull(in).readAllBytes(), StandardCharsets.UTF_8);
+        Assertions.assertTrue(assertSameParse(text), program);
+      }
+    }
+  }
+
+  @Test
+  void randomPrograms() {
+    var random = new Random(17);
+    for (int i = 0; i < PROGRAMS; i++) {
+      var program = new ArrayList<String>();
+      appendProgram(program, random);
+      Assertions.assertTrue(assertSameParse(String.join(" ", program)));
+
+      // Most of these have a syntax error.
+      int at = random.nextInt(program.size() + 1);
+      switch (at == program.size() ? 1 : random.nextInt(3)) {
+        case 0:
+          program.remove(at);
+          break;
+        case 1:
+          program.add(at, TOKENS[random.nextInt(TOKENS.length)]);
+          break;
+        default:
+          program.set(at, TOKENS[random.nextInt(TOKENS.length)]);
+      }
+      assertSameParse(String.join(" ", program));
+    }
+  }
+
+  /**
+   * Returns whether the program parsed, with or without a parse tree.
+   */
+  private static boolean assertSameParse(String text) {
+    boolean parsed = false;
+    for (boolean buildParseTree : new boolean[] {true, false}) {
+      var expectedEvents = new Recorder();
+      var generated = makeParser(new CruxParser(tokens(text)), buildParseTree, expectedEvents);
+      var events = new Recorder();
+      var iterative = makeParser(new IterativeCruxParser(tokens(text)), buildParseTree, events);
+
+      String expected;
+      try {
+        expected = generated.program().toStringTree(generated);
+      } catch (ParseCancellationException e) {
+        expected = null;
+      }
+      String tree;
+      try {
+        tree = iterative.parseProgram().toStringTree(iterative);
+      } catch (ParseCancellationException e) {
+        tree = null;
+      }
+
+      Assertions.assertEquals(expected, tree, text);
+      // The generated parser exits the rules it is in when it gives up, the iterative one does not.
+      if (expected != null)
+        Assertions.assertEquals(expectedEvents.events, events.events, text);
+      parsed = expected != null;
+
+      if (!parsed) {
+        // Both recover from the errors the same way and report the same ones.
+        expectedEvents = new Recorder();
+        generated = makeParser(new CruxParser(tokens(text)), buildParseTree, expectedEvents);
+        generated.setErrorHandler(new DefaultErrorStrategy());
+        generated.getInterpreter().setPredictionMode(PredictionMode.LL);
+        events = new Recorder();
+        iterative = makeParser(new IterativeCruxParser(tokens(text)), buildParseTree, events);
+        iterative.setErrorHandler(new DefaultErrorStrategy());
+        iterative.getInterpreter().setPredictionMode(PredictionMode.LL);
+        Assertions.assertEquals(generated.program().toStringTree(generated),
+            iterative.parseProgram().toStringTree(iterative), text);
+        Assertions.assertEquals(expectedEvents.events, events.events, text);
+      }
+    }
+    return parsed;
+  }
+
+  private static CommonTokenStream tokens(String text) {
+    var lexer = new CruxLexer(CharStreams.fromString(text));
+    lexer.removeErrorListeners();
+    return new CommonTokenStream(lexer);
+  }
+
+  /**
+   * Returns a parser that gives up at the first syntax error and predicts with SLL, like the first
+   * parse of the {@link Driver}.
+   */
+  private static <P extends CruxParser> P makeParser(P parser, boolean buildParseTree,
+      Recorder recorder) {
+    parser.removeErrorListeners();
+    parser.addErrorListener(recorder);
+    parser.setErrorHandler(new BailErrorStrategy());
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    parser.setBuildParseTree(buildParseTree);
+    parser.addParseListener(recorder);
+    return parser;
+  }
+
+  private static void appendProgram(List<String> program, Random random) {
+    int declarations = random.nextInt(4);
+    for (int i = 0; i < declarations; i++) {
+      switch (random.nextInt(3)) {
+        case 0:
+          program.addAll(List.of("int", "g", ";"));
+          break;
+        case 1:
+          program.addAll(List.of("bool", "a", "[", "3", "]", ";"));
+          break;
+        default:
+          program.addAll(List.of("void", "f", "("));
+          int parameters = random.nextInt(3);
+          for (int j = 0; j < parameters; j++) {
+            if (j > 0)
+              program.add(",");
+            program.addAll(List.of("int", "p"));
+          }
+          program.add(")");
+          appendBlock(program, random, 0);
+      }
+    }
+  }
+
+  private static void appendBlock(List<String> program, Random random, int depth) {
+    program.add("{");
+    int statements = depth < MAX_DEPTH ? random.nextInt(4) : 0;
+    for (int i = 0; i < statements; i++) {
+      appendStatement(program, random, depth + 1);
+    }
+    program.add("}");
+  }
+
+  private static void appendStatement(List<String> program, Random random, int depth) {
+    switch (random.nextInt(8)) {
+      case 0:
+        program.addAll(List.of("int", "v", ";"));
+        break;
+      case 1:
+        appendCall(program, random, depth);
+        program.add(";");
+        break;
+      case 2:
+        appendDesignator(program, random, depth);
+        program.add("=");
+        appendExpression(program, random, depth);
+        program.add(";");
+        break;
+      case 3:
+        program.add("if");
+        appendExpression(program, random, depth);
+        appendBlock(program, random, depth);
+        if (random.nextBoolean()) {
+          program.add("else");
+          appendBlock(program, random, depth);
+        }
+        break;
+      case 4:
+        program.add("loop");
+        appendBlock(program, random, depth);
+        break;
+      case 5:
+        program.addAll(List.of("break", ";"));
+        break;
+      case 6:
+        program.addAll(List.of("continue", ";"));
+        break;
+      default:
+        program.add("return");
+        appendExpression(program, random, depth);
+        program.add(";");
+    }
+  }
+
+  private static void appendExpression(List<String> program, Random random, int depth) {
+    appendExpression(program, random, depth, true);
+  }
+
+  /**
+   * Appends an expression, which is a comparison only if it is the whole {@code expression0}.
+   */
+  private static void appendExpression(List<String> program, Random random, int depth,
+      boolean comparison) {
+    if (depth >= MAX_DEPTH) {
+      program.add(random.nextBoolean() ? "1" : "x");
+      return;
+    }
+    switch (random.nextInt(8)) {
+      case 0:
+      case 1:
+        appendExpression(program, random, depth + 1, false);
+        program.add(random.nextBoolean() ? "+" : random.nextBoolean() ? "||" : "-");
+        appendExpression(program, random, depth + 1, false);
+        break;
+      case 2:
+        appendExpression(program, random, depth + 1, false);
+        program.add(random.nextBoolean() ? "*" : random.nextBoolean() ? "&&" : "/");
+        appendExpression(program, random, depth + 1, false);
+        break;
+      case 3:
+        if (comparison) {
+          appendExpression(program, random, depth + 1, false);
+          program.add(random.nextBoolean() ? "<" : random.nextBoolean() ? "==" : ">=");
+          appendExpression(program, random, depth + 1, false);
+        } else {
+          program.add("2");
+        }
+        break;
+      case 4:
+        program.add("!");
+        appendExpression(program, random, depth + 1, false);
+        break;
+      case 5:
+        program.add("(");
+        appendExpression(program, random, depth + 1);
+        program.add(")");
+        break;
+      case 6:
+        appendCall(program, random, depth);
+        break;
+      default:
+        if (random.nextBoolean())
+          program.add(Arrays.asList("7", "true", "false").get(random.nextInt(3)));
+        else
+          appendDesignator(program, random, depth);
+    }
+  }
+
+  private static void appendDesignator(List<String> program, Random random, int depth) {
+    program.add("x");
+    if (random.nextBoolean()) {
+      program.add("[");
+      appendExpression(program, random, depth + 1);
+      program.add("]");
+    }
+  }
+
+  private static void appendCall(List<String> program, Random random, int depth) {
+    program.addAll(List.of("f", "("));
+    int arguments = random.nextInt(3);
+    for (int i = 0; i < arguments; i++) {
+      if (i > 0)
+        program.add(",");
+      appendExpression(program, random, depth + 1);
+    }
+    program.add(")");
+  }
+
+  /**
+   * Records the events of a parse listener, with the text and the tokens of every rule it exits, and
+   * the syntax errors in between. An expression has no last token yet when it is exited to become
+   * the left operand of the next one.
+   */
+  private static final class Recorder extends BaseErrorListener implements ParseTreeListener {
+    final List<String> events = new ArrayList<>();
+
+    @Override
+    public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+        int charPositionInLine, String msg, RecognitionException e) {
+      events.add(String.format("syntax error %d:%d %s", line, charPositionInLine, msg));
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+      events.add("terminal " + node.getText() + " in " + ruleName(node.getParent()));
+    }
+
+    @Override
+    public void visitErrorNode(ErrorNode node) {
+      events.add("error " + node.getText());
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+      events.add("enter " + ruleName(ctx) + " in " + ruleName(ctx.getParent()));
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+      events.add(String.format("exit %s in %s: %s [%d,%d]", ruleName(ctx),
+          ruleName(ctx.getParent()), ctx.getText(), ctx.start.getTokenIndex(),
+          ctx.stop == null ? -1 : ctx.stop.getTokenIndex()));
+    }
+
+    private static String ruleName(Object ctx) {
+      return ctx == null
+          ? "nothing"
+          : CruxParser.ruleNames[((ParserRuleContext) ctx).getRuleIndex()];
+    }
+  }
+
+  private List<String> getPrograms(String stageName) throws IOException {
+    var loader = getClass().getClassLoader();
+    var folder = String.format("crux/stages/%s", stageName);
+    try (var programs = loader.getResourceAsStream(folder);
+        BufferedReader br =
+            new BufferedReader(new InputStreamReader(Objects.requireNonNull(programs)))) {
+
+      return br.lines().filter(resourceName -> resourceName.endsWith(".crx"))
+          .map(resourceName -> folder + "/" + resourceName.substring(0, resourceName.length() - 4))
+          .sorted().collect(Collectors.toList());
+    }
+  }
+}
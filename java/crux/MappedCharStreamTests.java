@@ -0,0 +1,161 @@
+package crux;
+
+import crux.frontend.MappedCharStream;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Checks that a mapped input file reads like the stream ANTLR makes of it, and that files that are
+ * not all ASCII are read the usual way. The driver only maps files of 16 MiB and more, so the tests
+ * lower its threshold to map the stage programs.
+ */
+final class MappedCharStreamTests {
+  @Test
+  void readsLikeCharStreams() throws IOException {
+    var random = new Random(16);
+    for (String program : getPrograms("ir")) {
+      Path file = copy(program);
+      try {
+        CharStream mapped = MappedCharStream.open(file);
+        Assertions.assertNotNull(mapped, program);
+        CharStream expected = CharStreams.fromPath(file);
+        Assertions.assertEquals(expected.size(), mapped.size(), program);
+        Assertions.assertEquals(expected.toString(), mapped.toString(), program);
+
+        for (int i = 0; i <= expected.size(); i++) {
+          Assertions.assertEquals(expected.index(), mapped.index());
+          Assertions.assertEquals(expected.LA(1), mapped.LA(1));
+          Assertions.assertEquals(expected.LA(2), mapped.LA(2));
+          Assertions.assertEquals(expected.LA(-1), mapped.LA(-1));
+          if (i < expected.size()) {
+            expected.consume();
+            mapped.consume();
+          }
+        }
+        Assertions.assertEquals(IntStream.EOF, mapped.LA(1));
+
+        for (int i = 0; i < 100; i++) {
+          int a = random.nextInt(expected.size() + 1);
+          int b = a + random.nextInt(40) - 1;
+          expected.seek(a);
+          mapped.seek(a);
+          Assertions.assertEquals(expected.LA(1), mapped.LA(1));
+          Assertions.assertEquals(expected.getText(Interval.of(a, b)),
+              mapped.getText(Interval.of(a, b)));
+        }
+      } finally {
+        Files.delete(file);
+      }
+    }
+  }
+
+  /**
+   * The bytes are checked eight at a time and then one by one, so the non-ASCII byte is put in
+   * every position of both parts.
+   */
+  @Test
+  void nonAsciiIsNotMapped() throws IOException {
+    Path file = Files.createTempFile("crux", ".crx");
+    try {
+      for (int position = 0; position < 21; position++) {
+        var bytes = "// 0123456789abcdef\n\n".getBytes(StandardCharsets.US_ASCII);
+        bytes[position] = (byte) 0xe9;
+        Files.write(file, bytes);
+        Assertions.assertNull(MappedCharStream.open(file), "position " + position);
+      }
+      Files.write(file, new byte[0]);
+      var empty = MappedCharStream.open(file);
+      Assertions.assertNotNull(empty);
+      Assertions.assertEquals(0, empty.size());
+      Assertions.assertEquals(IntStream.EOF, empty.LA(1));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  void driverPrintsTheSameWhenMapped() throws IOException {
+    for (String program : getPrograms("ir")) {
+      Path file = copy(program);
+      try {
+        Assertions.assertEquals(emulate(file, program, Long.MAX_VALUE),
+            emulate(file, program, 0), program);
+      } finally {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  void driverFallsBackOnNonAscii() throws IOException {
+    String program = getPrograms("ir").get(0);
+    Path file = copy(program);
+    Path accented = Files.createTempFile("crux", ".crx");
+    try {
+      var bytes = new ByteArrayOutputStream();
+      bytes.writeBytes("// caf\u00e9\n".getBytes(StandardCharsets.UTF_8));
+      bytes.writeBytes(Files.readAllBytes(file));
+      Files.write(accented, bytes.toByteArray());
+      Assertions.assertEquals(emulate(file, program, Long.MAX_VALUE),
+          emulate(accented, program, 0));
+    } finally {
+      Files.delete(file);
+      Files.delete(accented);
+    }
+  }
+
+  private String emulate(Path file, String program, long mapThreshold) throws IOException {
+    var outStream = new ByteArrayOutputStream();
+    var outPrintStream = new PrintStream(outStream);
+    var driver = new Driver(outPrintStream, outPrintStream);
+    try (var input = getClass().getClassLoader().getResourceAsStream(program + ".in")) {
+      driver.setInputFile(file.toString());
+      driver.setMapThreshold(mapThreshold);
+      driver.enableEmulator();
+      driver.setEmulatorInput(input);
+      driver.setOutputStream(OutputStream.nullOutputStream());
+      outPrintStream.println(driver.run());
+    }
+    outPrintStream.flush();
+    return outStream.toString(StandardCharsets.UTF_8);
+  }
+
+  private Path copy(String program) throws IOException {
+    Path file = Files.createTempFile("crux", ".crx");
+    try (var in = getClass().getClassLoader().getResourceAsStream(program + ".crx")) {
+      Files.write(file, Objects.requireNonNull(in).readAllBytes());
+    }
+    return file;
+  }
+
+  private List<String> getPrograms(String stageName) throws IOException {
+    var loader = getClass().getClassLoader();
+    var folder = String.format("crux/stages/%s", stageName);
+    try (var programs = loader.getResourceAsStream(folder);
+        BufferedReader br =
+            new BufferedReader(new InputStreamReader(Objects.requireNonNull(programs)))) {
+
+      return br.lines().filter(resourceName -> resourceName.endsWith(".crx"))
+          .map(resourceName -> folder + "/" + resourceName.substring(0, resourceName.length() - 4))
+          .sorted().collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package crux;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Checks that the assembly written with {@code -o <file>} and {@code -o -} is the same as the
+ * assembly written to a stream, also when it is written in more than one chunk.
+ */
+final class OutputFileTests {
+  private static final int CHUNK_SIZE = 1 << 16;
+  private static final String SMALL_PROGRAM = "void main() {\n printInt(7);\n}\n";
+
+  @Test
+  void largeProgramSpansSeveralChunks() {
+    Assertions.assertTrue(assembly(largeProgram()).length > 3 * CHUNK_SIZE,
+        "the program is too small to be written in several chunks");
+  }
+
+  @Test
+  void outputFile() throws IOException {
+    for (String program : new String[] {SMALL_PROGRAM, largeProgram()}) {
+      Path file = Files.createTempFile("crux", ".s");
+      try {
+        var driver = new Driver(new PrintStream(OutputStream.nullOutputStream()), System.err);
+        driver.setInputStream(input(program));
+        driver.setOutputFile(file.toString());
+        Assertions.assertEquals(State.Finished, driver.run());
+        Assertions.assertArrayEquals(assembly(program), Files.readAllBytes(file));
+      } finally {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  void outputFileIsTruncated() throws IOException {
+    Path file = Files.createTempFile("crux", ".s");
+    try {
+      Files.write(file, new byte[4 * CHUNK_SIZE]);
+      var driver = new Driver(new PrintStream(OutputStream.nullOutputStream()), System.err);
+      driver.setInputStream(input(SMALL_PROGRAM));
+      driver.setOutputFile(file.toString());
+      Assertions.assertEquals(State.Finished, driver.run());
+      Assertions.assertArrayEquals(assembly(SMALL_PROGRAM), Files.readAllBytes(file));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  void standardOutput() {
+    for (String program : new String[] {SMALL_PROGRAM, largeProgram()}) {
+      var outStream = new ByteArrayOutputStream();
+      var outPrintStream = new PrintStream(outStream);
+      var driver = new Driver(outPrintStream, System.err);
+      driver.setInputStream(input(program));
+      driver.setOutputFile("-");
+      Assertions.assertEquals(State.Finished, driver.run());
+
+      // The output stream of the driver is still open after the assembly.
+      outPrintStream.print("end");
+      Assertions.assertFalse(outPrintStream.checkError());
+      var expected = new ByteArrayOutputStream();
+      expected.writeBytes(assembly(program));
+      expected.writeBytes("end".getBytes(StandardCharsets.US_ASCII));
+      Assertions.assertArrayEquals(expected.toByteArray(), outStream.toByteArray());
+    }
+  }
+
+  private static byte[] assembly(String program) {
+    var asmStream = new ByteArrayOutputStream();
+    var driver = new Driver(new PrintStream(OutputStream.nullOutputStream()), System.err);
+    driver.setInputStream(input(program));
+    driver.setOutputStream(asmStream);
+    Assertions.assertEquals(State.Finished, driver.run());
+    return asmStream.toByteArray();
+  }
+
+  private static String largeProgram() {
+    var program = new StringBuilder("int x;\nvoid main() {\n");
+    for (int i = 0; i < 600; i++) {
+      program.append(String.format("x = x * 3 + %d;\nprintInt(x);\n", i));
+    }
+    return program.append("}\n").toString();
+  }
+
+  private static ByteArrayInputStream input(String program) {
+    return new ByteArrayInputStream(program.getBytes(StandardCharsets.US_ASCII));
+  }
+}
@@ -0,0 +1,62 @@
+package crux;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compiles many programs in one JVM, like a test farm or the compile server does, and checks that
+ * nothing is kept from one compilation to the next.
+ */
+final class SoakTests {
+  private static final int COMPILATIONS = 1_000;
+  private static final int WARM_UP = 100;
+  // Far less than keeping the 40 literals of every program would take, far more than the noise.
+  private static final long MAX_GROWTH = 1L << 20;
+
+  /**
+   * Every program has its own large literals, which are interned by the program they are used in.
+   */
+  @Test
+  void heapStaysFlat() {
+    long baseline = 0;
+    for (int i = 0; i < COMPILATIONS; i++) {
+      if (i == WARM_UP)
+        baseline = usedHeap();
+      Assertions.assertEquals(State.Finished, compile(program(i)));
+    }
+    long growth = usedHeap() - baseline;
+    Assertions.assertTrue(growth < MAX_GROWTH, String.format(
+        "the heap grew by %d bytes over %d compilations", growth, COMPILATIONS - WARM_UP));
+  }
+
+  private static String program(int seed) {
+    var program = new StringBuilder("int a[4];\nint x;\nvoid main() {\n");
+    for (int i = 0; i < 20; i++) {
+      long literal = 100_000L * seed + 1_000 * i + 7;
+      program.append(String.format("x = x + %d;\na[%d] = x * %d;\n", literal, i % 4, literal));
+    }
+    program.append("printInt(x + a[3]);\n}\n");
+    return program.toString();
+  }
+
+  private static State compile(String program) {
+    var sink = new PrintStream(OutputStream.nullOutputStream());
+    var driver = new Driver(sink, sink);
+    driver.setInputStream(new ByteArrayInputStream(program.getBytes(StandardCharsets.US_ASCII)));
+    driver.setOutputStream(OutputStream.nullOutputStream());
+    return driver.run();
+  }
+
+  private static long usedHeap() {
+    var runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
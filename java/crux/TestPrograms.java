@@ -0,0 +1,122 @@
+package crux;
+
+import crux.backend.CodeGen;
+import crux.midend.ir.core.Emulator;
+import crux.midend.ir.core.Function;
+import crux.midend.ir.core.Program;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Lowers the programs of the IR and backend tests, and runs their IR on the emulator or as native
+ * code, which is assembled and linked with {@code gcc} like in {@link CompilerStageTests}.
+ */
+public final class TestPrograms {
+  private static final String RUNTIME = "src/runtime/runtime.c";
+
+  private TestPrograms() {}
+
+  public static Program lower(String program) {
+    var lowered = lower(new ByteArrayInputStream(program.getBytes(StandardCharsets.US_ASCII)));
+    Assertions.assertNotNull(lowered, program);
+    return lowered;
+  }
+
+  /**
+   * Returns the IR of a program as it is lowered, or null if the program has errors.
+   */
+  public static Program lower(InputStream program) {
+    var sink = new PrintStream(OutputStream.nullOutputStream());
+    var driver = new Driver(sink, sink);
+    driver.setInputStream(program);
+    driver.enablePrintIR();
+    return driver.run() == State.Finished ? driver.getIRProgram() : null;
+  }
+
+  public static Function function(Program program, String name) {
+    for (Iterator<Function> func_it = program.getFunctions(); func_it.hasNext();) {
+      var f = func_it.next();
+      if (f.getName().equals(name))
+        return f;
+    }
+    throw new AssertionError("no function " + name);
+  }
+
+  public static String emulate(Program program) {
+    return emulate(program, new ByteArrayInputStream(new byte[0]));
+  }
+
+  public static String emulate(Program program, InputStream input) {
+    var output = new ByteArrayOutputStream();
+    new Emulator(program, input, output).run();
+    return output.toString(StandardCharsets.US_ASCII).trim();
+  }
+
+  public static String runNative(Program program) throws IOException {
+    return runNative(program, new ByteArrayInputStream(new byte[0]));
+  }
+
+  /**
+   * Generates the assembly of a program, links it with the runtime and returns what it prints.
+   */
+  public static String runNative(Program program, InputStream input) throws IOException {
+    Path dir = Files.createTempDirectory("crux");
+    Path assembly = dir.resolve("a.s");
+    Path binary = dir.resolve("a.bin");
+    try {
+      new CodeGen(program, assembly.toString()).genCode();
+      Process build = new ProcessBuilder("gcc", assembly.toString(), RUNTIME, "-o",
+          binary.toString()).redirectErrorStream(true).start();
+      byte[] buildOutput = build.getInputStream().readAllBytes();
+      if (build.waitFor() != 0)
+        throw new AssertionError("Assembling and linking failed:\n"
+            + new String(buildOutput, StandardCharsets.US_ASCII));
+
+      Process run = new ProcessBuilder(binary.toString()).start();
+      try (OutputStream runInput = run.getOutputStream()) {
+        input.transferTo(runInput);
+      }
+      String output = new String(run.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+      run.waitFor();
+      return output.trim();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AssertionError("interrupted", e);
+    } finally {
+      Files.deleteIfExists(binary);
+      Files.deleteIfExists(assembly);
+      Files.delete(dir);
+    }
+  }
+
+  /**
+   * Returns the resource names of the programs of a stage, without the {@code .crx} extension.
+   */
+  public static List<String> getPrograms(String stageName) throws IOException {
+    var loader = TestPrograms.class.getClassLoader();
+    var folder = String.format("crux/stages/%s", stageName);
+    try (var programs = loader.getResourceAsStream(folder);
+        BufferedReader br =
+            new BufferedReader(new InputStreamReader(Objects.requireNonNull(programs)))) {
+
+      return br.lines().filter(resourceName -> resourceName.endsWith(".crx"))
+          .map(resourceName -> folder + "/" + resourceName.substring(0, resourceName.length() - 4))
+          .sorted().collect(Collectors.toList());
+    }
+  }
+}
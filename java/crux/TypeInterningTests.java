@@ -0,0 +1,70 @@
+package crux;
+
+import crux.frontend.types.ArrayType;
+import crux.frontend.types.BoolType;
+import crux.frontend.types.FuncType;
+import crux.frontend.types.IntType;
+import crux.frontend.types.Type;
+import crux.frontend.types.TypeList;
+import crux.frontend.types.VoidType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that a type is the same object every time it is asked for while it is used, and that the
+ * types no one uses any more are not kept, so a long running JVM does not fill up with them.
+ */
+final class TypeInterningTests {
+  private static final int TYPES = 10_000;
+
+  @Test
+  void sameObjectWhileUsed() {
+    var array = ArrayType.of(3, IntType.INSTANCE);
+    var list = TypeList.of(array, BoolType.INSTANCE);
+    var func = FuncType.of(list, VoidType.INSTANCE);
+    collectGarbage();
+    Assertions.assertSame(array, ArrayType.of(3, IntType.INSTANCE));
+    Assertions.assertSame(list, TypeList.of(ArrayType.of(3, IntType.INSTANCE), BoolType.INSTANCE));
+    Assertions.assertSame(func, FuncType.of(list, VoidType.INSTANCE));
+  }
+
+  /**
+   * Only the longer list is held, so the lookup has to find it through a prefix no one else uses.
+   */
+  @Test
+  void longerListOutlivesItsPrefix() {
+    var list = TypeList.of(ArrayType.of(5, BoolType.INSTANCE), IntType.INSTANCE);
+    collectGarbage();
+    Assertions.assertSame(list, TypeList.of(ArrayType.of(5, BoolType.INSTANCE), IntType.INSTANCE));
+  }
+
+  @Test
+  void unusedTypesAreDropped() {
+    var dropped = new ArrayList<WeakReference<Type>>();
+    for (int i = 0; i < TYPES; i++) {
+      var array = ArrayType.of(1_000_000L + i, IntType.INSTANCE);
+      var list = TypeList.of(IntType.INSTANCE, array);
+      var func = FuncType.of(list, array);
+      for (Type type : List.of(array, list, func)) {
+        dropped.add(new WeakReference<>(type));
+      }
+    }
+    collectGarbage();
+    long kept = dropped.stream().filter(reference -> reference.get() != null).count();
+    Assertions.assertEquals(0, kept, "interned types that are no longer used were kept");
+
+    var array = ArrayType.of(1_000_000L, IntType.INSTANCE);
+    Assertions.assertEquals(1_000_000L, array.getExtent());
+    Assertions.assertSame(array, ArrayType.of(1_000_000L, IntType.INSTANCE));
+  }
+
+  private static void collectGarbage() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+  }
+}
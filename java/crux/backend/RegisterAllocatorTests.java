@@ -0,0 +1,258 @@
+package crux.backend;
+
+import crux.midend.ir.core.BasicBlock;
+import crux.midend.ir.core.Function;
+import crux.midend.ir.core.Instruction;
+import crux.midend.ir.core.Liveness;
+import crux.midend.ir.core.Program;
+import crux.midend.ir.core.Value;
+import crux.midend.ir.core.Variable;
+import crux.midend.ir.core.insts.BinaryOperator;
+import crux.midend.ir.core.insts.CallInst;
+import crux.midend.opt.PassManager;
+import crux.midend.opt.SSAConstruction;
+import crux.midend.opt.SSADestruction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static crux.TestPrograms.function;
+import static crux.TestPrograms.getPrograms;
+import static crux.TestPrograms.lower;
+
+/**
+ * Allocates the registers of small programs and of the stage programs, and checks that no two
+ * values that are live at the same time share a location and that no value lives in a register
+ * that a call or a division clobbers.
+ */
+final class RegisterAllocatorTests {
+  private static final List<String> CALLER_SAVED = List.of(RegisterAllocator.CALLER_SAVED);
+  private static final List<String> CALLEE_SAVED = List.of(RegisterAllocator.CALLEE_SAVED);
+
+  @Test
+  void shortLivedValuesGetCallerSavedRegisters() {
+    var f = function(lower("int f(int a, int b, int c) {\n  return a * b + c;\n}\n"), "f");
+    var allocator = allocate(f);
+    for (Variable v : variables(f)) {
+      Assertions.assertTrue(CALLER_SAVED.contains(allocator.location(v)),
+          v + " is in " + allocator.location(v));
+    }
+    Assertions.assertTrue(allocator.getUsedCalleeSaved().isEmpty());
+    Assertions.assertEquals(0, allocator.getNumSlots());
+  }
+
+  @Test
+  void valuesLiveAcrossACallGetSavedCalleeSavedRegisters() {
+    var f = function(lower(String.join("\n",
+        "int f(int a) {",
+        "  int b;",
+        "  b = a * 3;",
+        "  printInt(a);",
+        "  return b;",
+        "}",
+        "")), "f");
+    var allocator = allocate(f);
+    String location = allocator.location(variable(f, "$b"));
+    Assertions.assertTrue(CALLEE_SAVED.contains(location), "b is in " + location);
+    Assertions.assertEquals(List.of(location), allocator.getUsedCalleeSaved());
+    Assertions.assertTrue(isSlot(allocator.getSaveSlot(location), allocator));
+  }
+
+  @Test
+  void spillsWhenMoreValuesAreLiveThanThereAreRegisters() {
+    var allocator = allocate(function(lower(manyLiveValues(16, false)), "f"));
+    Assertions.assertTrue(allocator.getNumSlots() > 0);
+  }
+
+  @Test
+  void spillsValuesLiveAcrossACallBeyondTheCalleeSavedRegisters() {
+    var f = function(lower(manyLiveValues(8, true)), "f");
+    var allocator = allocate(f);
+    int inSlots = 0;
+    for (Variable v : variables(f)) {
+      if (v.toString().startsWith("$x") && isSlot(allocator.location(v), allocator))
+        inSlots++;
+    }
+    Assertions.assertEquals(8 - CALLEE_SAVED.size(), inSlots);
+    Assertions.assertEquals(CALLEE_SAVED.size(), allocator.getUsedCalleeSaved().size());
+  }
+
+  @Test
+  void valuesLiveAcrossADivisionAreNotInRdx() {
+    var f = function(lower(String.join("\n",
+        "int f(int a, int b, int c, int d, int e, int g) {",
+        "  int q;",
+        "  q = a / b;",
+        "  return q + c + d + e + g + a + b;",
+        "}",
+        "")), "f");
+    allocate(f);
+  }
+
+  @Test
+  void variablesThatAreReadButNeverWrittenAreUndefined() {
+    var f = function(lower("void main() {\n  int x;\n  printInt(x);\n  println();\n}\n"), "main");
+    var allocator = allocate(f);
+    List<String> undefined =
+        allocator.getUndefined().stream().map(Object::toString).collect(Collectors.toList());
+    Assertions.assertEquals(1, undefined.size(), undefined.toString());
+    Assertions.assertTrue(undefined.get(0).startsWith("$x"), undefined.toString());
+  }
+
+  @Test
+  void stageProgramsAllocateWithoutConflicts() throws IOException {
+    var loader = getClass().getClassLoader();
+    for (String program : getPrograms("ir")) {
+      for (int level = 0; level <= 1; level++) {
+        for (boolean ssa : new boolean[] {false, true}) {
+          Program lowered;
+          try (var in = loader.getResourceAsStream(program + ".crx")) {
+            lowered = lower(Objects.requireNonNull(in));
+          }
+          if (lowered == null)
+            continue;
+          if (level > 0)
+            PassManager.forLevel(level).run(lowered);
+          for (Iterator<Function> func_it = lowered.getFunctions(); func_it.hasNext();) {
+            var f = func_it.next();
+            if (ssa) {
+              new SSAConstruction().run(lowered, f);
+              new SSADestruction().run(lowered, f);
+            }
+            allocate(f);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a function that reads a value into each of {@code count} variables, and only then adds
+   * them all up, optionally calling a function in between.
+   */
+  private static String manyLiveValues(int count, boolean call) {
+    var program = new StringBuilder("int f(int a) {\n");
+    for (int i = 0; i < count; i++) {
+      program.append("  int x").append(i).append(";\n");
+    }
+    for (int i = 0; i < count; i++) {
+      program.append("  x").append(i).append(" = a * ").append(i + 2).append(";\n");
+    }
+    if (call)
+      program.append("  printInt(a);\n");
+    program.append("  return x0");
+    for (int i = 1; i < count; i++) {
+      program.append(" + x").append(i);
+    }
+    return program.append(";\n}\n").toString();
+  }
+
+  /**
+   * Allocates the registers of a function and checks the allocation against the liveness of its
+   * variables.
+   */
+  private static RegisterAllocator allocate(Function f) {
+    var cfg = f.getControlFlowGraph();
+    var allocator = new RegisterAllocator(f, cfg);
+    var liveness = new Liveness(cfg);
+    for (Variable v : variables(f)) {
+      String location = allocator.location(v);
+      Assertions.assertTrue(location.startsWith("%") || isSlot(location, allocator),
+          v + " is in " + location);
+      Assertions.assertFalse(List.of("%rax", "%r10", "%r11").contains(location),
+          v + " is in the scratch register " + location);
+    }
+    for (String register : allocator.getUsedCalleeSaved()) {
+      Assertions.assertTrue(isSlot(allocator.getSaveSlot(register), allocator));
+    }
+
+    for (BasicBlock block : cfg.getBlocks()) {
+      BitSet live = (BitSet) liveness.getLiveOut(block).clone();
+      List<Instruction> instructions = block.getInstructions();
+      for (int k = instructions.size() - 1; k >= 0; k--) {
+        Instruction inst = instructions.get(k);
+        Variable dst = inst.getDestVar();
+        // What is live after the instruction, but not written by it, lives through it.
+        if (dst != null)
+          live.clear(liveness.indexOf(dst));
+        assertDistinct(f, inst, live, dst, liveness, allocator);
+        assertNotClobbered(f, inst, live, liveness, allocator);
+        for (Value v : inst.getOperands()) {
+          if (v instanceof Variable)
+            live.set(liveness.indexOf((Variable) v));
+        }
+        assertDistinct(f, inst, live, null, liveness, allocator);
+      }
+    }
+    return allocator;
+  }
+
+  /**
+   * Checks that the live variables, and the variable an instruction writes, are all in different
+   * locations.
+   */
+  private static void assertDistinct(Function f, Instruction inst, BitSet live, Variable dst,
+      Liveness liveness, RegisterAllocator allocator) {
+    Map<String, Variable> holders = new HashMap<>();
+    if (dst != null)
+      holders.put(allocator.location(dst), dst);
+    for (int i = live.nextSetBit(0); i >= 0; i = live.nextSetBit(i + 1)) {
+      Variable v = liveness.getVariable(i);
+      Variable other = holders.put(allocator.location(v), v);
+      Assertions.assertNull(other, String.format("%s and %s are both in %s at %s in %s", v, other,
+          allocator.location(v), inst, f.getName()));
+    }
+  }
+
+  private static void assertNotClobbered(Function f, Instruction inst, BitSet through,
+      Liveness liveness, RegisterAllocator allocator) {
+    boolean isCall = inst instanceof CallInst;
+    boolean isDiv = inst instanceof BinaryOperator
+        && ((BinaryOperator) inst).getOperator() == BinaryOperator.Op.Div;
+    for (int i = through.nextSetBit(0); i >= 0; i = through.nextSetBit(i + 1)) {
+      Variable v = liveness.getVariable(i);
+      String location = allocator.location(v);
+      Assertions.assertFalse(isCall && CALLER_SAVED.contains(location),
+          String.format("%s is in %s across %s in %s", v, location, inst, f.getName()));
+      Assertions.assertFalse(isDiv && location.equals("%rdx"),
+          String.format("%s is in %%rdx across %s in %s", v, inst, f.getName()));
+    }
+  }
+
+  private static boolean isSlot(String location, RegisterAllocator allocator) {
+    if (location == null || !location.matches("-[0-9]+\\(%rbp\\)"))
+      return false;
+    int offset = Integer.parseInt(location.substring(1, location.indexOf('(')));
+    return offset % 8 == 0 && offset / 8 <= allocator.getNumSlots();
+  }
+
+  private static List<Variable> variables(Function f) {
+    List<Variable> variables = new ArrayList<>(f.getArguments());
+    for (BasicBlock block : f.getControlFlowGraph().getBlocks()) {
+      for (Instruction inst : block.getInstructions()) {
+        if (inst.getDestVar() != null && !variables.contains(inst.getDestVar()))
+          variables.add(inst.getDestVar());
+      }
+    }
+    return variables;
+  }
+
+  private static Variable variable(Function f, String prefix) {
+    for (Variable v : variables(f)) {
+      if (v.toString().startsWith(prefix))
+        return v;
+    }
+    throw new AssertionError("no variable " + prefix + " in " + f.getName());
+  }
+
+
+}
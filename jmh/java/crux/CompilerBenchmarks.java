@@ -0,0 +1,163 @@
+package crux;
+
+import crux.backend.CodeGen;
+import crux.frontend.ASTBuilder;
+import crux.frontend.CruxTokenSource;
+import crux.frontend.Identifiers;
+import crux.frontend.IterativeCruxParser;
+import crux.frontend.ast.DeclarationList;
+import crux.frontend.pt.CruxLexer;
+import crux.frontend.pt.CruxParser;
+import crux.frontend.types.TypeChecker;
+import crux.midend.ASTLower;
+import crux.midend.ir.core.Emulator;
+import crux.midend.ir.core.FastEmulator;
+import crux.midend.ir.core.Program;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures every stage of the compiler on its own, on programs made by {@link ProgramGenerator}.
+ * The input of every stage is prepared once per trial by running the stages before it, so each
+ * benchmark only measures its own stage.
+ * <p>
+ * There is no ParseTreeLower stage any more. {@link #buildAST()} measures what replaced it: the
+ * {@link ASTBuilder} walking a parse tree, as it does for {@code --build-parse-tree}.
+ * <p>
+ * {@link #genCode()} writes the assembly to a stream that drops it, so it measures generating the
+ * assembly but not writing a file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompilerBenchmarks {
+  @Param({"10", "50"})
+  public int functions;
+
+  @Param({"2", "3"})
+  public int depth;
+
+  @Param({"16", "1024"})
+  public int arraySize;
+
+  @Param({"42"})
+  public long seed;
+
+  private final PrintStream sink = new PrintStream(OutputStream.nullOutputStream());
+  private String source;
+  private CruxParser.ProgramContext parseTree;
+  private DeclarationList ast;
+  private TypeChecker typeChecker;
+  private Program program;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    source = new ProgramGenerator(functions, depth, arraySize, seed).generate();
+    parseTree = parse();
+    ast = buildAST();
+    typeChecker = typeCheck();
+    if (!typeChecker.getErrors().isEmpty())
+      throw new IllegalStateException("generated program does not type check: "
+          + typeChecker.getErrors());
+    program = lowerAST();
+  }
+
+  @Benchmark
+  public List<? extends Token> lex() {
+    return new CruxLexer(CharStreams.fromString(source)).getAllTokens();
+  }
+
+  /**
+   * Scans with the hand-written lexer, compare with {@link #lex()}.
+   */
+  @Benchmark
+  public List<Token> lexHandWritten() {
+    var lexer = new CruxTokenSource(CharStreams.fromString(source));
+    var tokens = new ArrayList<Token>();
+    for (Token t = lexer.nextToken(); t.getType() != Token.EOF; t = lexer.nextToken()) {
+      tokens.add(t);
+    }
+    return tokens;
+  }
+
+  @Benchmark
+  public CruxParser.ProgramContext parse() {
+    var lexer = new CruxLexer(CharStreams.fromString(source));
+    var parser = new IterativeCruxParser(new CommonTokenStream(lexer));
+    parser.setErrorHandler(new BailErrorStrategy());
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    return parser.parseProgram();
+  }
+
+  @Benchmark
+  public DeclarationList buildAST() {
+    return new ASTBuilder(sink, new Identifiers()).build(parseTree);
+  }
+
+  /**
+   * Parses straight to the AST, compare with {@link #parse()} plus {@link #buildAST()}.
+   */
+  @Benchmark
+  public DeclarationList parseToAST() {
+    var lexer = new CruxLexer(CharStreams.fromString(source));
+    var parser = new IterativeCruxParser(new CommonTokenStream(lexer));
+    var builder = new ASTBuilder(parser, sink);
+    parser.setBuildParseTree(false);
+    parser.setErrorHandler(new BailErrorStrategy());
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    parser.parseProgram();
+    return builder.getAST();
+  }
+
+  @Benchmark
+  public TypeChecker typeCheck() {
+    var checker = new TypeChecker();
+    checker.check(ast);
+    return checker;
+  }
+
+  @Benchmark
+  public Program lowerAST() {
+    return new ASTLower(typeChecker).lower(ast);
+  }
+
+  @Benchmark
+  public void genCode() {
+    new CodeGen(program, OutputStream.nullOutputStream()).genCode();
+  }
+
+  @Benchmark
+  public void emulate() {
+    new Emulator(program, new ByteArrayInputStream(new byte[0]), sink).run();
+  }
+
+  @Benchmark
+  public void emulateFast() {
+    new FastEmulator(program, new ByteArrayInputStream(new byte[0]), sink).run();
+  }
+}
@@ -0,0 +1,178 @@
+package crux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic Crux programs for the benchmarks. The programs are valid, type check and
+ * terminate, so every stage of the compiler and the emulators can run on them.
+ * <p>
+ * Every function {@code f<k>} takes two integers and calls {@code f<k-1>} once, {@code main} calls
+ * the last function, so every function body is executed once. The bodies are made of assignments,
+ * if-else statements and loops nested up to the configured depth. Every loop runs a fixed number
+ * of times. Loop counters index the global arrays, which {@code main} fills before calling the
+ * functions.
+ * <p>
+ * {@link crux.midend.ASTLower} only lowers loops correctly outside of if-else statements and other
+ * loops and when they are followed by an assignment, so the generated programs never contain other
+ * loops.
+ * <p>
+ * The same seed always produces the same program.
+ */
+public final class ProgramGenerator {
+  private static final int LOOP_TRIPS = 4;
+  private static final int STATEMENTS_PER_BLOCK = 4;
+  private static final int NUM_ARRAYS = 2;
+  private static final int MAX_LOOP_NESTING = 1;
+
+  private final int numFunctions;
+  private final int depth;
+  private final int arraySize;
+  private final Random random;
+  private final StringBuilder out = new StringBuilder();
+  private int indent = 0;
+
+  /**
+   * @param numFunctions the number of functions besides {@code main}, at least 1.
+   * @param depth how deep loops and if-else statements are nested.
+   * @param arraySize the number of elements of every global array, at least as many as the trips
+   *        of a loop.
+   * @param seed the seed of the random choices.
+   */
+  public ProgramGenerator(int numFunctions, int depth, int arraySize, long seed) {
+    if (numFunctions < 1)
+      throw new IllegalArgumentException("at least one function is needed");
+    if (arraySize < LOOP_TRIPS)
+      throw new IllegalArgumentException("arrays need at least " + LOOP_TRIPS + " elements");
+    this.numFunctions = numFunctions;
+    this.depth = depth;
+    this.arraySize = arraySize;
+    this.random = new Random(seed);
+  }
+
+  public String generate() {
+    out.setLength(0);
+    for (int k = 0; k < NUM_ARRAYS; k++) {
+      line("int g%d[%d];", k, arraySize);
+    }
+    for (int k = 0; k < numFunctions; k++) {
+      function(k);
+    }
+    main();
+    return out.toString();
+  }
+
+  private void function(int k) {
+    line("int f%d(int a, int b) {", k);
+    indent++;
+    line("int x;");
+    for (int d = 0; d < depth; d++) {
+      line("int i%d;", d);
+    }
+    line("x = a + %d;", random.nextInt(100));
+    if (k > 0)
+      line("x = x + f%d(x, b);", k - 1);
+    block(0, new ArrayList<>(), true);
+    line("return x;");
+    indent--;
+    line("}");
+  }
+
+  private void main() {
+    line("void main() {");
+    indent++;
+    line("int i;");
+    for (int k = 0; k < NUM_ARRAYS; k++) {
+      line("i = 0;");
+      line("loop {");
+      indent++;
+      line("if (i >= %d) {", arraySize);
+      line("  break;");
+      line("}");
+      line("g%d[i] = i * %d;", k, k + 1);
+      line("i = i + 1;");
+      indent--;
+      line("}");
+    }
+    line("printInt(f%d(1, 2));", numFunctions - 1);
+    line("println();");
+    indent--;
+    line("}");
+  }
+
+  /**
+   * Emits the statements of a block nested {@code level} deep inside the function body.
+   * {@code counters} are the loop counters of the enclosing loops.
+   */
+  private void block(int level, List<String> counters, boolean loopsAllowed) {
+    for (int s = 0; s < STATEMENTS_PER_BLOCK; s++) {
+      int choice = random.nextInt(level >= depth ? 2 : loopsAllowed ? 4 : 3);
+      switch (choice) {
+        case 0:
+          line("x = %s;", expression(counters));
+          break;
+        case 1:
+          if (counters.isEmpty()) {
+            line("b = b + x / %d;", 1 + random.nextInt(9));
+          } else {
+            String index = counters.get(random.nextInt(counters.size()));
+            line("g%d[%s] = g%d[%s] + x;", random.nextInt(NUM_ARRAYS), index,
+                random.nextInt(NUM_ARRAYS), index);
+          }
+          break;
+        case 2:
+          line("if (%s > %s) {", expression(counters), expression(counters));
+          indent++;
+          block(level + 1, counters, false);
+          indent--;
+          line("} else {");
+          indent++;
+          block(level + 1, counters, false);
+          indent--;
+          line("}");
+          break;
+        case 3:
+          String counter = "i" + level;
+          line("%s = 0;", counter);
+          line("loop {");
+          indent++;
+          line("if (%s >= %d) {", counter, LOOP_TRIPS);
+          line("  break;");
+          line("}");
+          List<String> inner = new ArrayList<>(counters);
+          inner.add(counter);
+          block(level + 1, inner, inner.size() < MAX_LOOP_NESTING);
+          line("%s = %s + 1;", counter, counter);
+          indent--;
+          line("}");
+          line("x = x + %s;", counter);
+          break;
+      }
+    }
+  }
+
+  private String expression(List<String> counters) {
+    List<String> operands = new ArrayList<>(List.of("x", "a", "b"));
+    operands.addAll(counters);
+    if (!counters.isEmpty())
+      operands.add(String.format("g%d[%s]", random.nextInt(NUM_ARRAYS),
+          counters.get(random.nextInt(counters.size()))));
+    String lhs = operands.get(random.nextInt(operands.size()));
+    String rhs = operands.get(random.nextInt(operands.size()));
+    switch (random.nextInt(4)) {
+      case 0:
+        return String.format("%s + %s", lhs, rhs);
+      case 1:
+        return String.format("%s - %s", lhs, rhs);
+      case 2:
+        return String.format("%s * %d", lhs, 1 + random.nextInt(3));
+      default:
+        return String.format("(%s + %d) / %d", lhs, random.nextInt(10), 1 + random.nextInt(4));
+    }
+  }
+
+  private void line(String format, Object... args) {
+    out.append("  ".repeat(indent)).append(String.format(format, args)).append('\n');
+  }
+}
@@ -0,0 +1,187 @@
+package crux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many Crux files in one JVM on a pool of worker threads, so the JVM starts and warms up
+ * only once. Every file gets its own {@link Driver}, and its assembly is written next to it:
+ * {@code dir/foo.crx} is compiled to {@code dir/foo.s}.
+ * <p>
+ * The output and diagnostics of every file are collected while it is compiled and printed in the
+ * order of the inputs, every diagnostic line prefixed with the name of its file. The batch fails if
+ * any file fails. Without {@code --emulator-input} the emulators read from an empty input, the
+ * workers can not share standard input.
+ */
+final class BatchCompiler {
+  private static final class Result {
+    final Path file;
+    final State state;
+    final String out;
+    final String err;
+    final CompilationStats stats;
+
+    Result(Path file, State state, String out, String err, CompilationStats stats) {
+      this.file = file;
+      this.state = state;
+      this.out = out;
+      this.err = err;
+      this.stats = stats;
+    }
+  }
+
+  private final Consumer<Driver> configuration;
+  private final int numThreads;
+  private String statsFile = null;
+
+  /**
+   * @param configuration applies the command line options to the driver of every file.
+   * @param numThreads the number of files that are compiled at the same time.
+   */
+  BatchCompiler(Consumer<Driver> configuration, int numThreads) {
+    this.configuration = configuration;
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * Writes the statistics of all files as a single JSON object to a file, or nothing if null.
+   */
+  void setStatsFile(String statsFile) {
+    this.statsFile = statsFile;
+  }
+
+  /**
+   * Returns the files to compile: files are taken as they are, directories are searched for
+   * {@code .crx} files, which are sorted by path.
+   */
+  static List<Path> collectInputs(List<String> inputs) throws IOException {
+    List<Path> files = new ArrayList<>();
+    for (String input : inputs) {
+      Path path = Path.of(input);
+      if (!Files.isDirectory(path)) {
+        files.add(path);
+        continue;
+      }
+      try (Stream<Path> walk = Files.walk(path)) {
+        files.addAll(walk.filter(Files::isRegularFile)
+            .filter(file -> file.getFileName().toString().endsWith(".crx")).sorted()
+            .collect(Collectors.toList()));
+      }
+    }
+    return files;
+  }
+
+  static Path outputFile(Path input) {
+    String name = input.getFileName().toString();
+    if (name.endsWith(".crx"))
+      name = name.substring(0, name.length() - ".crx".length());
+    return input.resolveSibling(name + ".s");
+  }
+
+  State run(List<Path> files, PrintStream out, PrintStream err) {
+    if (files.isEmpty()) {
+      err.println("error: no .crx files to compile.");
+      return State.Error;
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, files.size()));
+    List<Result> results = new ArrayList<>();
+    try {
+      List<Future<Result>> pending = new ArrayList<>();
+      for (Path file : files) {
+        pending.add(pool.submit(() -> compile(file)));
+      }
+      for (Future<Result> future : pending) {
+        Result result = await(future);
+        results.add(result);
+        out.print(result.out);
+        for (String line : result.err.lines().collect(Collectors.toList())) {
+          err.println(result.file + ": " + line);
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    long failed = results.stream().filter(result -> result.state == State.Error).count();
+    err.println(String.format("compiled %d files, %d failed", files.size(), failed));
+    writeStats(results);
+    return failed > 0 ? State.Error : State.Finished;
+  }
+
+  private Result compile(Path file) {
+    var outBuffer = new ByteArrayOutputStream();
+    var errBuffer = new ByteArrayOutputStream();
+    var driverOut = new PrintStream(outBuffer);
+    var driverErr = new PrintStream(errBuffer);
+    var driver = new Driver(InputStream.nullInputStream(), driverOut, driverErr);
+    configuration.accept(driver);
+    driver.setInputFile(file.toString());
+    driver.setOutputFile(outputFile(file).toString());
+    if (!driver.hasEmulatorInputFile())
+      driver.setEmulatorInput(InputStream.nullInputStream());
+    if (statsFile != null)
+      driver.enableStats();
+
+    State state;
+    try {
+      state = driver.run();
+    } catch (Exception e) {
+      driverErr.println("error: " + e.getMessage());
+      state = State.Error;
+    } catch (Error e) {
+      // e.g. a stack overflow, which only fails this file and not the others
+      driverErr.println("error: " + e);
+      state = State.Error;
+    }
+    driverOut.flush();
+    driverErr.flush();
+    return new Result(file, state, outBuffer.toString(), errBuffer.toString(), driver.getStats());
+  }
+
+  private static Result await(Future<Result> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted while compiling", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  private void writeStats(List<Result> results) {
+    if (statsFile == null)
+      return;
+    var json = new StringBuilder("{\"files\":[");
+    String separator = "";
+    for (Result result : results) {
+      if (result.stats == null)
+        continue;
+      json.append(separator).append("{\"file\":\"")
+          .append(result.file.toString().replace("\\", "\\\\").replace("\"", "\\\""))
+          .append("\",\"state\":\"").append(result.state).append("\",\"stats\":")
+          .append(result.stats.toJson()).append('}');
+      separator = ",";
+    }
+    json.append("]}");
+    try {
+      Files.writeString(Path.of(statsFile), json + System.lineSeparator());
+    } catch (IOException e) {
+      throw new RuntimeException(String.format("cannot write file '%s'", statsFile), e);
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package crux;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Records the wall time, the allocated bytes and some counts (tokens, nodes, instructions, ...) of
+ * every stage of a compilation. Enabled by {@code --time-passes}, which prints the statistics as
+ * text, and by {@code --stats <file>}, which writes them as JSON.
+ * <p>
+ * Allocated bytes are those of the compiling thread, as reported by the {@link ThreadMXBean}. They
+ * are -1 on JVMs that can not measure them. A stage that also ran on other threads, such as the
+ * workers of the common fork-join pool, is marked with {@link #ranOnOtherThreads()}: its bytes are
+ * only those of the compiling thread, which the text shows with a {@code +} and the JSON with
+ * {@code "allocatedBytesPartial":true}. Stages run one after the other, they do not nest.
+ */
+public final class CompilationStats {
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  /**
+   * The statistics of a single stage.
+   */
+  public static final class Stage {
+    private final String name;
+    private long wallNanos;
+    private long allocatedBytes;
+    private boolean allocatedBytesPartial = false;
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+
+    private Stage(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getWallNanos() {
+      return wallNanos;
+    }
+
+    public long getAllocatedBytes() {
+      return allocatedBytes;
+    }
+
+    /**
+     * Returns whether the stage also allocated on other threads, which are not counted.
+     */
+    public boolean isAllocatedBytesPartial() {
+      return allocatedBytesPartial;
+    }
+
+    public Map<String, Long> getCounts() {
+      return counts;
+    }
+  }
+
+  private final List<Stage> stages = new ArrayList<>();
+  private Stage current;
+
+  /**
+   * Runs a stage and records its wall time and allocated bytes. Counts recorded while the stage
+   * runs belong to it.
+   */
+  public <T> T time(String name, Supplier<T> stage) {
+    current = new Stage(name);
+    stages.add(current);
+    long bytes = allocatedBytes();
+    long start = System.nanoTime();
+    try {
+      return stage.get();
+    } finally {
+      current.wallNanos = System.nanoTime() - start;
+      current.allocatedBytes = bytes < 0 ? -1 : allocatedBytes() - bytes;
+      current = null;
+    }
+  }
+
+  /**
+   * Adds to a count of the stage that is running.
+   */
+  public void count(String name, long value) {
+    if (current == null)
+      throw new IllegalStateException("no stage is running");
+    current.counts.merge(name, value, Long::sum);
+  }
+
+  /**
+   * Notes that the stage that is running also does some of its work on other threads, whose
+   * allocations are not counted.
+   */
+  public void ranOnOtherThreads() {
+    if (current == null)
+      throw new IllegalStateException("no stage is running");
+    current.allocatedBytesPartial = true;
+  }
+
+  public List<Stage> getStages() {
+    return stages;
+  }
+
+  public long getTotalWallNanos() {
+    return stages.stream().mapToLong(Stage::getWallNanos).sum();
+  }
+
+  public long getTotalAllocatedBytes() {
+    long total = 0;
+    for (Stage stage : stages) {
+      if (stage.allocatedBytes < 0)
+        return -1;
+      total += stage.allocatedBytes;
+    }
+    return total;
+  }
+
+  public boolean isTotalAllocatedBytesPartial() {
+    return stages.stream().anyMatch(Stage::isAllocatedBytesPartial);
+  }
+
+  private static long allocatedBytes() {
+    if (THREADS instanceof com.sun.management.ThreadMXBean) {
+      var threads = (com.sun.management.ThreadMXBean) THREADS;
+      if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  public void printText(PrintStream out) {
+    out.println(String.format("%-16s %12s %16s  %s", "stage", "wall (ms)", "allocated (KiB)",
+        "counts"));
+    for (Stage stage : stages) {
+      List<String> counts = new ArrayList<>();
+      for (Map.Entry<String, Long> count : stage.counts.entrySet()) {
+        counts.add(count.getKey() + "=" + count.getValue());
+      }
+      out.println(String.format("%-16s %12.3f %16s  %s", stage.name, stage.wallNanos / 1e6,
+          kibibytes(stage.allocatedBytes, stage.allocatedBytesPartial), String.join(" ", counts)));
+    }
+    out.println(String.format("%-16s %12.3f %16s", "total", getTotalWallNanos() / 1e6,
+        kibibytes(getTotalAllocatedBytes(), isTotalAllocatedBytesPartial())));
+    if (isTotalAllocatedBytesPartial() && getTotalAllocatedBytes() >= 0)
+      out.println("+ only the bytes allocated by the compiling thread, other threads not counted");
+  }
+
+  private static String kibibytes(long bytes, boolean partial) {
+    return bytes < 0 ? "n/a" : (bytes / 1024) + (partial ? "+" : "");
+  }
+
+  /**
+   * Returns the statistics as a JSON object, with the stages in the order they ran.
+   */
+  public String toJson() {
+    var json = new StringBuilder();
+    json.append("{\"stages\":[");
+    for (int s = 0; s < stages.size(); s++) {
+      Stage stage = stages.get(s);
+      if (s > 0)
+        json.append(',');
+      json.append("{\"name\":").append(quote(stage.name));
+      json.append(",\"wallNanos\":").append(stage.wallNanos);
+      json.append(",\"allocatedBytes\":").append(stage.allocatedBytes);
+      json.append(",\"allocatedBytesPartial\":").append(stage.allocatedBytesPartial);
+      json.append(",\"counts\":{");
+      String separator = "";
+      for (Map.Entry<String, Long> count : stage.counts.entrySet()) {
+        json.append(separator).append(quote(count.getKey())).append(':').append(count.getValue());
+        separator = ",";
+      }
+      json.append("}}");
+    }
+    json.append("],\"totalWallNanos\":").append(getTotalWallNanos());
+    json.append(",\"totalAllocatedBytes\":").append(getTotalAllocatedBytes());
+    json.append(",\"totalAllocatedBytesPartial\":").append(isTotalAllocatedBytesPartial());
+    json.append('}');
+    return json.toString();
+  }
+
+  private static String quote(String s) {
+    var quoted = new StringBuilder("\"");
+    for (char c : s.toCharArray()) {
+      if (c == '"' || c == '\\')
+        quoted.append('\\').append(c);
+      else if (c < 0x20)
+        quoted.append(String.format("\\u%04x", (int) c));
+      else
+        quoted.append(c);
+    }
+    return quoted.append('"').toString();
+  }
+}
@@ -0,0 +1,75 @@
+package crux;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The command line client of the {@link CompileServer}. It takes the same arguments as
+ * {@link Compiler#main}, optionally preceded by {@code --socket <path>}, and behaves the same: it
+ * prints the output and diagnostics of the compilation, writes the assembly to {@code a.s} and exits
+ * with the same status. If no server is running, or the socket is in a directory that others can
+ * access, it compiles in its own JVM.
+ * <p>
+ * The emulator reads its input from the client, which reads all of standard input before sending
+ * the request, so an interactive program needs its input up front.
+ */
+public final class CompileClient {
+  private static final List<String> EMULATOR_OPTIONS =
+      List.of("--emulator", "--emulator=fast", "--debug-emulator");
+
+  public static void main(String[] args) throws IOException {
+    Path path = CompileServer.defaultSocket();
+    if (args.length >= 2 && args[0].equals("--socket")) {
+      path = Path.of(args[1]);
+      args = Arrays.copyOfRange(args, 2, args.length);
+    }
+
+    SocketChannel socket;
+    try {
+      CompileServer.checkDirectory(path.toAbsolutePath().getParent());
+      socket = CompileServer.connect(path);
+    } catch (IOException e) {
+      Compiler.main(args);
+      return;
+    }
+
+    int status;
+    try (socket;
+        var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(socket)));
+        var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(socket)))) {
+      out.writeUTF(Path.of("").toAbsolutePath().toString());
+      out.writeInt(args.length);
+      for (String arg : args) {
+        out.writeUTF(arg);
+      }
+      CompileServer.writeBytes(out, readsStandardInput(args) ? System.in.readAllBytes() : new byte[0]);
+      out.flush();
+
+      status = in.readInt();
+      System.out.write(CompileServer.readBytes(in));
+      System.out.flush();
+      System.err.write(CompileServer.readBytes(in));
+      System.err.flush();
+      byte[] assembly = CompileServer.readBytes(in);
+      if (assembly != null)
+        Files.write(Path.of("a.s"), assembly);
+    }
+    if (status != 0)
+      System.exit(status);
+  }
+
+  private static boolean readsStandardInput(String[] args) {
+    List<String> options = List.of(args);
+    return options.stream().anyMatch(EMULATOR_OPTIONS::contains)
+        && !options.contains("--emulator-input");
+  }
+}
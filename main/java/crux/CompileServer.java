@@ -0,0 +1,238 @@
+package crux;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long running compiler that takes compile requests on a Unix domain socket. The JVM, the classes
+ * of the compiler and the DFA caches of the ANTLR lexer and parser stay warm from one request to
+ * the next, which saves most of the time of compiling a small file. {@link CompileClient} sends the
+ * requests and behaves like {@link Compiler#main}.
+ * <p>
+ * Every connection carries one request, and requests are compiled concurrently. A request consists
+ * of the working directory of the client, its command line arguments and the input of the emulator:
+ *
+ * <pre>
+ * UTF directory, int argc, UTF[argc] args, int inputLength, byte[inputLength] input
+ * </pre>
+ *
+ * The response holds the exit status, what was printed to stdout and stderr, and the assembly of a
+ * single input file, which is not written to {@code a.s} by the server unless {@code -o} names a
+ * file:
+ *
+ * <pre>
+ * int status, int outLength, byte[] out, int errLength, byte[] err, int asmLength, byte[] asm
+ * </pre>
+ *
+ * {@code asmLength} is -1 if no assembly was generated. Paths in the arguments are resolved
+ * against the directory of the client, other files (the assembly of batch mode, statistics) are
+ * written by the server. Whoever can connect can read and write files as the user running the
+ * server, so the socket is only made in a directory that no one else can access, see
+ * {@link #checkDirectory(Path)}.
+ */
+public final class CompileServer {
+  private static final Set<PosixFilePermission> OWNER_ONLY =
+      PosixFilePermissions.fromString("rwx------");
+
+  private final Path socket;
+  private final ServerSocketChannel serverChannel;
+  private final ExecutorService workers = Executors.newCachedThreadPool();
+
+  public CompileServer(Path socket) throws IOException {
+    this.socket = socket;
+    checkDirectory(socket.toAbsolutePath().getParent());
+    // A socket that is left behind by a server that is no longer running is replaced.
+    if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) {
+      if (isListening(socket))
+        throw new IOException(String.format("a server is already listening on '%s'", socket));
+      Files.delete(socket);
+    }
+    serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    serverChannel.bind(UnixDomainSocketAddress.of(socket));
+  }
+
+  public static void main(String[] args) throws IOException {
+    Path socket = defaultSocket();
+    if (args.length == 2 && args[0].equals("--socket")) {
+      socket = Path.of(args[1]);
+    } else if (args.length != 0) {
+      System.err.println("usage: crux.CompileServer [--socket <path>]");
+      System.exit(-1);
+    }
+    var server = new CompileServer(socket);
+    System.err.println("crux compile server listening on " + server.getSocket());
+    server.serve();
+  }
+
+  /**
+   * Returns the socket that the server listens on and the client connects to by default, in
+   * {@code $XDG_RUNTIME_DIR/crux} or else in a directory of the user in the temporary directory.
+   */
+  public static Path defaultSocket() {
+    String runtimeDirectory = System.getenv("XDG_RUNTIME_DIR");
+    Path directory = runtimeDirectory != null && !runtimeDirectory.isEmpty()
+        ? Path.of(runtimeDirectory, "crux")
+        : Path.of(System.getProperty("java.io.tmpdir"), "crux-" + System.getProperty("user.name"));
+    return directory.resolve("compile-server.sock");
+  }
+
+  /**
+   * Makes the directory of a socket if it does not exist, so that only its owner can access it.
+   * An existing directory must be owned by the user and closed to everyone else, otherwise someone
+   * else could have put a socket there or could connect to ours.
+   */
+  static void checkDirectory(Path directory) throws IOException {
+    if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+      try {
+        Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+      } catch (FileAlreadyExistsException e) {
+        // Made by someone else at the same time, it is checked below.
+      }
+    }
+    if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS))
+      throw new IOException(String.format("'%s' is not a directory", directory));
+    var owner = Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS);
+    if (!owner.getName().equals(System.getProperty("user.name")))
+      throw new IOException(String.format("'%s' is owned by %s", directory, owner.getName()));
+    var permissions = Files.getPosixFilePermissions(directory, LinkOption.NOFOLLOW_LINKS);
+    if (!OWNER_ONLY.containsAll(permissions)) {
+      throw new IOException(String.format("'%s' can be accessed by other users (%s), it must be %s",
+          directory, PosixFilePermissions.toString(permissions),
+          PosixFilePermissions.toString(OWNER_ONLY)));
+    }
+  }
+
+  /**
+   * Connects to the server listening on a socket.
+   */
+  static SocketChannel connect(Path socket) throws IOException {
+    return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+  }
+
+  private static boolean isListening(Path socket) {
+    try {
+      connect(socket).close();
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  public Path getSocket() {
+    return socket;
+  }
+
+  /**
+   * Accepts requests until the server is closed.
+   */
+  public void serve() throws IOException {
+    try {
+      while (true) {
+        SocketChannel client = serverChannel.accept();
+        workers.execute(() -> handle(client));
+      }
+    } finally {
+      workers.shutdown();
+    }
+  }
+
+  public void close() throws IOException {
+    try {
+      serverChannel.close();
+    } finally {
+      Files.deleteIfExists(socket);
+    }
+  }
+
+  private void handle(SocketChannel client) {
+    try (client;
+        var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+        var out =
+            new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)))) {
+      Path directory = Path.of(in.readUTF());
+      String[] args = new String[in.readInt()];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = in.readUTF();
+      }
+      byte[] input = in.readNBytes(in.readInt());
+
+      var stdout = new ByteArrayOutputStream();
+      var stderr = new ByteArrayOutputStream();
+      // CodeGen closes the stream once it has written everything.
+      var assembly = new ByteArrayOutputStream() {
+        boolean written = false;
+
+        @Override
+        public void close() {
+          written = true;
+        }
+      };
+      var outStream = new PrintStream(stdout);
+      var errStream = new PrintStream(stderr);
+      int status = 0;
+      try {
+        var compiler = new Compiler();
+        if (compiler.handleArgs(args, outStream)) {
+          compiler.resolvePaths(directory);
+          var result =
+              compiler.compile(new ByteArrayInputStream(input), outStream, errStream, assembly);
+          if (result == State.Error)
+            status = -1;
+        }
+      } catch (Exception e) {
+        errStream.println("error: " + e.getMessage());
+        e.printStackTrace(errStream);
+      } catch (Error e) {
+        // Compiler.main dies of an error, e.g. when the emulator reads past the end of its input,
+        // or the server runs out of memory. The client gets what it would have printed, and does
+        // not lose the connection.
+        errStream.print("Exception in thread \"main\" ");
+        e.printStackTrace(errStream);
+        status = 1;
+      }
+      outStream.flush();
+      errStream.flush();
+
+      out.writeInt(status);
+      writeBytes(out, stdout.toByteArray());
+      writeBytes(out, stderr.toByteArray());
+      writeBytes(out, assembly.written ? assembly.toByteArray() : null);
+    } catch (IOException e) {
+      System.err.println("error: lost connection to client: " + e.getMessage());
+    }
+  }
+
+  static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    if (bytes == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  static byte[] readBytes(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    return length < 0 ? null : in.readNBytes(length);
+  }
+}
@@ -1,19 +1,36 @@
 package crux;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
 /**
  * This Class is the Entry point for the project, it contains the main function.
  * 
  */
 public final class Compiler {
-  private static Driver driver = new Driver();
+  // The options are applied to every driver, batch mode has one driver per input file.
+  private final List<Consumer<Driver>> options = new ArrayList<>();
+  private final List<String> inputFiles = new ArrayList<>();
+  private String emulatorInputFile = null;
+  private String statsFile = null;
+  private String outputFile = null;
+  private int numJobs = Runtime.getRuntime().availableProcessors();
 
   public static void main(String[] args) {
     try {
-      if (!handleArgs(args)) {
+      var compiler = new Compiler();
+      if (!compiler.handleArgs(args, System.out)) {
         return;
       }
 
-      var result = driver.run();
+      var result = compiler.compile(System.in, System.out, System.err, null);
       if (result == State.Error)
         System.exit(-1);
     } catch (Exception e) {
@@ -22,87 +39,197 @@ public final class Compiler {
     }
   }
 
+  /**
+   * Compiles the input files like {@link #main} does.
+   *
+   * @param emulatorInput the input of the emulator if there is no {@code --emulator-input}.
+   * @param assembly receives the assembly of a single input file instead of {@code a.s}, unless it
+   *        is null or {@code -o} is given. Batch mode always writes files.
+   */
+  State compile(InputStream emulatorInput, PrintStream out, PrintStream err, OutputStream assembly)
+      throws IOException {
+    if (inputFiles.size() == 1 && !Files.isDirectory(Path.of(inputFiles.get(0)))) {
+      var driver = new Driver(out, err);
+      configure(driver);
+      driver.setInputFile(inputFiles.get(0));
+      if (emulatorInputFile == null)
+        driver.setEmulatorInput(emulatorInput);
+      if (statsFile != null)
+        driver.setStatsFile(statsFile);
+      if (outputFile != null)
+        driver.setOutputFile(outputFile);
+      else if (assembly != null)
+        driver.setOutputStream(assembly);
+      return driver.run();
+    }
+
+    if (outputFile != null)
+      throw new RuntimeException("-o can not be used with more than one input file");
+
+    var batch = new BatchCompiler(this::configure, numJobs);
+    batch.setStatsFile(statsFile);
+    return batch.run(BatchCompiler.collectInputs(inputFiles), out, err);
+  }
+
+  /**
+   * Makes the paths given on the command line relative to a directory instead of the working
+   * directory.
+   */
+  void resolvePaths(Path directory) {
+    inputFiles.replaceAll(file -> directory.resolve(file).toString());
+    if (emulatorInputFile != null)
+      emulatorInputFile = directory.resolve(emulatorInputFile).toString();
+    if (statsFile != null)
+      statsFile = directory.resolve(statsFile).toString();
+    if (outputFile != null && !outputFile.equals("-"))
+      outputFile = directory.resolve(outputFile).toString();
+  }
+
+  private void configure(Driver driver) {
+    for (var option : options) {
+      option.accept(driver);
+    }
+    if (emulatorInputFile != null)
+      driver.setEmulatorInputFile(emulatorInputFile);
+  }
+
   /**
    * This method handle parsing the command line args and enable the compiler's stage flag based on
    * the parsed input
    */
-  private static boolean handleArgs(String[] args) {
+  boolean handleArgs(String[] args, PrintStream out) {
     for (var i = 0; i < args.length; ++i) {
       var arg = args[i];
       switch (arg) {
         case "--help":
-          displayHelp();
+          displayHelp(out);
           return false;
         case "--authors":
-          displayAuthors();
+          displayAuthors(out);
           return false;
         case "--check-types":
-          driver.enableTypeCheck();
+          options.add(Driver::enableTypeCheck);
           break;
         case "--include-types":
-          driver.enableIncludeTypes();
+          options.add(Driver::enableIncludeTypes);
           break;
         case "--print-pt":
-          driver.enablePrintParseTree();
+          options.add(Driver::enablePrintParseTree);
           break;
         case "--print-ast":
-          driver.enablePrintAst();
+          options.add(Driver::enablePrintAst);
+          break;
+        case "--build-parse-tree":
+          options.add(Driver::enableBuildParseTree);
+          break;
+        case "--hand-written-lexer":
+          options.add(Driver::enableHandWrittenLexer);
           break;
         case "--print-ir":
-          driver.enablePrintIR();
+          options.add(Driver::enablePrintIR);
+          break;
+        case "--print-ir=ssa":
+          options.add(Driver::enableSSA);
+          options.add(Driver::enablePrintIR);
+          break;
+        case "--ssa":
+          options.add(Driver::enableSSA);
           break;
         case "--emulator":
-          driver.enableEmulator();
+          options.add(Driver::enableEmulator);
+          break;
+        case "--emulator=fast":
+          options.add(Driver::enableFastEmulator);
           break;
         case "--debug-emulator":
-          driver.enableDebugEmulator();
+          options.add(Driver::enableDebugEmulator);
+          break;
+        case "-O0":
+          options.add(driver -> driver.setOptimizationLevel(0));
+          break;
+        case "-O1":
+          options.add(driver -> driver.setOptimizationLevel(1));
+          break;
+        case "--parallel-functions":
+          options.add(Driver::enableParallelFunctions);
+          break;
+        case "--time-passes":
+          options.add(Driver::enableTimePasses);
+          break;
+        case "--incremental":
+          options.add(driver -> driver.setFunctionCache(FunctionCache.getShared()));
+          break;
+        case "--stats":
+          statsFile = args[++i];
+          break;
+        case "-o":
+          outputFile = args[++i];
+          break;
+        case "-j":
+        case "--jobs":
+          numJobs = Integer.parseInt(args[++i]);
+          if (numJobs < 1)
+            throw new RuntimeException("the number of jobs must be at least 1");
           break;
         case "--emulator-input": {
-          if (driver.hasEmulatorInputFile())
+          if (emulatorInputFile != null)
             throw new RuntimeException("multiple input files");
-          var inputFile = args[++i];
-          driver.setEmulatorInputFile(inputFile);
+          emulatorInputFile = args[++i];
           break;
         }
         default:
           if (arg.startsWith("-"))
             throw new RuntimeException(String.format("unrecognized command line option '%s'", arg));
-          if (driver.hasInputFile())
-            throw new RuntimeException(
-                String.format("multiple input files: '%s' and '%s'", driver.getInputFile(), arg));
-          driver.setInputFile(arg);
+          inputFiles.add(arg);
           break;
       }
     }
 
-    if (!driver.hasInputFile())
+    if (inputFiles.isEmpty())
       throw new RuntimeException("no input file.");
 
     return true;
   }
 
-  private static void displayHelp() {
-    System.out.println("usage: <crux> [options] [file]");
-    System.out.println("options:");
-    System.out.println("--help\t\t\t\tDisplay this information.");
-    System.out.println("--authors\t\t\tDisplay the list of authors.");
-    System.out.println("--check-types\t\tPerform a type check for the input program.");
-    System.out
+  private static void displayHelp(PrintStream out) {
+    out.println("usage: <crux> [options] [file...]");
+    out.println("options:");
+    out.println("--help\t\t\t\tDisplay this information.");
+    out.println("--authors\t\t\tDisplay the list of authors.");
+    out.println("--check-types\t\tPerform a type check for the input program.");
+    out
         .println("--include-types\t\tInclude type information in printed ast (see --print-ast).");
-    System.out.println("--print-pt\t\t\tPrint the parse tree to stdout.");
-    System.out.println("--print-ast\t\t\tPrint the abstract syntax tree to stdout.");
-    System.out.println("--emulator\t\t\tRun Emulator on IR.");
-    System.out.println("--debug-emulator\t\t\tRun Emulator on IR with debugging turned on.");
-    System.out.println("--emulator-input <input file>\t\t\tInput File for the emulator");
+    out.println("--print-pt\t\t\tPrint the parse tree to stdout.");
+    out.println("--print-ast\t\t\tPrint the abstract syntax tree to stdout.");
+    out.println("--build-parse-tree\t\tBuild the parse tree first, then walk it to build the AST.");
+    out.println("--hand-written-lexer\t\tScan the input without the generated ANTLR lexer.");
+    out.println("-O0\t\t\t\tDo not optimize the IR (default).");
+    out.println("-O1\t\t\t\tFold constants and remove dead code in the IR.");
+    out.println("--ssa\t\t\t\tConvert the IR to SSA form and back before running it.");
+    out.println("--print-ir=ssa\t\t\tPrint the IR in SSA form to stdout.");
+    out.println("--emulator\t\t\tRun Emulator on IR.");
+    out.println("--emulator=fast\t\t\tRun the bytecode Emulator on IR.");
+    out.println("--debug-emulator\t\t\tRun Emulator on IR with debugging turned on.");
+    out.println("--emulator-input <input file>\t\t\tInput File for the emulator");
+    out.println("--parallel-functions\t\tType check, lower and generate the functions in parallel.");
+    out.println("--time-passes\t\t\tPrint the time and memory used by every stage and");
+    out.println("\t\t\t\twhat every optimization pass changed.");
+    out.println("--stats <file>\t\t\tWrite the statistics of every stage to a JSON file.");
+    out.println("-o <file>\t\t\tWrite the assembly to file instead of a.s, - for stdout.");
+    out.println("-j, --jobs <n>\t\t\tCompile up to n files at once (batch mode).");
+    out.println("--incremental\t\t\tReuse the functions that were compiled before by this JVM,");
+    out.println("\t\t\t\tsee crux.CompileServer.");
+    out.println("Given several files or a directory, every .crx file is compiled to a .s file");
+    out.println("next to it (batch mode).");
   }
 
-  private static void displayAuthors() {
+  private static void displayAuthors(PrintStream out) {
     var separator = "";
     for (var author : Authors.all) {
-      System.out.print(separator);
-      System.out.printf("name: %s%n", author.name);
-      System.out.printf("student id: %s%n", author.studentId);
-      System.out.printf("UCINetID: %s%n", author.uciNetId);
+      out.print(separator);
+      out.printf("name: %s%n", author.name);
+      out.printf("student id: %s%n", author.studentId);
+      out.printf("UCINetID: %s%n", author.uciNetId);
       separator = System.lineSeparator();
     }
   }
@@ -1,43 +1,62 @@
 package crux;
 
 import crux.frontend.ANTLRErrorRecorder;
-import crux.frontend.ParseTreeLower;
+import crux.frontend.ASTBuilder;
+import crux.frontend.CruxTokenSource;
+import crux.frontend.IdentifierTokenFactory;
+import crux.frontend.Identifiers;
+import crux.frontend.IterativeCruxParser;
+import crux.frontend.MappedCharStream;
+import crux.backend.FunctionAssembly;
 import crux.frontend.ast.DeclarationList;
+import crux.frontend.ast.FunctionDefinition;
+import crux.frontend.ast.Node;
 import crux.frontend.pt.CruxLexer;
 import crux.frontend.pt.CruxParser;
 import crux.frontend.types.TypeChecker;
 import crux.midend.ASTLower;
 import crux.printing.IRPrinter;
+import crux.midend.ir.core.Function;
 import crux.midend.ir.core.Program;
+import crux.midend.opt.PassManager;
+import crux.midend.opt.SSAConstruction;
+import crux.midend.opt.SSADestruction;
 import crux.midend.ir.core.Emulator;
+import crux.midend.ir.core.FastEmulator;
 import crux.backend.CodeGen;
 import crux.printing.ASTPrinter;
 import crux.printing.ParseTreePrinter;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Supplier;
 
-enum State {
-  Continue, Finished, Error;
-
-  State then(Supplier<State> nextStage) {
-    if (this == Continue)
-      return nextStage.get();
-    return this;
-  }
-
-  State complete() {
-    return this == Finished ? Finished : Error;
-  }
-}
-
-
 /**
  * The driver that runs the various stages of the compilation.
  * <p>
+ * A driver holds the options and the results of one compilation. Nothing is shared between
+ * drivers except immutable or thread-safe caches, so different drivers can run on different
+ * threads at the same time, as long as they do not write the same output file.
+ * <p>
  * DO NOT MODIFY ANY SIGNATURES OF PUBLIC FUNCTION IN THIS CLASS OR WE CAN'T GRADE YOUR PROJECT!
  */
 public final class Driver {
@@ -46,21 +65,42 @@ public final class Driver {
   private final PrintStream err;
 
   private boolean printPt = false;
+  private boolean buildParseTree = false;
+  private boolean handWrittenLexer = false;
   private boolean printAst = false;
   private boolean includeTypes = false;
   private boolean typeCheck = false;
   private boolean printIR = false;
+  private boolean ssa = false;
   private boolean runEmulator = false;
+  private boolean fastEmulator = false;
+  private boolean debugEmulator = false;
+  private int optimizationLevel = 0;
+  private boolean parallelFunctions = false;
+  private boolean timePasses = false;
+  private boolean recordStats = false;
+  private String statsFile = null;
+  private String outputFile = "a.s";
+  private OutputStream outputStream = null;
+  private FunctionCache functionCache = null;
 
   private String inputFile;
+  private long mapThreshold = MappedCharStream.DEFAULT_THRESHOLD;
   private InputStream inputStream;
   private String emulatorInputFile = null;
   private InputStream emulatorInputStream = null;
 
+  private Identifiers identifiers;
   private CruxParser.ProgramContext parseTree;
+  private ASTBuilder astBuilder;
   private DeclarationList ast;
   private Program irProgram;
   private TypeChecker typeChecker;
+  private CompilationStats stats;
+  // The functions found in the function cache, and the keys of those that are not.
+  private Map<FunctionDefinition, FunctionCache.Entry> cachedDefinitions;
+  private Map<FunctionDefinition, String> uncachedDefinitions;
+  private Map<Function, FunctionCache.Entry> cacheEntries;
 
   Driver() {
     this(System.in, System.out, System.err);
@@ -80,6 +120,21 @@ public final class Driver {
     printPt = true;
   }
 
+  /**
+   * Builds the parse tree, then walks it with the {@link ASTBuilder} to build the AST, instead of
+   * building the AST while parsing. Printing the parse tree always builds it.
+   */
+  public void enableBuildParseTree() {
+    buildParseTree = true;
+  }
+
+  /**
+   * Scans the input with {@link CruxTokenSource} instead of the generated {@link CruxLexer}.
+   */
+  public void enableHandWrittenLexer() {
+    handWrittenLexer = true;
+  }
+
   public void enablePrintAst() {
     printAst = true;
   }
@@ -97,13 +152,94 @@ public final class Driver {
     printIR = true;
   }
 
+  public void enableSSA() {
+    ssa = true;
+  }
+
   public void enableEmulator() {
     runEmulator = true;
   }
 
   public void enableDebugEmulator() {
     runEmulator = true;
-    Emulator.DEBUG = true;
+    debugEmulator = true;
+  }
+
+  public void enableFastEmulator() {
+    runEmulator = true;
+    fastEmulator = true;
+  }
+
+  public void setOptimizationLevel(int level) {
+    optimizationLevel = level;
+  }
+
+  /**
+   * Type checks, lowers and generates the code of the functions in parallel, on the common
+   * fork-join pool. The errors, the IR and the assembly are the same as without.
+   */
+  public void enableParallelFunctions() {
+    parallelFunctions = true;
+  }
+
+  /**
+   * Prints the time, allocated memory and counts of every stage to the error stream, and how every
+   * optimization pass changed the number of instructions.
+   */
+  public void enableTimePasses() {
+    timePasses = true;
+  }
+
+  /**
+   * Records the time, allocated memory and counts of every stage, see {@link #getStats()}.
+   */
+  public void enableStats() {
+    recordStats = true;
+  }
+
+  /**
+   * Writes the time, allocated memory and counts of every stage as JSON to a file.
+   */
+  public void setStatsFile(String statsFile) {
+    this.statsFile = statsFile;
+  }
+
+  /**
+   * Sets the file the assembly code is written to, {@code a.s} by default. {@code -} writes it to
+   * the output stream of the driver.
+   */
+  public void setOutputFile(String outputFile) {
+    this.outputFile = outputFile;
+  }
+
+  /**
+   * Writes the assembly code to a stream instead of a file.
+   */
+  public void setOutputStream(OutputStream outputStream) {
+    this.outputStream = outputStream;
+  }
+
+  /**
+   * Reuses the functions that did not change since they were compiled into the cache, and adds
+   * those that did. Printing the types or the IR compiles every function from scratch.
+   */
+  public void setFunctionCache(FunctionCache functionCache) {
+    this.functionCache = functionCache;
+  }
+
+  /**
+   * Returns the statistics of the last run, or null if they were not enabled.
+   */
+  public CompilationStats getStats() {
+    return stats;
+  }
+
+  /**
+   * Returns the IR of the last run as the last stage that ran left it, or null if the program was
+   * not lowered.
+   */
+  Program getIRProgram() {
+    return irProgram;
   }
 
   public boolean hasInputFile() {
@@ -118,6 +254,14 @@ public final class Driver {
     this.inputFile = inputFile;
   }
 
+  /**
+   * Sets the size from which an input file that is all ASCII is mapped instead of read, see
+   * {@link MappedCharStream}.
+   */
+  public void setMapThreshold(long mapThreshold) {
+    this.mapThreshold = mapThreshold;
+  }
+
   public void setInputStream(InputStream inputStream) {
     this.inputStream = inputStream;
   }
@@ -135,21 +279,96 @@ public final class Driver {
   }
 
   public State run() {
-    return parse().then(this::makeAST).then(this::typeCheck).then(this::emitIR).then(this::emulator)
-        .then(this::emitASM).complete();
+    stats = recordStats || timePasses || statsFile != null ? new CompilationStats() : null;
+    boolean useCache = functionCache != null && !typeCheck && !printIR;
+    cachedDefinitions = new HashMap<>();
+    uncachedDefinitions = new LinkedHashMap<>();
+    cacheEntries = new HashMap<>();
+    var result = stage("parse", this::parse).then(() -> stage("ast", this::makeAST))
+        .then(() -> useCache ? stage("cache-lookup", this::lookupFunctions) : State.Continue)
+        .then(() -> stage("type-check", this::typeCheck)).then(() -> stage("lower-ir", this::emitIR))
+        .then(() -> stage("optimize-ir", this::optimizeIR))
+        .then(() -> runEmulator ? stage("emulator", this::emulator) : State.Continue)
+        .then(() -> stage("codegen", this::emitASM)).complete();
+    reportStats();
+    return result;
+  }
+
+  private State stage(String name, Supplier<State> stage) {
+    return stats == null ? stage.get() : stats.time(name, stage);
+  }
+
+  private void reportStats() {
+    if (stats == null)
+      return;
+    if (timePasses)
+      stats.printText(err);
+    if (statsFile != null) {
+      try {
+        Files.writeString(Path.of(statsFile), stats.toJson() + System.lineSeparator());
+      } catch (IOException e) {
+        throw new RuntimeException(String.format("cannot write file '%s'", statsFile), e);
+      }
+    }
   }
 
   private State parse() {
     var input = openInput();
-    var lexer = new CruxLexer(input);
+    TokenSource lexer = handWrittenLexer ? new CruxTokenSource(input) : new CruxLexer(input);
+    // Identifiers are interned as they are scanned, the symbol table resolves them by id.
+    identifiers = new Identifiers();
+    lexer.setTokenFactory(new IdentifierTokenFactory(identifiers));
     var tokenStream = new CommonTokenStream(lexer);
 
-    var parser = new CruxParser(tokenStream);
+    // The parser keeps the rules it is in on the chain of parse contexts instead of the call stack,
+    // so a program may nest as deep as memory allows. Every CruxParser shares the DFA and the
+    // prediction context cache of the generated class, so predictions learned while compiling one
+    // file speed up the next one in the same JVM.
+    var parser = new IterativeCruxParser(tokenStream);
     parser.removeErrorListeners();
     var errorRecorder = new ANTLRErrorRecorder();
-    parser.addErrorListener(errorRecorder);
 
-    parseTree = parser.program();
+    // SLL prediction is much faster and almost always enough. It gives up at the first syntax error
+    // or ambiguity, then the file is parsed again with full LL prediction and the usual error
+    // recovery, which reports the errors.
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    boolean fullLL = false;
+    if (!printPt && !buildParseTree) {
+      // Without a parse tree the AST is built while parsing.
+      astBuilder = new ASTBuilder(parser, err);
+      parser.setBuildParseTree(false);
+      parser.setErrorHandler(new AbandoningBailErrorStrategy(astBuilder));
+      try {
+        parser.parseProgram();
+      } catch (ParseCancellationException e) {
+        // The builder was abandoned.
+      }
+      ast = astBuilder.getAST();
+      // After a syntax error, or when the builder gave up on a literal, which building the AST from
+      // the parse tree reports.
+      fullLL = ast == null;
+    } else {
+      parser.setErrorHandler(new BailErrorStrategy());
+      try {
+        parseTree = parser.parseProgram();
+      } catch (ParseCancellationException e) {
+        fullLL = true;
+      }
+    }
+    if (fullLL) {
+      parser.reset();
+      parser.setBuildParseTree(true);
+      parser.addErrorListener(errorRecorder);
+      parser.setErrorHandler(new DefaultErrorStrategy());
+      parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+      parseTree = parser.parseProgram();
+    }
+    if (stats != null) {
+      stats.count(fullLL ? "ll-parses" : "sll-parses", 1);
+      stats.count("tokens", tokenStream.size());
+      if (parseTree != null)
+        stats.count("parse-tree-nodes", countNodes(parseTree));
+    }
 
     if (errorRecorder.getErrorMessages().size() > 0) {
       for (var message : errorRecorder.getErrorMessages()) {
@@ -167,11 +386,41 @@ public final class Driver {
     return State.Continue;
   }
 
+  /**
+   * Stops the parse at the first syntax error, like {@link BailErrorStrategy}, and abandons the
+   * {@link ASTBuilder} first: the rules that are left because of the error must not reach it.
+   */
+  private static final class AbandoningBailErrorStrategy extends BailErrorStrategy {
+    private final ASTBuilder builder;
+
+    AbandoningBailErrorStrategy(ASTBuilder builder) {
+      this.builder = builder;
+    }
+
+    @Override
+    public void recover(Parser recognizer, RecognitionException e) {
+      builder.abandon();
+      super.recover(recognizer, e);
+    }
+
+    @Override
+    public Token recoverInline(Parser recognizer) throws RecognitionException {
+      builder.abandon();
+      return super.recoverInline(recognizer);
+    }
+  }
+
   private State makeAST() {
-    var parseTreeLower = new ParseTreeLower(err);
-    ast = parseTreeLower.lower(parseTree);
+    // Without a parse tree, the AST was built while parsing.
+    if (parseTree != null) {
+      astBuilder = new ASTBuilder(err, identifiers);
+      ast = astBuilder.build(parseTree);
+      parseTree = null;
+    }
+    if (stats != null)
+      stats.count("ast-nodes", countNodes(ast));
 
-    if (parseTreeLower.hasEncounteredError()) {
+    if (astBuilder.hasEncounteredError()) {
       return State.Error;
     }
 
@@ -187,9 +436,37 @@ public final class Driver {
     return State.Continue;
   }
 
+  private State lookupFunctions() {
+    String options = "-O" + optimizationLevel + (ssa ? " --ssa" : "");
+    for (Node declaration : ast.getChildren()) {
+      if (!(declaration instanceof FunctionDefinition))
+        continue;
+      var definition = (FunctionDefinition) declaration;
+      String key = FunctionCache.key(definition, options);
+      FunctionCache.Entry entry = functionCache.lookup(key);
+      if (entry != null) {
+        cachedDefinitions.put(definition, entry);
+        cacheEntries.put(entry.function, entry);
+      } else {
+        uncachedDefinitions.put(definition, key);
+      }
+    }
+    if (stats != null) {
+      stats.count("cache-hits", cachedDefinitions.size());
+      stats.count("cache-misses", uncachedDefinitions.size());
+    }
+
+    return State.Continue;
+  }
+
   private State typeCheck() {
     typeChecker = new TypeChecker();
-    typeChecker.check(ast);
+    typeChecker.check(ast, cachedDefinitions::containsKey, parallelFunctions);
+    if (stats != null) {
+      stats.count("errors", typeChecker.getErrors().size());
+      if (parallelFunctions)
+        stats.ranOnOtherThreads();
+    }
 
     if (typeCheck) {
       if (typeChecker.getErrors().isEmpty()) {
@@ -215,8 +492,40 @@ public final class Driver {
   }
 
   private State emitIR() {
-    var astLower = new ASTLower(typeChecker);
-    irProgram = astLower.lower(ast);
+    Map<FunctionDefinition, Function> precompiled = new HashMap<>();
+    for (var cached : cachedDefinitions.entrySet()) {
+      precompiled.put(cached.getKey(), cached.getValue().function);
+    }
+    var astLower = new ASTLower(typeChecker, precompiled);
+    irProgram = astLower.lower(ast, parallelFunctions);
+    if (stats != null) {
+      if (parallelFunctions)
+        stats.ranOnOtherThreads();
+      int numFunctions = 0;
+      for (Iterator<?> func_it = irProgram.getFunctions(); func_it.hasNext();) {
+        func_it.next();
+        numFunctions++;
+      }
+      stats.count("functions", numFunctions);
+      stats.count("instructions", PassManager.countInstructions(irProgram));
+    }
+
+    return State.Continue;
+  }
+
+  private State optimizeIR() {
+    if (optimizationLevel > 0) {
+      var passManager = PassManager.forLevel(optimizationLevel);
+      passManager.run(irProgram, this::isUncached);
+      if (timePasses)
+        passManager.printReport(err);
+    }
+
+    if (ssa) {
+      var toSSA = new PassManager();
+      toSSA.add(new SSAConstruction());
+      toSSA.run(irProgram, this::isUncached);
+    }
 
     if (printIR) {
       var printer = new IRPrinter(out);
@@ -224,12 +533,69 @@ public final class Driver {
       return State.Finished;
     }
 
+    // Neither the emulators nor the code generator know about phi instructions.
+    if (ssa) {
+      var fromSSA = new PassManager();
+      fromSSA.add(new SSADestruction());
+      fromSSA.run(irProgram, this::isUncached);
+    }
+    if (stats != null)
+      stats.count("instructions", PassManager.countInstructions(irProgram));
+    storeFunctions();
+
     return State.Continue;
   }
 
+  private boolean isUncached(Function f) {
+    return !cacheEntries.containsKey(f);
+  }
+
+  /**
+   * Adds the functions that were compiled from scratch to the function cache. The functions of the
+   * program come in the order of their definitions.
+   */
+  private void storeFunctions() {
+    if (uncachedDefinitions.isEmpty())
+      return;
+    Iterator<Function> func_it = irProgram.getFunctions();
+    for (Node declaration : ast.getChildren()) {
+      if (!(declaration instanceof FunctionDefinition))
+        continue;
+      Function f = func_it.next();
+      String key = uncachedDefinitions.get(declaration);
+      if (key != null)
+        cacheEntries.put(f, functionCache.store(key, f));
+    }
+  }
+
   private State emitASM() {
-    var codegen = new CodeGen(irProgram);
+    CodeGen codegen;
+    if (outputStream != null)
+      codegen = new CodeGen(irProgram, outputStream);
+    else if (outputFile.equals("-"))
+      codegen = new CodeGen(irProgram, unclosableOut());
+    else
+      codegen = new CodeGen(irProgram, outputFile);
+    Map<Function, FunctionAssembly> assembly = null;
+    if (!cacheEntries.isEmpty()) {
+      assembly = new HashMap<>();
+      for (var cached : cacheEntries.entrySet()) {
+        if (cached.getValue().assembly != null)
+          assembly.put(cached.getKey(), cached.getValue().assembly);
+      }
+      codegen.setAssemblyCache(assembly);
+    }
+    codegen.setParallel(parallelFunctions);
     codegen.genCode();
+    if (stats != null && parallelFunctions)
+      stats.ranOnOtherThreads();
+
+    if (assembly != null) {
+      for (var cached : cacheEntries.entrySet()) {
+        if (cached.getValue().assembly == null)
+          cached.getValue().assembly = assembly.get(cached.getKey());
+      }
+    }
 
     return State.Finished;
   }
@@ -237,17 +603,77 @@ public final class Driver {
   private State emulator() {
     if (runEmulator) {
       var emulatorInput = openEmulatorInput();
-      var emulator = new Emulator(irProgram, emulatorInput, out);
-      emulator.run();
+      if (fastEmulator && !debugEmulator) {
+        new FastEmulator(irProgram, emulatorInput, out).run();
+      } else {
+        var emulator = new Emulator(irProgram, emulatorInput, out, debugEmulator);
+        emulator.run();
+      }
       return State.Finished;
     }
 
     return State.Continue;
   }
 
+  /**
+   * Returns the output stream, which the code generator may close when it is done without closing
+   * the stream for everything printed after.
+   */
+  private OutputStream unclosableOut() {
+    return new FilterOutputStream(out) {
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        out.flush();
+      }
+    };
+  }
+
+  private static long countNodes(ParseTree tree) {
+    long count = 0;
+    Deque<ParseTree> tovisit = new ArrayDeque<>();
+    tovisit.push(tree);
+    while (!tovisit.isEmpty()) {
+      ParseTree node = tovisit.pop();
+      count++;
+      for (int i = 0; i < node.getChildCount(); i++) {
+        tovisit.push(node.getChild(i));
+      }
+    }
+    return count;
+  }
+
+  private static long countNodes(Node tree) {
+    long count = 0;
+    Deque<Node> tovisit = new ArrayDeque<>();
+    tovisit.push(tree);
+    while (!tovisit.isEmpty()) {
+      Node node = tovisit.pop();
+      count++;
+      for (Node child : node.getChildren()) {
+        if (child != null)
+          tovisit.push(child);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Opens the input. A large ASCII file is mapped into memory instead of being copied.
+   */
   private CharStream openInput() {
     if (inputStream == null) {
       try {
+        Path path = Path.of(inputFile);
+        if (Files.size(path) >= mapThreshold) {
+          CharStream mapped = MappedCharStream.open(path);
+          if (mapped != null)
+            return mapped;
+        }
         return CharStreams.fromFileName(inputFile);
       } catch (IOException e) {
         throw new RuntimeException(String.format("cannot read file '%s'", inputFile), e);
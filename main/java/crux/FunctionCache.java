@@ -0,0 +1,172 @@
+package crux;
+
+import crux.backend.FunctionAssembly;
+import crux.frontend.Symbol;
+import crux.frontend.ast.*;
+import crux.midend.ir.core.Function;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A content-addressed cache of compiled functions, shared by the compilations in one JVM (see
+ * {@code --incremental}). When a file is compiled again after a small change, e.g. by the
+ * {@link CompileServer}, the functions that did not change are neither type checked, lowered,
+ * optimized nor generated again: their IR and assembly come from the cache.
+ * <p>
+ * A function is found by a hash of its AST, of the names and types of the globals and functions it
+ * refers to, and of the options that change its code. Positions are left out, so moving a function
+ * within its file does not change its key. Only functions of programs that type checked are cached,
+ * and the cached IR is never changed again, so compilations on several threads can share it.
+ * <p>
+ * The cache keeps the {@link #DEFAULT_CAPACITY} functions that were used most recently.
+ */
+public final class FunctionCache {
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  private static final FunctionCache SHARED = new FunctionCache(DEFAULT_CAPACITY);
+
+  /**
+   * A cached function. The assembly is added when the function is first generated, a compilation
+   * that only runs the emulator leaves it out.
+   */
+  static final class Entry {
+    final Function function;
+    volatile FunctionAssembly assembly;
+
+    private Entry(Function function) {
+      this.function = function;
+    }
+  }
+
+  private final Map<String, Entry> entries;
+  private long hits = 0;
+  private long misses = 0;
+
+  public FunctionCache(int capacity) {
+    entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Returns the cache shared by all compilations of this JVM.
+   */
+  public static FunctionCache getShared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns the function with a key, or null if it is not cached.
+   */
+  synchronized Entry lookup(String key) {
+    Entry entry = entries.get(key);
+    if (entry != null)
+      hits++;
+    else
+      misses++;
+    return entry;
+  }
+
+  /**
+   * Caches a function that was compiled from scratch. If another compilation cached the same
+   * function in the meantime, that entry is kept and returned.
+   */
+  synchronized Entry store(String key, Function function) {
+    // Build the graph now rather than lazily on the threads that share the function.
+    function.getControlFlowGraph();
+    return entries.computeIfAbsent(key, k -> new Entry(function));
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the key of a function definition.
+   *
+   * @param options the options that change the code of the function.
+   */
+  static String key(FunctionDefinition definition, String options) {
+    var text = new StringBuilder(options).append('\n');
+    Map<Symbol, Integer> locals = new HashMap<>();
+    text.append(definition.getSymbol().getName()).append(':')
+        .append(definition.getSymbol().getType());
+    for (Symbol param : definition.getParameters()) {
+      declare(text, locals, param);
+    }
+
+    // Every node is followed by its children, their number keeps the text unambiguous.
+    Deque<Node> tovisit = new ArrayDeque<>();
+    tovisit.push(definition.getStatements());
+    while (!tovisit.isEmpty()) {
+      Node node = tovisit.pop();
+      text.append('\n').append(node.getClass().getSimpleName());
+      if (node instanceof Name)
+        refer(text, locals, ((Name) node).getSymbol());
+      else if (node instanceof Call)
+        refer(text, locals, ((Call) node).getCallee());
+      else if (node instanceof VariableDeclaration)
+        declare(text, locals, ((VariableDeclaration) node).getSymbol());
+      else if (node instanceof ArrayDeclaration)
+        declare(text, locals, ((ArrayDeclaration) node).getSymbol());
+      else if (node instanceof LiteralInt)
+        text.append(' ').append(((LiteralInt) node).getValue());
+      else if (node instanceof LiteralBool)
+        text.append(' ').append(((LiteralBool) node).getValue());
+      else if (node instanceof OpExpr)
+        text.append(' ').append(((OpExpr) node).getOp());
+
+      List<Node> children = node.getChildren();
+      text.append(" #").append(children.size());
+      for (int i = children.size() - 1; i >= 0; i--) {
+        tovisit.push(children.get(i));
+      }
+    }
+    return sha256(text.toString());
+  }
+
+  private static void declare(StringBuilder text, Map<Symbol, Integer> locals, Symbol symbol) {
+    locals.put(symbol, locals.size());
+    text.append(" local").append(locals.get(symbol)).append(' ');
+    text.append(symbol.getName()).append(':').append(symbol.getType());
+  }
+
+  private static void refer(StringBuilder text, Map<Symbol, Integer> locals, Symbol symbol) {
+    Integer local = locals.get(symbol);
+    text.append(local != null ? " local" + local : " global").append(' ');
+    text.append(symbol.getName()).append(':').append(symbol.getType());
+  }
+
+  private static String sha256(String text) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256");
+      var hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+      var hex = new StringBuilder();
+      for (byte b : hash) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package crux;
+
+import java.util.function.Supplier;
+
+/**
+ * The result of a stage of the compilation, see {@link Driver}.
+ */
+enum State {
+  Continue, Finished, Error;
+
+  State then(Supplier<State> nextStage) {
+    if (this == Continue)
+      return nextStage.get();
+    return this;
+  }
+
+  State complete() {
+    return this == Finished ? Finished : Error;
+  }
+}
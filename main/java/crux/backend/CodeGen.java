@@ -5,7 +5,9 @@ import crux.midend.ir.core.*;
 import crux.midend.ir.core.insts.*;
 import crux.printing.IRValueFormatter;
 
+import java.io.OutputStream;
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * Convert the CFG into Assembly Instructions
@@ -16,25 +18,68 @@ public final class CodeGen extends InstVisitor {
   private final Program p;
   private final CodePrinter out;
 
-  private HashMap<Variable, Integer> varIndexMap = new HashMap<>(); //tracks variables and respective offsets
-  private int varIndex = 0; //number of local variables
   private final String[] callingRegs = {"%rdi", "%rsi", "%rdx", "%rcx", "%r8", "%r9"}; //registers for call
-  private HashMap<Instruction, String> labels = new HashMap<>(); //function labels (for jump)
-  private int highstack = 2; //for enter statement
-  private int maxStack = 0;
+  private String[] labels; //block labels (for jump), indexed by block
+  private BasicBlock block; //block that is being generated
+  private RegisterAllocator allocator; //register or stack slot of every variable
+  private int maxStack = 0; //stack space for arguments of calls
+  private Map<Function, FunctionAssembly> assembly = null; //bodies reused from or kept for later compilations
+  private boolean parallel = false; //generate the functions at the same time
 
   public CodeGen(Program p) {
-    this.p = p;
     // Do not change the file name that is outputted or it will
     // break the grader!
+    this(p, "a.s"); //send help
+  }
+
+  public CodeGen(Program p, String fileName) {
+    this.p = p;
+    out = new CodePrinter(fileName);
+  }
 
-    out = new CodePrinter("a.s"); //send help
+  public CodeGen(Program p, OutputStream stream) {
+    this.p = p;
+    out = new CodePrinter(stream);
+  }
+
+  private CodeGen(Program p, CodePrinter out) {
+    this.p = p;
+    this.out = out;
+  }
+
+  /**
+   * Reuses the assembly of the functions in the map instead of generating it, and adds the assembly
+   * of every function that is generated to the map.
+   */
+  public void setAssemblyCache(Map<Function, FunctionAssembly> assembly) {
+    this.assembly = assembly;
+  }
+
+  /**
+   * Generates the functions in parallel, on the common fork-join pool. Every function is generated
+   * on its own with labels of its own, so the assembly is the same either way.
+   */
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
   }
 
   /**
-   * It should allocate space for globals call genCode for each Function
+   * It should allocate space for globals call genCode for each Function. The output is closed
+   * even if generating the code fails.
    */
   public void genCode()
+  {
+    try
+    {
+      genProgram();
+    }
+    finally
+    {
+      out.close();
+    }
+  }
+
+  private void genProgram()
   {
     // This function should generate code the entire program
     for (Iterator<GlobalDecl> glob_it = p.getGlobals(); glob_it.hasNext();)
@@ -48,217 +93,295 @@ public final class CodeGen extends InstVisitor {
       out.printCode(".comm " + sym.getName() + ", " + (i.getValue()*8) + ", 8"); //allocate space on stack using instruction
     }
 
-    for (Iterator<Function> func_it = p.getFunctions(); func_it.hasNext(); ) {
-      Function f = func_it.next();
-      genCode(f);
+    List<Function> functions = new ArrayList<>();
+    p.getFunctions().forEachRemaining(functions::add);
+    List<FunctionAssembly> bodies = (parallel ? functions.parallelStream() : functions.stream())
+        .map(this::genBody)
+        .collect(Collectors.toList());
+
+    //the bodies are put together in the order of the program, however they were generated
+    for (int index = 0; index < functions.size(); index++)
+    {
+      Function f = functions.get(index);
+      out.printCode(".globl " + f.getName());
+      out.printLabel(f.getName() + ":");
+      out.printText(bodies.get(index).getBody());
       out.printCode(""); //new line dividing multiple functions
+
+      if (assembly != null)
+      {
+        assembly.putIfAbsent(f, bodies.get(index));
+      }
     }
+  }
 
-    out.close();
+  /**
+   * Returns the cached body of a function or generates it with a code generator of its own, which
+   * prints into memory.
+   */
+  private FunctionAssembly genBody(Function f)
+  {
+    FunctionAssembly cached = assembly != null ? assembly.get(f) : null;
+    if (cached != null)
+    {
+      return cached;
+    }
+    var generator = new CodeGen(p, new CodePrinter());
+    generator.genCode(f);
+    return new FunctionAssembly(generator.out.getText());
   }
 
-  private int labelcount = 1;
+  private int labelcount = 1; //labels are numbered from 1 in every function
 
-  private String getNewLabel()
+  private String getNewLabel(Function f)
   {
-    return "L" + (labelcount++);
+    return ".L" + f.getName() + "_" + (labelcount++);
   }
 
   private void genCode(Function f)
   {
-    //1. Assign labels for jump targets
-    varIndexMap = new HashMap<>();
-    varIndex = 0;
-    labels = assignLabels(f);
+    //1. Assign labels for jump targets and allocate registers
+    ControlFlowGraph cfg = f.getControlFlowGraph();
+    labels = assignLabels(f, cfg);
+    allocator = new RegisterAllocator(f, cfg);
+    maxStack = 0;
 
-    //2. Declare functions and print label
-    out.printCode(".globl " + f.getName());
-    out.printLabel(f.getName() + ":");
+    //2. The caller declares the function and prints its label
 
-    //3. Generate code for arguments (move the values from args regs [%rdi, %rsi, %rdx, %rcx, %r8 and %r9] to stack)
+    //3. Save callee-saved registers, then move the arguments from the args regs [%rdi, %rsi, %rdx, %rcx, %r8 and %r9] and the stack to their locations
+    for (String reg : allocator.getUsedCalleeSaved())
+    {
+      out.bufferCode("movq " + reg + ", " + allocator.getSaveSlot(reg));
+    }
+
+    List<String> srcs = new ArrayList<>();
+    List<String> dsts = new ArrayList<>();
     int argIndex = 0;
     for (LocalVar var : f.getArguments())
     {
       if (argIndex < callingRegs.length)
       {
-        //moving register to variable
-        out.bufferCode("movq " + callingRegs[argIndex] + ", -" + (8 * (argIndex+1)) + "(%rbp)"); //reg to var
+        srcs.add(callingRegs[argIndex]);
       }
       else
       {
-        //NOTE: For extra args, store them on the top of the stack frame.
-        out.bufferCode("movq " + (8 * highstack) + "(%rbp), %r10");
-        out.bufferCode("movq %r10, -" + (8 * (argIndex+1)) + "(%rbp)"); //moving register to variable
-        highstack++;
+        //NOTE: Extra args are on the top of the stack frame, above the return address.
+        srcs.add((8 * (argIndex - callingRegs.length + 2)) + "(%rbp)");
       }
-      varIndex++; //new local variable for dst
-      varIndexMap.put(var, varIndex);
+      dsts.add(allocator.location(var));
       argIndex++;
     }
+    parallelMove(srcs, dsts);
 
-    //4. Generate instructions for the functions body
-    Stack<Instruction> tovisit = new Stack<>();
-    HashSet<Instruction> alreadyVisited = new HashSet<>();
-    if (f.getStart() != null)
+    //Variables that are read but never written start out as zero
+    for (Variable var : allocator.getUndefined())
     {
-      tovisit.push(f.getStart());
+      out.bufferCode("movq $0, " + allocator.location(var));
     }
 
-    varIndex = argIndex;
-
-    while (!tovisit.isEmpty())
+    //4. Generate instructions for the functions body, block by block in reverse postorder
+    for (BasicBlock b : cfg.getBlocks())
     {
-      Instruction inst = tovisit.pop();
-
-      if(labels.containsKey(inst) && !alreadyVisited.contains(inst)) //jump labels that haven't been visited
+      if(labels[b.getIndex()] != null) //jump labels
       {
-        out.bufferLabel(labels.get(inst) + ":");
+        out.bufferLabel(labels[b.getIndex()] + ":");
       }
 
-      inst.accept(this);
-      alreadyVisited.add(inst); //complete visit of instruction
-
-      Instruction first = shredNops(inst.getNext(0));
-      Instruction second = shredNops(inst.getNext(1));
-
-      if(second != null && !alreadyVisited.contains(second)) //L1: -> jmp L2
+      block = b;
+      for (Instruction inst : b.getInstructions())
       {
-        tovisit.push(second); //visit true block first
+        inst.accept(this);
       }
 
-      if(first != null && !alreadyVisited.contains(first)) //L2 -> leave, ret
+      BasicBlock first = b.getNext(0);
+      if (b.getLast() instanceof ReturnInst)
       {
-        tovisit.push(first);
+        continue;
       }
-      else if(first != null && !(inst instanceof ReturnInst) && labels.containsKey(first) && (tovisit.isEmpty() || (tovisit.peek() != first))) //"L1 + l2" unite
+      else if(first == null) //falls off the end of the function
       {
-        out.bufferCode("jmp " + labels.get(first));
+        epilogue();
       }
-      else if (!(inst instanceof ReturnInst))
+      else if(first.getIndex() != b.getIndex() + 1) //"L1 + l2" unite
       {
-        out.bufferCode("leave");
-        out.bufferCode("ret");
+        out.bufferCode("jmp " + labels[first.getIndex()]);
       }
     }
 
     //5. Need stack to be 16 byte aligned
-    if(maxStack > 0) {
-      varIndex += maxStack;
-    }
-
-    int ceil = varIndex;
-    if (varIndex % 2 == 1)
+    int ceil = allocator.getNumSlots() + maxStack;
+    if (ceil % 2 == 1)
     {
       ceil++;
     }
 
     //6. Emit functions prologue
-    out.printCode("enter $(8 * " + ceil + "), $0"); // the number of variables plus space on stack we need for calling methods.
+    out.printCode("enter $(8 * " + ceil + "), $0"); // the number of spilled variables plus space on stack we need for calling methods.
     out.outputBuffer(); //save all visits as buffers
     labels = null;
+    block = null;
+    allocator = null;
   }
 
 
   /**
-   * Assigns Labels to any Instruction that might be the target of a conditional or unconditional
-   * jump.
+   * Assigns Labels to any block that is the target of a conditional jump or that can not be
+   * reached by falling through from its predecessor.
    */
 
-  private HashMap<Instruction, String> assignLabels(Function f) {
-    HashMap<Instruction, String> labelMap = new HashMap<>();
-    Stack<Instruction> tovisit = new Stack<>();
-    HashSet<Instruction> discovered = new HashSet<>();
-    if (f.getStart() != null)
-      tovisit.push(f.getStart());
-    while (!tovisit.isEmpty()) {
-      Instruction inst = tovisit.pop();
-
-      for (int childIdx = 0; childIdx < inst.numNext(); childIdx++) {
-        Instruction child = inst.getNext(childIdx);
-        if (discovered.contains(child)) {
-          // Found the node for a second time...need a label for merge points
-          if (!labelMap.containsKey(child)) {
-            labelMap.put(child, getNewLabel());
-          }
-        } else {
-          discovered.add(child);
-          tovisit.push(child);
-          // Need a label for jump targets also
-          if (childIdx == 1 && !labelMap.containsKey(child)) {
-            labelMap.put(child, getNewLabel());
-          }
+  private String[] assignLabels(Function f, ControlFlowGraph cfg) {
+    String[] labelMap = new String[cfg.size()];
+    for (BasicBlock b : cfg.getBlocks()) {
+      for (int childIdx = 0; childIdx < b.numNext(); childIdx++) {
+        BasicBlock child = b.getNext(childIdx);
+        if (child == null || labelMap[child.getIndex()] != null)
+          continue;
+        // Need a label for jump targets and for blocks that are not laid out right after
+        if (childIdx == 1 || child.getIndex() != b.getIndex() + 1) {
+          labelMap[child.getIndex()] = getNewLabel(f);
         }
       }
     }
     return labelMap;
   }
 
-  public void visit(AddressAt i) //%t0 = addressAt %x, $t0 or "%av0 = addressAt i, null"
+  private String loc(Value v) //register or stack slot of a variable
   {
-    out.bufferLabel("/*AddressAt*/");
+    return allocator.location(v);
+  }
 
-    if(i.getOffset() != null) //"%av0 = addressAt i, null (localVar)
+  private boolean isRegister(String location)
+  {
+    return location.startsWith("%");
+  }
+
+  private void move(String src, String dst)
+  {
+    if (src.equals(dst))
+    {
+      return;
+    }
+    if (!isRegister(src) && !isRegister(dst)) //no memory to memory moves
+    {
+      out.bufferCode("movq " + src + ", %r11");
+      src = "%r11";
+    }
+    out.bufferCode("movq " + src + ", " + dst);
+  }
+
+  /**
+   * Performs all moves at once: every destination gets the value its source had before any of the
+   * moves. Cycles between registers are broken through %r10.
+   */
+  private void parallelMove(List<String> srcs, List<String> dsts)
+  {
+    List<String> pendingSrcs = new ArrayList<>();
+    List<String> pendingDsts = new ArrayList<>();
+    for (int k = 0; k < srcs.size(); k++)
+    {
+      if (!srcs.get(k).equals(dsts.get(k)))
+      {
+        pendingSrcs.add(srcs.get(k));
+        pendingDsts.add(dsts.get(k));
+      }
+    }
+
+    while (!pendingDsts.isEmpty())
+    {
+      int ready = -1;
+      for (int k = 0; k < pendingDsts.size() && ready < 0; k++)
+      {
+        if (!pendingSrcs.contains(pendingDsts.get(k))) //nobody still needs the old value
+        {
+          ready = k;
+        }
+      }
+
+      if (ready < 0) //every destination is still needed, save one of them
+      {
+        String saved = pendingDsts.get(0);
+        out.bufferCode("movq " + saved + ", %r10");
+        for (int k = 0; k < pendingSrcs.size(); k++)
+        {
+          if (pendingSrcs.get(k).equals(saved))
+          {
+            pendingSrcs.set(k, "%r10");
+          }
+        }
+        continue;
+      }
+
+      move(pendingSrcs.remove(ready), pendingDsts.remove(ready));
+    }
+  }
+
+  private void epilogue() //restore callee-saved registers and return
+  {
+    for (String reg : allocator.getUsedCalleeSaved())
     {
-      out.bufferCode("movq -" + (8*varIndex) + "(%rbp), %r11");
-      out.bufferCode("movq $8, %r10");
-      out.bufferCode("imul %r10, %r11");
+      out.bufferCode("movq " + allocator.getSaveSlot(reg) + ", " + reg);
     }
+    out.bufferCode("leave");
+    out.bufferCode("ret");
+  }
 
-    if(i.getOffset() != null)
+  public void visit(AddressAt i) //%t0 = addressAt %x, $t0 or "%av0 = addressAt i, null"
+  {
+    out.bufferLabel("/*AddressAt*/");
+
+    if(i.getOffset() != null) //"%av0 = addressAt i, null (localVar)
     {
       out.bufferCode("movq " + i.getBase().getName() + "@GOTPCREL(%rip), %r10");
-      out.bufferCode("addq %r10, %r11");
+      out.bufferCode("movq " + loc(i.getOffset()) + ", %r11");
+      out.bufferCode("leaq (%r10,%r11,8), %r11");
     }
     else //global variables
     {
       out.bufferCode("movq " + i.getBase().getName() + "@GOTPCREL(%rip), %r11");
     }
 
-    varIndex++; //new local variable for dst
-    varIndexMap.put(i.getDst(), varIndex);
-    out.bufferCode("movq %r11, -" + (8 * varIndexMap.get(i.getDst())) + "(%rbp)");
+    out.bufferCode("movq %r11, " + loc(i.getDst()));
   }
 
   public void visit(BinaryOperator i) //$t10 = $t8 + $t9
   {
     out.bufferLabel("/*BinaryOperator*/");
 
-    int rhsOffset = varIndexMap.get(i.getRightOperand());
-    int lhsOffset = varIndexMap.get(i.getLeftOperand());
+    String rhs = loc(i.getRightOperand());
+    String lhs = loc(i.getLeftOperand());
 
     switch(i.getOperator())
     {
       case Add:
-        out.bufferCode("movq -" + (8 * lhsOffset) + "(%rbp), %r10");
-        out.bufferCode("addq -" + (8 * rhsOffset) + "(%rbp), %r10");
+        out.bufferCode("movq " + lhs + ", %r10");
+        out.bufferCode("addq " + rhs + ", %r10");
         break;
 
       case Sub:
-        out.bufferCode("movq -" + (8 * lhsOffset) + "(%rbp), %r10");
-        out.bufferCode("subq -" + (8 * rhsOffset) + "(%rbp), %r10");
+        out.bufferCode("movq " + lhs + ", %r10");
+        out.bufferCode("subq " + rhs + ", %r10");
         break;
 
       case Mul:
-        out.bufferCode("movq -" + (8 * lhsOffset) + "(%rbp), %r10");
-        out.bufferCode("imulq -" + (8 * rhsOffset) + "(%rbp), %r10");
+        out.bufferCode("movq " + lhs + ", %r10");
+        out.bufferCode("imulq " + rhs + ", %r10");
         break;
 
-      case Div:
-        out.bufferCode("movq -" + (8 * lhsOffset) + "(%rbp), %rax");
+      case Div: //cqto overwrites %rdx, so the divisor goes through %r11
+        out.bufferCode("movq " + rhs + ", %r11");
+        out.bufferCode("movq " + lhs + ", %rax");
         out.bufferCode("cqto");
-        out.bufferCode("idivq -" + (8 * rhsOffset) + "(%rbp)");
+        out.bufferCode("idivq %r11");
         break;
     }
 
-    varIndex++; //new local variable for dst
-    varIndexMap.put(i.getDst(), varIndex);
     if(i.getOperator() != BinaryOperator.Op.Div)
     {
-      out.bufferCode("movq %r10, -" + (8 * varIndexMap.get(i.getDst())) + "(%rbp)");
+      out.bufferCode("movq %r10, " + loc(i.getDst()));
     }
     else
     {
-      out.bufferCode("movq %rax, -" + (8* varIndexMap.get(i.getDst()) + "(%rbp)"));
+      out.bufferCode("movq %rax, " + loc(i.getDst()));
     }
   }
 
@@ -266,14 +389,14 @@ public final class CodeGen extends InstVisitor {
   {
     out.bufferLabel("/*CompareInst*/");
 
-    int rhsOffset = varIndexMap.get(i.getRightOperand());
-    int lhsOffset = varIndexMap.get(i.getLeftOperand());
+    String rhs = loc(i.getRightOperand());
+    String lhs = loc(i.getLeftOperand());
 
     out.bufferCode("movq $0, %r10");
     out.bufferCode("movq $1, %rax");
 
-    out.bufferCode("movq -" + (8 * lhsOffset) + "(%rbp), %r11");
-    out.bufferCode("cmp -" + (8 * rhsOffset) + "(%rbp), %r11");
+    out.bufferCode("movq " + lhs + ", %r11");
+    out.bufferCode("cmp " + rhs + ", %r11");
 
     switch(i.getPredicate())
     {
@@ -302,9 +425,7 @@ public final class CodeGen extends InstVisitor {
         break;
     }
 
-    varIndex++; //new local variable for dst
-    varIndexMap.put(i.getDst(), varIndex);
-    out.bufferCode("movq %r10, -" + (8 * varIndexMap.get(i.getDst())) + "(%rbp)");
+    out.bufferCode("movq %r10, " + loc(i.getDst()));
   }
 
   public void visit(CopyInst i)
@@ -314,45 +435,31 @@ public final class CodeGen extends InstVisitor {
 
     out.bufferLabel("/*CopyInst*/");
 
-    if(src instanceof Variable) //already saved somewhere in stack
+    if(src instanceof Variable) //already saved in a register or on the stack
     {
-      if(varIndexMap.containsKey(src))
-      {
-        out.bufferCode("movq -" + (8 * varIndexMap.get(src)) + "(%rbp), %r10");
-      }
-      else
-      {
-        out.bufferCode("movq -" + (8 * varIndex) + "(%rbp), %r10");
-      }
+      move(loc(src), loc(dst));
     }
     else
     {
+      String value;
       if (src instanceof BooleanConstant)
       {
-        if (((BooleanConstant) src).getValue()) //0 and 1 to represent true and false
-        {
-          out.bufferCode("movq $1, %r10");
-        }
-        else
-        {
-          out.bufferCode("movq $0, %r10");
-        }
+        value = ((BooleanConstant) src).getValue() ? "$1" : "$0"; //0 and 1 to represent true and false
       }
       else
       {
-        out.bufferCode("movq $" + ((IntegerConstant) src).getValue() + ", %r10");
+        value = "$" + ((IntegerConstant) src).getValue();
       }
-    }
 
-    if(varIndexMap.containsKey(dst))
-    {
-      out.bufferCode("movq %r10, -" + (varIndexMap.get(dst) * 8) + "(%rbp)");
-    }
-    else
-    {
-      varIndex++;
-      out.bufferCode("movq %r10, -" + (varIndex * 8) + "(%rbp)");
-      varIndexMap.put(dst, varIndex); //keeping track of local variable
+      if (isRegister(loc(dst)))
+      {
+        out.bufferCode("movq " + value + ", " + loc(dst));
+      }
+      else
+      {
+        out.bufferCode("movq " + value + ", %r10");
+        out.bufferCode("movq %r10, " + loc(dst));
+      }
     }
   }
 
@@ -360,21 +467,18 @@ public final class CodeGen extends InstVisitor {
   public void visit(JumpInst i) //jump $t4
   {
     out.bufferLabel("/*JumpInst*/");
-    out.bufferCode("movq -" + (8 * varIndexMap.get(i.getPredicate())) + "(%rbp), %r10");
-    out.bufferCode("cmp $1, %r10");
-    out.bufferCode("je " + labels.get(i.getNext(1)));
+    out.bufferCode("cmpq $1, " + loc(i.getPredicate()));
+    out.bufferCode("je " + labels[block.getNext(1).getIndex()]);
   }
 
   public void visit(LoadInst i) //"$t3 = load %av1"
   {
     out.bufferLabel("/*LoadInst*/");
 
-    out.bufferCode("movq -" + (8 * varIndexMap.get(i.getSrcAddress())) + "(%rbp), %r10");
+    out.bufferCode("movq " + loc(i.getSrcAddress()) + ", %r10");
     out.bufferCode("movq 0(%r10), %r10");
 
-    varIndex++; //new local variable for dst
-    varIndexMap.put(i.getDst(), varIndex);
-    out.bufferCode("movq %r10, -" + (8 * varIndexMap.get(i.getDst())) + "(%rbp)");
+    out.bufferCode("movq %r10, " + loc(i.getDst()));
   }
 
   public void visit(NopInst i) //"nop"
@@ -385,24 +489,16 @@ public final class CodeGen extends InstVisitor {
   public void visit(StoreInst i) //"store $t0, %av0"
   {
     out.bufferLabel("/*StoreInst*/");
-    out.bufferCode("movq -" + (8 * varIndexMap.get(i.getSrcValue())) + "(%rbp), %r10");
-    out.bufferCode("movq -" +  (8 * varIndexMap.get(i.getDestAddress())) + "(%rbp), %r11");
+    out.bufferCode("movq " + loc(i.getSrcValue()) + ", %r10");
+    out.bufferCode("movq " + loc(i.getDestAddress()) + ", %r11");
     out.bufferCode("movq %r10, 0(%r11)");
   }
 
   public void visit(ReturnInst i) //return $t87
   {
     out.bufferLabel("/*ReturnInst*/");
-    if(varIndexMap.get(i.getReturnValue()) != null)
-    {
-      out.bufferCode("movq -" + (8 * varIndexMap.get(i.getReturnValue())) + "(%rbp), %rax");
-    }
-    else
-    {
-      out.bufferCode("movq -" + (8 * varIndex) + "(%rbp), %rax");
-    }
-    out.bufferCode("leave");
-    out.bufferCode("ret");
+    out.bufferCode("movq " + loc(i.getReturnValue()) + ", %rax");
+    epilogue();
   }
 
 
@@ -410,31 +506,28 @@ public final class CodeGen extends InstVisitor {
   {
     out.bufferLabel("/*CallInst*/");
 
-    //Pass arguments to callee
+    //Pass arguments to callee, the ones on the stack first since they only go through %r10
+    List<String> srcs = new ArrayList<>();
+    List<String> dsts = new ArrayList<>();
     int argIndex = 0;
     for (Value var : i.getParams())
     {
       if (argIndex < callingRegs.length)
       {
-        if (varIndexMap.containsKey(var))
-        {
-          out.bufferCode("movq -" + (8 * varIndexMap.get(var)) + "(%rbp), " + callingRegs[argIndex]);
-        }
-        else
-        {
-          out.bufferCode("movq -" + (8 * (varIndex + argIndex)) + "(%rbp), " + callingRegs[argIndex]);
-        }
+        srcs.add(loc(var));
+        dsts.add(callingRegs[argIndex]);
       }
       else //move registers on the stack (offset of rsp)
       {
-        out.bufferCode("movq -" + (8 * varIndexMap.get(var)) + "(%rbp)" + ", %r10");
+        out.bufferCode("movq " + loc(var) + ", %r10");
         int index = argIndex - callingRegs.length;
         out.bufferCode("movq %r10, " + (8 * index) + "(%rsp)");
       }
       argIndex++;
-      //NOTE: Check if need to update space on stack (maximum num. of stack parms) we need for calling methods.
     }
-    maxStack = argIndex - 6;
+    parallelMove(srcs, dsts);
+    //NOTE: Update space on stack (maximum num. of stack parms) we need for calling methods.
+    maxStack = Math.max(maxStack, argIndex - callingRegs.length);
 
     //Generate code for Call instruction
     Symbol callee = i.getCallee();
@@ -443,9 +536,7 @@ public final class CodeGen extends InstVisitor {
     //Get return value (if there is one) into return register
     if(i.getDst() != null)
     {
-      varIndex++;
-      varIndexMap.put(i.getDst(), varIndex);
-      out.bufferCode("movq %rax, -" + (8 * varIndexMap.get(i.getDst())) + "(%rbp)");
+      out.bufferCode("movq %rax, " + loc(i.getDst()));
     }
   }
 
@@ -454,30 +545,8 @@ public final class CodeGen extends InstVisitor {
     out.bufferLabel("/*UnaryNotInst*/");
 
     out.bufferCode("movq $1, %r10");
-    out.bufferCode("subq -" + (8 * varIndexMap.get(i.getInner())) + "(%rbp), %r10");
-
-    if(i.getDst() != null && !varIndexMap.containsKey(i.getDst()))
-    {
-      varIndex++;
-      varIndexMap.put(i.getDst(), varIndex);
-    }
-    out.bufferCode("movq %r10, -" + (8 * varIndexMap.get(i.getDst())) + "(%rbp)");
-  }
+    out.bufferCode("subq " + loc(i.getInner()) + ", %r10");
 
-  private Instruction shredNops(Instruction i) //gets rid of unnecessary nops in instructions
-  {
-    if(i instanceof NopInst && !labels.containsKey(i))
-    {
-      Instruction chain = i;
-      while(chain.getNext(0) != null && chain.getNext(0) instanceof NopInst && !labels.containsKey(chain.getNext(0)))
-      {
-        chain = chain.getNext(0);
-      }
-      return chain;
-    }
-    else
-    {
-      return i;
-    }
+    out.bufferCode("movq %r10, " + loc(i.getDst()));
   }
 }
@@ -1,27 +1,65 @@
 package crux.backend;
 
-import java.util.*;
-import java.io.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
-public class CodePrinter {
-  PrintStream out;
-  StringBuffer sb = new StringBuffer();
+/**
+ * Prints the assembly. Every line is appended to a byte buffer that is reused for the whole file
+ * and written out through a channel in large chunks, or kept in memory, see {@link #getText()}.
+ * Assembly is ASCII, so every character is written as one byte.
+ */
+public final class CodePrinter {
+  private static final int CHUNK_SIZE = 1 << 16;
+  private static final int INITIAL_SIZE = 1 << 10; //of text that grows until it is printed
+  private static final byte[] INDENT = {' ', ' ', ' ', ' '};
+
+  private final WritableByteChannel channel; //null if the text is kept in memory
+  private final Text text; //printed, but not written yet
+  private final Text buffered = new Text(INITIAL_SIZE); //buffered to be printed later
+
+  /**
+   * This printer keeps everything in memory, see {@link #getText()}.
+   */
+
+  public CodePrinter() {
+    channel = null;
+    text = new Text(INITIAL_SIZE);
+  }
 
   public CodePrinter(String name) {
     try {
-      out = new PrintStream(name);
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(-1);
+      text = new Text(CHUNK_SIZE);
+      channel = FileChannel.open(Path.of(name), StandardOpenOption.WRITE,
+          StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    } catch (IOException e) {
+      throw new RuntimeException(String.format("cannot write file '%s'", name), e);
     }
   }
 
+  /**
+   * This printer writes to a stream, which it closes in {@link #close()}.
+   */
+
+  public CodePrinter(OutputStream stream) {
+    channel = Channels.newChannel(stream);
+    text = new Text(CHUNK_SIZE);
+  }
+
   /**
    * This function immediately prints a label (non-indented).
    */
 
   public void printLabel(String s) {
-    out.println(s);
+    text.append(s).append('\n');
+    written();
   }
 
   /**
@@ -29,7 +67,17 @@ public class CodePrinter {
    */
 
   public void printCode(String s) {
-    out.println("    " + s);
+    text.append(INDENT, INDENT.length).append(s).append('\n');
+    written();
+  }
+
+  /**
+   * This function immediately prints text that is already formatted.
+   */
+
+  public void printText(String s) {
+    text.append(s);
+    written();
   }
 
   /**
@@ -37,7 +85,7 @@ public class CodePrinter {
    */
 
   public void bufferCode(String s) {
-    sb.append("    " + s + "\n");
+    buffered.append(INDENT, INDENT.length).append(s).append('\n');
   }
 
   /**
@@ -45,7 +93,7 @@ public class CodePrinter {
    */
 
   public void bufferLabel(String s) {
-    sb.append(s + "\n");
+    buffered.append(s).append('\n');
   }
 
   /**
@@ -53,15 +101,88 @@ public class CodePrinter {
    */
 
   public void outputBuffer() {
-    out.print(sb);
-    sb = new StringBuffer();
+    text.append(buffered.bytes, buffered.length);
+    buffered.length = 0;
+    written();
+  }
+
+  /**
+   * This function returns everything that was printed by a printer that keeps it in memory.
+   */
+
+  public String getText() {
+    return new String(text.bytes, 0, text.length, StandardCharsets.US_ASCII);
   }
 
   /**
-   * THis function closes the file.
+   * This function writes what is left and closes the file, which is closed even if the writing
+   * fails.
    */
 
   public void close() {
-    out.close();
+    if (channel == null)
+      return;
+    try (channel) {
+      flush();
+    } catch (IOException e) {
+      throw new RuntimeException("cannot write the assembly", e);
+    }
+  }
+
+  private void written() {
+    if (channel != null && text.length >= CHUNK_SIZE)
+      flush();
+  }
+
+  private void flush() {
+    var chunk = ByteBuffer.wrap(text.bytes, 0, text.length);
+    try {
+      while (chunk.hasRemaining()) {
+        channel.write(chunk);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("cannot write the assembly", e);
+    }
+    text.length = 0;
+  }
+
+  /**
+   * A growing array of bytes that text is appended to.
+   */
+  private static final class Text {
+    byte[] bytes;
+    int length = 0;
+
+    Text(int capacity) {
+      bytes = new byte[capacity];
+    }
+
+    Text append(String s) {
+      int n = s.length();
+      reserve(n);
+      for (int i = 0; i < n; i++) {
+        bytes[length + i] = (byte) s.charAt(i);
+      }
+      length += n;
+      return this;
+    }
+
+    Text append(byte[] b, int n) {
+      reserve(n);
+      System.arraycopy(b, 0, bytes, length, n);
+      length += n;
+      return this;
+    }
+
+    Text append(char c) {
+      reserve(1);
+      bytes[length++] = (byte) c;
+      return this;
+    }
+
+    private void reserve(int n) {
+      if (length + n > bytes.length)
+        bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + n));
+    }
   }
 }
@@ -0,0 +1,18 @@
+package crux.backend;
+
+/**
+ * The assembly of the body of a single function, everything after the label with its name, as
+ * generated by {@link CodeGen}. The jump labels of the body are local to the function, so the body
+ * can be placed in any program as it is.
+ */
+public final class FunctionAssembly {
+  private final String body;
+
+  FunctionAssembly(String body) {
+    this.body = body;
+  }
+
+  public String getBody() {
+    return body;
+  }
+}
@@ -0,0 +1,243 @@
+package crux.backend;
+
+import crux.midend.ir.core.*;
+import crux.midend.ir.core.insts.*;
+
+import java.util.*;
+
+/**
+ * Assigns every variable of a function either a register or a stack slot, using linear scan over
+ * the live intervals of the variables.
+ * <p>
+ * The instructions are numbered in the order in which {@link CodeGen} emits them, which is the
+ * reverse postorder of the basic blocks. Instruction {@code k} reads its operands at position
+ * {@code 2k} and writes its destination at position {@code 2k + 1}, so a destination can share the
+ * register of an operand that dies at the same instruction. The live interval of a variable spans
+ * all positions at which it is live, see {@link Liveness}. A variable that is read but neither an
+ * argument nor written anywhere in the function, e.g. a local that the program never assigns, is
+ * undefined; it is live from the start of the function like an argument and starts out as zero.
+ * <p>
+ * {@code %rax}, {@code %r10} and {@code %r11} are never allocated, they are the scratch registers of
+ * the code generator. Calls clobber all caller-saved registers and {@code idivq} clobbers
+ * {@code %rdx}, so a variable that is live across such an instruction only gets a register that
+ * survives it. Callee-saved registers that are used must be saved by the function; they get a stack
+ * slot for that, just like spilled variables.
+ */
+final class RegisterAllocator {
+  static final String[] CALLEE_SAVED = {"%rbx", "%r12", "%r13", "%r14", "%r15"};
+  static final String[] CALLER_SAVED = {"%rcx", "%rsi", "%rdi", "%r8", "%r9", "%rdx"};
+
+  private static final class Interval {
+    final Variable var;
+    int start = Integer.MAX_VALUE;
+    int end = Integer.MIN_VALUE;
+    final Set<String> clobbered = new HashSet<>();
+    boolean crossesCall = false;
+    String register;
+
+    Interval(Variable var) {
+      this.var = var;
+    }
+
+    void cover(int position) {
+      start = Math.min(start, position);
+      end = Math.max(end, position);
+    }
+  }
+
+  private final ControlFlowGraph cfg;
+  private final List<Instruction> order = new ArrayList<>();
+  private final Map<Variable, Interval> intervals = new LinkedHashMap<>();
+  private final Map<Variable, String> locations = new HashMap<>();
+  private final List<Variable> undefined = new ArrayList<>();
+  private final List<String> usedCalleeSaved = new ArrayList<>();
+  private final Map<String, String> saveSlots = new HashMap<>();
+  private int numSlots = 0;
+
+  RegisterAllocator(Function f, ControlFlowGraph cfg) {
+    this.cfg = cfg;
+    for (BasicBlock block : cfg.getBlocks()) {
+      order.addAll(block.getInstructions());
+    }
+    for (LocalVar arg : f.getArguments()) {
+      interval(arg).cover(-1);
+    }
+    for (Instruction inst : order) {
+      if (inst.getDestVar() != null)
+        interval(inst.getDestVar());
+    }
+    findUndefined();
+    computeLiveIntervals();
+    findClobbers();
+    allocate();
+  }
+
+  /**
+   * Returns the register or the stack slot of a variable of the function.
+   */
+  String location(Value v) {
+    String location = locations.get(v);
+    if (location == null)
+      throw new IllegalArgumentException(v + " is not a variable of the function");
+    return location;
+  }
+
+  /**
+   * Returns the variables that are read but never written, the caller must zero them on entry.
+   */
+  List<Variable> getUndefined() {
+    return undefined;
+  }
+
+  List<String> getUsedCalleeSaved() {
+    return usedCalleeSaved;
+  }
+
+  String getSaveSlot(String register) {
+    return saveSlots.get(register);
+  }
+
+  /**
+   * Returns the number of 8 byte stack slots needed for spilled variables and saved registers.
+   */
+  int getNumSlots() {
+    return numSlots;
+  }
+
+  private Interval interval(Variable v) {
+    return intervals.computeIfAbsent(v, Interval::new);
+  }
+
+  private void findUndefined() {
+    for (Instruction inst : order) {
+      for (Value v : inst.getOperands()) {
+        if (v instanceof Variable && !intervals.containsKey(v)) {
+          undefined.add((Variable) v);
+          interval((Variable) v).cover(-1);
+        }
+      }
+    }
+  }
+
+  private void computeLiveIntervals() {
+    var liveness = new Liveness(cfg);
+    int position = 2 * order.size();
+    for (int b = cfg.size() - 1; b >= 0; b--) {
+      BasicBlock block = cfg.getBlocks().get(b);
+      BitSet live = (BitSet) liveness.getLiveOut(block).clone();
+      List<Instruction> instructions = block.getInstructions();
+      for (int k = instructions.size() - 1; k >= 0; k--) {
+        Instruction inst = instructions.get(k);
+        position -= 2;
+        for (int i = live.nextSetBit(0); i >= 0; i = live.nextSetBit(i + 1)) {
+          intervals.get(liveness.getVariable(i)).cover(position + 1);
+        }
+        if (inst.getDestVar() != null) {
+          intervals.get(inst.getDestVar()).cover(position + 1);
+          live.clear(liveness.indexOf(inst.getDestVar()));
+        }
+        for (Value v : inst.getOperands()) {
+          if (v instanceof Variable)
+            live.set(liveness.indexOf((Variable) v));
+        }
+        for (int i = live.nextSetBit(0); i >= 0; i = live.nextSetBit(i + 1)) {
+          intervals.get(liveness.getVariable(i)).cover(position);
+        }
+      }
+    }
+  }
+
+  private void findClobbers() {
+    for (int k = 0; k < order.size(); k++) {
+      Instruction inst = order.get(k);
+      boolean isCall = inst instanceof CallInst;
+      boolean isDiv = inst instanceof BinaryOperator
+          && ((BinaryOperator) inst).getOperator() == BinaryOperator.Op.Div;
+      if (!isCall && !isDiv)
+        continue;
+      for (Interval interval : intervals.values()) {
+        if (interval.start > 2 * k || interval.end < 2 * k + 1)
+          continue;
+        if (isCall) {
+          interval.crossesCall = true;
+          interval.clobbered.addAll(List.of(CALLER_SAVED));
+        } else {
+          interval.clobbered.add("%rdx");
+        }
+      }
+    }
+  }
+
+  private void allocate() {
+    List<Interval> sorted = new ArrayList<>(intervals.values());
+    sorted.sort(Comparator.<Interval>comparingInt(i -> i.start).thenComparingInt(i -> i.end));
+    List<Interval> active = new ArrayList<>();
+    Set<String> free = new LinkedHashSet<>();
+    free.addAll(List.of(CALLER_SAVED));
+    free.addAll(List.of(CALLEE_SAVED));
+
+    for (Interval current : sorted) {
+      for (Iterator<Interval> it = active.iterator(); it.hasNext();) {
+        Interval expired = it.next();
+        if (expired.end < current.start) {
+          free.add(expired.register);
+          it.remove();
+        }
+      }
+
+      current.register = pickRegister(current, free);
+      if (current.register == null) {
+        // Out of registers: spill whichever interval ends last.
+        Interval victim = null;
+        for (Interval candidate : active) {
+          if (candidate.end > current.end && !current.clobbered.contains(candidate.register)
+              && (victim == null || candidate.end > victim.end))
+            victim = candidate;
+        }
+        if (victim == null)
+          continue;
+        current.register = victim.register;
+        victim.register = null;
+        active.remove(victim);
+      }
+      free.remove(current.register);
+      active.add(current);
+    }
+
+    for (Interval interval : intervals.values()) {
+      if (interval.register != null) {
+        locations.put(interval.var, interval.register);
+        if (List.of(CALLEE_SAVED).contains(interval.register)
+            && !usedCalleeSaved.contains(interval.register))
+          usedCalleeSaved.add(interval.register);
+      }
+    }
+    for (String register : usedCalleeSaved) {
+      saveSlots.put(register, newSlot());
+    }
+    for (Interval interval : intervals.values()) {
+      if (interval.register == null)
+        locations.put(interval.var, newSlot());
+    }
+  }
+
+  /**
+   * Prefers caller-saved registers, unless the interval lives across a call.
+   */
+  private String pickRegister(Interval interval, Set<String> free) {
+    String[] first = interval.crossesCall ? CALLEE_SAVED : CALLER_SAVED;
+    String[] second = interval.crossesCall ? CALLER_SAVED : CALLEE_SAVED;
+    for (String[] registers : List.of(first, second)) {
+      for (String register : registers) {
+        if (free.contains(register) && !interval.clobbered.contains(register))
+          return register;
+      }
+    }
+    return null;
+  }
+
+  private String newSlot() {
+    numSlots++;
+    return "-" + (8 * numSlots) + "(%rbp)";
+  }
+}
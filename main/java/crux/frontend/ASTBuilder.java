@@ -0,0 +1,475 @@
+package crux.frontend;
+
+import crux.frontend.ast.*;
+import crux.frontend.ast.OpExpr.Operation;
+import crux.frontend.pt.CruxBaseListener;
+import crux.frontend.pt.CruxParser;
+import crux.frontend.types.*;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.IterativeParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Builds the AST of a program, either from a parse tree or while the program is parsed, as a parse
+ * listener of a {@link CruxParser} that does not build a parse tree. Then the parse tree never
+ * exists as a whole: a rule context is dropped as soon as its AST node is built, so a big program
+ * needs about half the memory.
+ * <p>
+ * Names are resolved as they are met, and the declaration and resolution errors are reported in
+ * the order of the program. While parsing, they are held back until the whole program has parsed,
+ * since a program with a syntax error reports nothing else. The builder gives up at the first
+ * syntax error or literal that does not fit an {@code int}; such programs should be parsed again
+ * with a parse tree.
+ */
+public final class ASTBuilder extends CruxBaseListener {
+  private static final class Parameter {
+    final String type;
+    final Token name;
+
+    Parameter(String type, Token name) {
+      this.type = type;
+      this.name = name;
+    }
+  }
+
+  private static final class FunctionHeader {
+    final Symbol symbol;
+    final List<Symbol> parameters;
+
+    FunctionHeader(Symbol symbol, List<Symbol> parameters) {
+      this.symbol = symbol;
+      this.parameters = parameters;
+    }
+  }
+
+  private final CruxParser parser; //null if the AST is built from a parse tree
+  private final PrintStream err;
+  private final ByteArrayOutputStream heldErrors; //null if the errors are reported at once
+  private final SymbolTable symTab;
+  // The AST nodes (and type names, operators, lists) of the rules that were parsed, but whose parent
+  // rule is not finished yet.
+  private final Deque<Object> values = new ArrayDeque<>();
+  // The number of values when a rule with a variable number of children was entered.
+  private final Deque<Integer> marks = new ArrayDeque<>();
+  private boolean abandoned = false;
+  private DeclarationList ast;
+
+  /**
+   * Adds the builder as a parse listener to a parser. If the lexer of the parser makes its tokens
+   * with an {@link IdentifierTokenFactory}, names are resolved by the ids they were interned to.
+   */
+  public ASTBuilder(CruxParser parser, PrintStream err) {
+    this.parser = parser;
+    this.err = err;
+    var factory = parser.getTokenFactory();
+    var identifiers = factory instanceof IdentifierTokenFactory
+        ? ((IdentifierTokenFactory) factory).getIdentifiers() : new Identifiers();
+    heldErrors = new ByteArrayOutputStream();
+    symTab = new SymbolTable(new PrintStream(heldErrors, true), identifiers);
+    parser.addParseListener(this);
+  }
+
+  /**
+   * Makes a builder for {@link #build(CruxParser.ProgramContext)}, which resolves the names with
+   * the identifiers the lexer interned them to, see {@link IdentifierTokenFactory}.
+   */
+  public ASTBuilder(PrintStream err, Identifiers identifiers) {
+    parser = null;
+    this.err = err;
+    heldErrors = null;
+    symTab = new SymbolTable(err, identifiers);
+  }
+
+  /**
+   * Builds the AST of a parse tree without any syntax error. The tree is walked without recursion,
+   * so it may be as deep as the program.
+   */
+  public DeclarationList build(CruxParser.ProgramContext program) {
+    new IterativeParseTreeWalker().walk(this, program);
+    return ast;
+  }
+
+  /**
+   * Stops building, e.g. because of a syntax error. The parser no longer calls the builder.
+   */
+  public void abandon() {
+    abandoned = true;
+    if (parser != null)
+      parser.removeParseListener(this);
+  }
+
+  /**
+   * Returns the AST of the program, or null if the builder gave up.
+   */
+  public DeclarationList getAST() {
+    return abandoned ? null : ast;
+  }
+
+  /**
+   * Returns whether a declaration or resolution error was reported.
+   */
+  public boolean hasEncounteredError() {
+    return symTab.hasEncounteredError();
+  }
+
+  private static Position makePosition(ParserRuleContext ctx) {
+    return new Position(ctx.start.getLine());
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T pop() {
+    return (T) values.pop();
+  }
+
+  /**
+   * Removes the values pushed since the rule was entered, in the order they were pushed.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> List<T> popSinceMark() {
+    int count = values.size() - marks.pop();
+    List<T> popped = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      popped.add((T) values.pop());
+    }
+    Collections.reverse(popped);
+    return popped;
+  }
+
+  private int countSinceMark() {
+    return values.size() - marks.pop();
+  }
+
+  private void mark() {
+    marks.push(values.size());
+  }
+
+  private Long parseInt(String text) {
+    try {
+      return (long) Integer.parseInt(text);
+    } catch (NumberFormatException e) {
+      // A parse tree fails the same way when it is built again.
+      if (parser == null)
+        throw e;
+      abandon();
+      return null;
+    }
+  }
+
+  @Override
+  public void exitProgram(CruxParser.ProgramContext ctx) {
+    List<Declaration> declarations = pop();
+    ast = new DeclarationList(makePosition(ctx), declarations);
+    if (heldErrors != null)
+      err.write(heldErrors.toByteArray(), 0, heldErrors.size());
+  }
+
+  /**
+   * The name of a designator or a call is resolved as soon as it is met, before the expressions
+   * that follow it.
+   */
+  @Override
+  public void visitTerminal(TerminalNode node) {
+    if (node.getSymbol().getType() != CruxParser.Identifier)
+      return;
+    var parent = node.getParent();
+    if (parent instanceof CruxParser.DesignatorContext
+        || parent instanceof CruxParser.CallExpressionContext) {
+      var ctx = (ParserRuleContext) parent;
+      values.push(symTab.lookup(makePosition(ctx), node.getSymbol()));
+    }
+  }
+
+  @Override
+  public void enterDeclarationList(CruxParser.DeclarationListContext ctx) {
+    mark();
+  }
+
+  @Override
+  public void exitDeclarationList(CruxParser.DeclarationListContext ctx) {
+    values.push(popSinceMark());
+  }
+
+  @Override
+  public void exitVariableDeclaration(CruxParser.VariableDeclarationContext ctx) {
+    Position pos = makePosition(ctx);
+    String type = pop();
+    Type varType = type.equalsIgnoreCase("int") ? IntType.INSTANCE : BoolType.INSTANCE;
+    values.push(new VariableDeclaration(pos, symTab.add(pos, ctx.Identifier().getSymbol(), varType)));
+  }
+
+  @Override
+  public void exitType(CruxParser.TypeContext ctx) {
+    values.push(ctx.getText());
+  }
+
+  @Override
+  public void exitArrayDeclaration(CruxParser.ArrayDeclarationContext ctx) {
+    Position pos = makePosition(ctx);
+    String type = pop();
+    Type base = type.equalsIgnoreCase("int") ? IntType.INSTANCE : BoolType.INSTANCE;
+    Long extent = parseInt(ctx.Integer().getText());
+    if (extent == null)
+      return;
+    Symbol sym = symTab.add(pos, ctx.Identifier().getSymbol(), ArrayType.of(extent, base));
+    values.push(new ArrayDeclaration(pos, sym));
+  }
+
+  @Override
+  public void exitParameter(CruxParser.ParameterContext ctx) {
+    String type = pop();
+    values.push(new Parameter(type, ctx.Identifier().getSymbol()));
+  }
+
+  @Override
+  public void enterParameterList(CruxParser.ParameterListContext ctx) {
+    mark();
+  }
+
+  /**
+   * The parameters are the last part of the signature: the function is declared and its scope is
+   * entered before its body is parsed, so that it can call itself.
+   */
+  @Override
+  public void exitParameterList(CruxParser.ParameterListContext ctx) {
+    List<Parameter> parameters = popSinceMark();
+    var function = (CruxParser.FunctionDefinitionContext) ctx.getParent();
+    Position pos = makePosition(function);
+    String returnType = pop();
+
+    Type ret = VoidType.INSTANCE;
+    if (returnType.equalsIgnoreCase("bool"))
+      ret = BoolType.INSTANCE;
+    else if (returnType.equalsIgnoreCase("int"))
+      ret = IntType.INSTANCE;
+    List<Type> types = new ArrayList<>();
+    for (Parameter parameter : parameters) {
+      types.add(parameter.type.equalsIgnoreCase("int") ? IntType.INSTANCE : BoolType.INSTANCE);
+    }
+    Symbol symbol =
+        symTab.add(pos, function.Identifier().getSymbol(), FuncType.of(TypeList.of(types), ret));
+
+    symTab.enter();
+    List<Symbol> arguments = new ArrayList<>();
+    for (int i = 0; i < parameters.size(); i++) {
+      arguments.add(symTab.add(pos, parameters.get(i).name, types.get(i)));
+    }
+    values.push(new FunctionHeader(symbol, arguments));
+  }
+
+  @Override
+  public void exitFunctionDefinition(CruxParser.FunctionDefinitionContext ctx) {
+    StatementList body = pop();
+    FunctionHeader header = pop();
+    values.push(new FunctionDefinition(makePosition(ctx), header.symbol, header.parameters, body));
+  }
+
+  @Override
+  public void enterStatementBlock(CruxParser.StatementBlockContext ctx) {
+    // The scope of a function body also holds its parameters, it was entered with them.
+    if (!(ctx.getParent() instanceof CruxParser.FunctionDefinitionContext))
+      symTab.enter();
+  }
+
+  @Override
+  public void exitStatementBlock(CruxParser.StatementBlockContext ctx) {
+    symTab.exit();
+  }
+
+  @Override
+  public void enterStatementList(CruxParser.StatementListContext ctx) {
+    mark();
+  }
+
+  @Override
+  public void exitStatementList(CruxParser.StatementListContext ctx) {
+    List<Statement> statements = popSinceMark();
+    values.push(new StatementList(makePosition(ctx), statements));
+  }
+
+  @Override
+  public void exitAssignmentStatement(CruxParser.AssignmentStatementContext ctx) {
+    Expression value = pop();
+    Expression location = pop();
+    values.push(new Assignment(makePosition(ctx), location, value));
+  }
+
+  @Override
+  public void enterIfStatement(CruxParser.IfStatementContext ctx) {
+    mark();
+  }
+
+  @Override
+  public void exitIfStatement(CruxParser.IfStatementContext ctx) {
+    Position pos = makePosition(ctx);
+    StatementList elseBlock =
+        countSinceMark() == 3 ? pop() : new StatementList(pos, List.of());
+    StatementList thenBlock = pop();
+    Expression condition = pop();
+    values.push(new IfElseBranch(pos, condition, thenBlock, elseBlock));
+  }
+
+  @Override
+  public void exitLoopStatement(CruxParser.LoopStatementContext ctx) {
+    StatementList body = pop();
+    values.push(new Loop(makePosition(ctx), body));
+  }
+
+  @Override
+  public void exitBreakStatement(CruxParser.BreakStatementContext ctx) {
+    values.push(new Break(makePosition(ctx)));
+  }
+
+  @Override
+  public void exitContinueStatement(CruxParser.ContinueStatementContext ctx) {
+    values.push(new Continue(makePosition(ctx)));
+  }
+
+  @Override
+  public void exitReturnStatement(CruxParser.ReturnStatementContext ctx) {
+    Expression value = pop();
+    values.push(new Return(makePosition(ctx), value));
+  }
+
+  @Override
+  public void exitOp0(CruxParser.Op0Context ctx) {
+    Operation op = Operation.GT;
+    if (ctx.GreaterEqual() != null)
+      op = Operation.GE;
+    else if (ctx.LesserEqual() != null)
+      op = Operation.LE;
+    else if (ctx.NotEqual() != null)
+      op = Operation.NE;
+    else if (ctx.Equal() != null)
+      op = Operation.EQ;
+    else if (ctx.LessThan() != null)
+      op = Operation.LT;
+    values.push(op);
+  }
+
+  @Override
+  public void exitOp1(CruxParser.Op1Context ctx) {
+    Operation op = Operation.LOGIC_OR;
+    if (ctx.Add() != null)
+      op = Operation.ADD;
+    else if (ctx.Sub() != null)
+      op = Operation.SUB;
+    values.push(op);
+  }
+
+  @Override
+  public void exitOp2(CruxParser.Op2Context ctx) {
+    Operation op = Operation.LOGIC_AND;
+    if (ctx.Mult() != null)
+      op = Operation.MULT;
+    else if (ctx.Div() != null)
+      op = Operation.DIV;
+    values.push(op);
+  }
+
+  @Override
+  public void enterExpression0(CruxParser.Expression0Context ctx) {
+    mark();
+  }
+
+  @Override
+  public void exitExpression0(CruxParser.Expression0Context ctx) {
+    if (countSinceMark() == 3)
+      pushBinary(ctx);
+  }
+
+  /*
+   * expression1 and expression2 are left recursive. While parsing, ANTLR parses "a + b" by exiting
+   * the context of "a" and entering a new context for the whole expression, so "a" is already on the
+   * stack when the new context is entered: only the operator and the right operand come after its
+   * mark. In a parse tree "a" is a child of the whole expression, and all three come after it.
+   */
+
+  @Override
+  public void enterExpression1(CruxParser.Expression1Context ctx) {
+    mark();
+  }
+
+  @Override
+  public void exitExpression1(CruxParser.Expression1Context ctx) {
+    if (countSinceMark() > 1)
+      pushBinary(ctx);
+  }
+
+  @Override
+  public void enterExpression2(CruxParser.Expression2Context ctx) {
+    mark();
+  }
+
+  @Override
+  public void exitExpression2(CruxParser.Expression2Context ctx) {
+    if (countSinceMark() > 1)
+      pushBinary(ctx);
+  }
+
+  private void pushBinary(ParserRuleContext ctx) {
+    Expression right = pop();
+    Operation op = pop();
+    Expression left = pop();
+    values.push(new OpExpr(makePosition(ctx), op, left, right));
+  }
+
+  @Override
+  public void exitExpression3(CruxParser.Expression3Context ctx) {
+    if (ctx.Not() != null) {
+      Expression inner = pop();
+      values.push(new OpExpr(makePosition(ctx), Operation.LOGIC_NOT, inner, null));
+    }
+  }
+
+  @Override
+  public void exitDesignator(CruxParser.DesignatorContext ctx) {
+    Position pos = makePosition(ctx);
+    Expression offset = ctx.OpenBracket() != null ? pop() : null;
+    Name base = new Name(pos, pop());
+    Expression address = offset != null ? new ArrayAccess(pos, base, offset) : base;
+    // The left hand side of an assignment is a location, everywhere else the value is read.
+    if (ctx.getParent() instanceof CruxParser.AssignmentStatementContext)
+      values.push(address);
+    else
+      values.push(new Dereference(pos, address));
+  }
+
+  @Override
+  public void exitCallExpression(CruxParser.CallExpressionContext ctx) {
+    Position pos = makePosition(ctx);
+    List<Expression> arguments = pop();
+    Symbol callee = pop();
+    values.push(new Call(pos, callee, arguments));
+  }
+
+  @Override
+  public void enterExpressionList(CruxParser.ExpressionListContext ctx) {
+    mark();
+  }
+
+  @Override
+  public void exitExpressionList(CruxParser.ExpressionListContext ctx) {
+    values.push(popSinceMark());
+  }
+
+  @Override
+  public void exitLiteral(CruxParser.LiteralContext ctx) {
+    Position pos = makePosition(ctx);
+    if (ctx.Integer() != null) {
+      Long value = parseInt(ctx.Integer().getText());
+      if (value != null)
+        values.push(new LiteralInt(pos, value));
+    } else {
+      values.push(new LiteralBool(pos, ctx.True() != null));
+    }
+  }
+}
@@ -0,0 +1,302 @@
+package crux.frontend;
+
+import crux.frontend.pt.CruxLexer;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A hand-written lexer for Crux that can replace the generated {@link CruxLexer}. It scans the
+ * characters of the input directly instead of simulating the lexer ATN, without copying the input,
+ * and its tokens do not copy their text, which is read from the input when asked for.
+ * <p>
+ * The tokens are the same as those of {@link CruxLexer}, with the same types, positions and
+ * indexes. Characters that do not start a token are reported and skipped the way {@link CruxLexer}
+ * does it, by default to {@link ConsoleErrorListener}: a lone {@code &} or {@code |} is reported
+ * together with the character after it, and both are skipped.
+ * <p>
+ * With an {@link IdentifierTokenFactory}, identifiers are interned from a buffer that is reused for
+ * every identifier, without making a string of them.
+ */
+public final class CruxTokenSource implements TokenSource {
+  private static final int SKIP = -2;
+  private static final int ERROR = -3;
+
+  private static final String[] KEYWORDS = {
+      "true", "false", "if", "else", "loop", "continue", "break", "return"};
+  private static final int[] KEYWORD_TYPES = {
+      CruxLexer.True, CruxLexer.False, CruxLexer.If, CruxLexer.Else, CruxLexer.Loop,
+      CruxLexer.Continue, CruxLexer.Break, CruxLexer.Return};
+
+  private final CharStream input;
+  private final Pair<TokenSource, CharStream> source;
+  private final List<ANTLRErrorListener> listeners = new ArrayList<>();
+  private TokenFactory<?> factory = CommonTokenFactory.DEFAULT;
+
+  // The characters of the last keyword or identifier, which are all ASCII.
+  private char[] word = new char[16];
+  private int wordLength = 0;
+
+  // The position in the input, which counts code points.
+  private int index;
+  private int line = 1;
+  private int column = 0;
+
+  public CruxTokenSource(CharStream input) {
+    this.input = input;
+    index = input.index();
+    source = new Pair<>(this, input);
+    listeners.add(ConsoleErrorListener.INSTANCE);
+  }
+
+  public void addErrorListener(ANTLRErrorListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeErrorListeners() {
+    listeners.clear();
+  }
+
+  @Override
+  public Token nextToken() {
+    while (input.LA(1) != CharStream.EOF) {
+      int startIndex = index;
+      int startLine = line;
+      int startColumn = column;
+      int type = scan();
+      if (type == SKIP)
+        continue;
+      if (type == ERROR) {
+        reportError(startIndex, startLine, startColumn);
+        continue;
+      }
+      if (type == CruxLexer.Identifier && factory instanceof IdentifierTokenFactory) {
+        var identifierFactory = (IdentifierTokenFactory) factory;
+        int id = identifierFactory.getIdentifiers().intern(word, 0, wordLength);
+        return identifierFactory.create(source, id, Token.DEFAULT_CHANNEL, startIndex, index - 1,
+            startLine, startColumn);
+      }
+      return factory.create(source, type, null, Token.DEFAULT_CHANNEL, startIndex, index - 1,
+          startLine, startColumn);
+    }
+    return factory.create(source, Token.EOF, null, Token.DEFAULT_CHANNEL, index, index - 1, line,
+        column);
+  }
+
+  /**
+   * Consumes the next token and returns its type, or {@link #SKIP} for white space and comments.
+   * Returns {@link #ERROR} without consuming the character that failed.
+   */
+  private int scan() {
+    int c = input.LA(1);
+    switch (c) {
+      case ' ':
+      case '\t':
+      case '\r':
+      case '\n':
+        do {
+          consume();
+        } while (isWhiteSpace(input.LA(1)));
+        return SKIP;
+      case ';':
+        return single(CruxLexer.SemiColon);
+      case '(':
+        return single(CruxLexer.OpenParen);
+      case ')':
+        return single(CruxLexer.CloseParen);
+      case '{':
+        return single(CruxLexer.OpenBrace);
+      case '}':
+        return single(CruxLexer.CloseBrace);
+      case '[':
+        return single(CruxLexer.OpenBracket);
+      case ']':
+        return single(CruxLexer.CloseBracket);
+      case '+':
+        return single(CruxLexer.Add);
+      case '-':
+        return single(CruxLexer.Sub);
+      case '*':
+        return single(CruxLexer.Mult);
+      case ',':
+        return single(CruxLexer.Comma);
+      case '/':
+        consume();
+        if (!next('/'))
+          return CruxLexer.Div;
+        for (int d = input.LA(1); d != CharStream.EOF && d != '\r' && d != '\n'; d = input.LA(1)) {
+          consume();
+        }
+        return SKIP;
+      case '>':
+        consume();
+        return next('=') ? CruxLexer.GreaterEqual : CruxLexer.GreaterThan;
+      case '<':
+        consume();
+        return next('=') ? CruxLexer.LesserEqual : CruxLexer.LessThan;
+      case '!':
+        consume();
+        return next('=') ? CruxLexer.NotEqual : CruxLexer.Not;
+      case '=':
+        consume();
+        return next('=') ? CruxLexer.Equal : CruxLexer.Assign;
+      case '&':
+        consume();
+        return next('&') ? CruxLexer.And : ERROR;
+      case '|':
+        consume();
+        return next('|') ? CruxLexer.Or : ERROR;
+      case '0':
+        return single(CruxLexer.Integer);
+      default:
+        break;
+    }
+
+    if (c >= '1' && c <= '9') {
+      do {
+        consume();
+      } while (isDigit(input.LA(1)));
+      return CruxLexer.Integer;
+    }
+    if (isLetter(c)) {
+      wordLength = 0;
+      do {
+        if (wordLength == word.length)
+          word = Arrays.copyOf(word, 2 * word.length);
+        word[wordLength++] = (char) c;
+        consume();
+        c = input.LA(1);
+      } while (isLetter(c) || isDigit(c) || c == '_');
+      return keywordOrIdentifier();
+    }
+    return ERROR;
+  }
+
+  private int single(int type) {
+    consume();
+    return type;
+  }
+
+  /**
+   * Consumes the next character if it is {@code c}.
+   */
+  private boolean next(char c) {
+    if (input.LA(1) != c)
+      return false;
+    consume();
+    return true;
+  }
+
+  /**
+   * Consumes one code point.
+   */
+  private void consume() {
+    int c = input.LA(1);
+    input.consume();
+    index++;
+    if (c == '\n') {
+      line++;
+      column = 0;
+    } else {
+      column++;
+    }
+  }
+
+  private int keywordOrIdentifier() {
+    for (int k = 0; k < KEYWORDS.length; k++) {
+      String keyword = KEYWORDS[k];
+      if (keyword.length() != wordLength)
+        continue;
+      int i = 0;
+      while (i < wordLength && keyword.charAt(i) == word[i]) {
+        i++;
+      }
+      if (i == wordLength)
+        return KEYWORD_TYPES[k];
+    }
+    return CruxLexer.Identifier;
+  }
+
+  /**
+   * Reports the text from the start of the failed token up to and including the character that
+   * failed, then skips that character as well.
+   */
+  private void reportError(int startIndex, int startLine, int startColumn) {
+    String text = input.getText(Interval.of(startIndex, index));
+    if (input.LA(1) != CharStream.EOF)
+      consume();
+
+    var display = new StringBuilder();
+    for (char c : text.toCharArray()) {
+      switch (c) {
+        case '\n':
+          display.append("\\n");
+          break;
+        case '\t':
+          display.append("\\t");
+          break;
+        case '\r':
+          display.append("\\r");
+          break;
+        default:
+          display.append(c);
+      }
+    }
+    String msg = "token recognition error at: '" + display + "'";
+    for (var listener : listeners) {
+      listener.syntaxError(null, null, startLine, startColumn, msg, null);
+    }
+  }
+
+  private static boolean isWhiteSpace(int c) {
+    return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+  }
+
+  private static boolean isLetter(int c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  @Override
+  public int getLine() {
+    return line;
+  }
+
+  @Override
+  public int getCharPositionInLine() {
+    return column;
+  }
+
+  @Override
+  public CharStream getInputStream() {
+    return input;
+  }
+
+  @Override
+  public String getSourceName() {
+    return input.getSourceName();
+  }
+
+  @Override
+  public void setTokenFactory(TokenFactory<?> factory) {
+    this.factory = factory;
+  }
+
+  @Override
+  public TokenFactory<?> getTokenFactory() {
+    return factory;
+  }
+}
@@ -0,0 +1,36 @@
+package crux.frontend;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * An identifier token that knows the id its name was interned to, see {@link Identifiers}. Its
+ * text is the canonical string of the name.
+ */
+public final class IdentifierToken extends CommonToken {
+  private static final long serialVersionUID = 1L;
+
+  private final Identifiers identifiers;
+  private final int id;
+
+  IdentifierToken(Pair<TokenSource, CharStream> source, int type, int channel, int start, int stop,
+      Identifiers identifiers, int id) {
+    super(source, type, channel, start, stop);
+    this.identifiers = identifiers;
+    this.id = id;
+    setText(identifiers.name(id));
+  }
+
+  /**
+   * Returns the interner the id belongs to.
+   */
+  public Identifiers getIdentifiers() {
+    return identifiers;
+  }
+
+  public int getId() {
+    return id;
+  }
+}
@@ -0,0 +1,57 @@
+package crux.frontend;
+
+import crux.frontend.pt.CruxLexer;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * Makes the tokens of a lexer like {@link CommonTokenFactory#DEFAULT} does, except that identifiers
+ * are interned as they are scanned and become {@link IdentifierToken}s. The symbol table looks up
+ * those by id, without hashing or comparing their names again.
+ */
+public final class IdentifierTokenFactory implements TokenFactory<CommonToken> {
+  private final Identifiers identifiers;
+
+  public IdentifierTokenFactory(Identifiers identifiers) {
+    this.identifiers = identifiers;
+  }
+
+  public Identifiers getIdentifiers() {
+    return identifiers;
+  }
+
+  @Override
+  public CommonToken create(Pair<TokenSource, CharStream> source, int type, String text,
+      int channel, int start, int stop, int line, int charPositionInLine) {
+    if (type != CruxLexer.Identifier) {
+      return CommonTokenFactory.DEFAULT.create(source, type, text, channel, start, stop, line,
+          charPositionInLine);
+    }
+    if (text == null)
+      text = source.b.getText(Interval.of(start, stop));
+    return create(source, identifiers.intern(text), channel, start, stop, line,
+        charPositionInLine);
+  }
+
+  /**
+   * Makes an identifier token whose name was already interned.
+   */
+  IdentifierToken create(Pair<TokenSource, CharStream> source, int id, int channel, int start,
+      int stop, int line, int charPositionInLine) {
+    var token =
+        new IdentifierToken(source, CruxLexer.Identifier, channel, start, stop, identifiers, id);
+    token.setLine(line);
+    token.setCharPositionInLine(charPositionInLine);
+    return token;
+  }
+
+  @Override
+  public CommonToken create(int type, String text) {
+    return CommonTokenFactory.DEFAULT.create(type, text);
+  }
+}
@@ -0,0 +1,111 @@
+package crux.frontend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interns the identifiers of a compilation: every distinct name gets a small id, counting up from
+ * 0, and one canonical {@link String}. The names of the built-in functions are interned first, so
+ * that their ids are the same in every compilation.
+ * <p>
+ * Names can be interned straight from the characters of the input, without making a string of
+ * them unless they were not seen before.
+ */
+public final class Identifiers {
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final List<String> names = new ArrayList<>();
+  // An open addressing hash table of the ids plus one, 0 marks an empty slot.
+  private int[] slots = new int[INITIAL_CAPACITY];
+  private int[] hashes = new int[INITIAL_CAPACITY];
+
+  public Identifiers() {
+    for (String builtin : SymbolTable.BUILTIN_NAMES) {
+      intern(builtin);
+    }
+  }
+
+  /**
+   * Returns the id of a name, interning it if it was not seen before.
+   */
+  public int intern(String name) {
+    int hash = name.hashCode();
+    int mask = slots.length - 1;
+    for (int i = hash & mask; ; i = (i + 1) & mask) {
+      int slot = slots[i];
+      if (slot == 0)
+        return add(i, hash, name);
+      if (hashes[slot - 1] == hash && names.get(slot - 1).equals(name))
+        return slot - 1;
+    }
+  }
+
+  /**
+   * Returns the id of the name made of {@code length} characters from {@code start}, interning it
+   * if it was not seen before.
+   */
+  public int intern(char[] chars, int start, int length) {
+    int hash = 0;
+    for (int i = start; i < start + length; i++) {
+      hash = 31 * hash + chars[i];
+    }
+    int mask = slots.length - 1;
+    for (int i = hash & mask; ; i = (i + 1) & mask) {
+      int slot = slots[i];
+      if (slot == 0)
+        return add(i, hash, new String(chars, start, length));
+      if (hashes[slot - 1] == hash && matches(names.get(slot - 1), chars, start, length))
+        return slot - 1;
+    }
+  }
+
+  private static boolean matches(String name, char[] chars, int start, int length) {
+    if (name.length() != length)
+      return false;
+    for (int i = 0; i < length; i++) {
+      if (name.charAt(i) != chars[start + i])
+        return false;
+    }
+    return true;
+  }
+
+  private int add(int index, int hash, String name) {
+    int id = names.size();
+    names.add(name);
+    if (id == hashes.length)
+      hashes = Arrays.copyOf(hashes, id * 2);
+    hashes[id] = hash;
+    slots[index] = id + 1;
+    // Keep the table at most half full.
+    if (2 * names.size() > slots.length)
+      rehash();
+    return id;
+  }
+
+  private void rehash() {
+    slots = new int[slots.length * 2];
+    int mask = slots.length - 1;
+    for (int id = 0; id < names.size(); id++) {
+      int i = hashes[id] & mask;
+      while (slots[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      slots[i] = id + 1;
+    }
+  }
+
+  /**
+   * Returns the canonical string of an id.
+   */
+  public String name(int id) {
+    return names.get(id);
+  }
+
+  /**
+   * Returns the number of names interned, which is one more than the largest id.
+   */
+  public int size() {
+    return names.size();
+  }
+}
@@ -0,0 +1,253 @@
+package crux.frontend;
+
+import crux.frontend.pt.CruxParser;
+import org.antlr.v4.runtime.FailedPredicateException;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.AtomTransition;
+import org.antlr.v4.runtime.atn.DecisionState;
+import org.antlr.v4.runtime.atn.LoopEndState;
+import org.antlr.v4.runtime.atn.PrecedencePredicateTransition;
+import org.antlr.v4.runtime.atn.RuleStartState;
+import org.antlr.v4.runtime.atn.RuleTransition;
+import org.antlr.v4.runtime.atn.StarLoopEntryState;
+import org.antlr.v4.runtime.atn.Transition;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A {@link CruxParser} that parses a program without recursion, so the program may nest as deep as
+ * memory allows. It walks the ATN of the generated parser like the generated methods do: the same
+ * states, the same predictions through the shared {@link #getInterpreter() interpreter}, and the
+ * same error strategy calls. The rules it is in are the chain of contexts from {@code _ctx} up, and
+ * a rule that is finished returns to the state after the one it was invoked from.
+ * <p>
+ * It makes the same parse tree, fires the same parse listener events and reports the same syntax
+ * errors as {@link #program()}. Every rule of the grammar must have a case in
+ * {@link #newContext(int, ParserRuleContext, int)}.
+ */
+public final class IterativeCruxParser extends CruxParser {
+  // The left recursive rules that are parsed, innermost on top.
+  private final Deque<Recursion> recursions = new ArrayDeque<>();
+
+  public IterativeCruxParser(TokenStream input) {
+    super(input);
+  }
+
+  /**
+   * Also resets the state, which the context of the next program is invoked from. The default
+   * error strategy follows the invoking states up to the program to recover from an error.
+   */
+  @Override
+  public void reset() {
+    super.reset();
+    setState(ATNState.INVALID_STATE_NUMBER);
+  }
+
+  /**
+   * Parses a whole program like {@link #program()}.
+   */
+  public ProgramContext parseProgram() {
+    recursions.clear();
+    var program = new ProgramContext(_ctx, getState());
+    enterRule(program, _ATN.ruleToStartState[RULE_program].stateNumber, RULE_program);
+    while (true) {
+      ATNState state = _ATN.states.get(getState());
+      if (state.getStateType() == ATNState.RULE_STOP) {
+        if (_ctx == program) {
+          exitRule();
+          return program;
+        }
+        returnFrom(state);
+        continue;
+      }
+      try {
+        step(state);
+      } catch (RecognitionException e) {
+        // The generated methods catch the error in the rule it happened in and leave the rule.
+        _ctx.exception = e;
+        _errHandler.reportError(this, e);
+        _errHandler.recover(this, e);
+        setState(_ATN.ruleToStopState[_ctx.getRuleIndex()].stateNumber);
+      }
+    }
+  }
+
+  /**
+   * Takes the transition out of a state that the input says, and moves to its target.
+   */
+  private void step(ATNState state) {
+    int alternative = 1;
+    if (state instanceof StarLoopEntryState && ((StarLoopEntryState) state).isPrecedenceDecision) {
+      // The loop of a left recursive rule, after its first alternative or another operator.
+      Recursion recursion = recursions.peek();
+      if (!recursion.looping) {
+        _ctx.stop = _input.LT(-1);
+        recursion.looping = true;
+      }
+    }
+    if (state instanceof DecisionState && state.getNumberOfTransitions() > 1) {
+      _errHandler.sync(this);
+      int decision = ((DecisionState) state).decision;
+      alternative = getInterpreter().adaptivePredict(_input, decision, _ctx);
+    }
+    Transition transition = state.transition(alternative - 1);
+    switch (transition.getSerializationType()) {
+      case Transition.EPSILON:
+        if (state instanceof StarLoopEntryState && ((StarLoopEntryState) state).isPrecedenceDecision
+            && !(transition.target instanceof LoopEndState)) {
+          // Another operator: the expression so far becomes its left operand.
+          Recursion recursion = recursions.peek();
+          if (_parseListeners != null)
+            triggerExitRuleEvent();
+          int ruleIndex = _ctx.getRuleIndex();
+          pushNewRecursionContext(newContext(ruleIndex, recursion.parent, recursion.invokingState),
+              _ATN.ruleToStartState[ruleIndex].stateNumber, ruleIndex);
+        }
+        break;
+      case Transition.ACTION:
+        // The grammar has no actions, the ATN only marks where left recursive rules were rewritten.
+        break;
+      case Transition.ATOM:
+        match(((AtomTransition) transition).label);
+        break;
+      case Transition.RANGE:
+      case Transition.SET:
+      case Transition.NOT_SET:
+        if (!transition.matches(_input.LA(1), Token.MIN_USER_TOKEN_TYPE, _ATN.maxTokenType)) {
+          _errHandler.recoverInline(this);
+        } else {
+          if (_input.LA(1) == Token.EOF)
+            matchedEOF = true;
+          _errHandler.reportMatch(this);
+          consume();
+        }
+        break;
+      case Transition.RULE:
+        var start = (RuleStartState) transition.target;
+        ParserRuleContext context = newContext(start.ruleIndex, _ctx, state.stateNumber);
+        if (start.isLeftRecursiveRule) {
+          recursions.push(new Recursion(_ctx, state.stateNumber));
+          enterRecursionRule(context, start.stateNumber, start.ruleIndex,
+              ((RuleTransition) transition).precedence);
+        } else {
+          enterRule(context, start.stateNumber, start.ruleIndex);
+        }
+        return;
+      case Transition.PRECEDENCE:
+        int precedence = ((PrecedencePredicateTransition) transition).precedence;
+        if (!precpred(_ctx, precedence))
+          throw new FailedPredicateException(this, "precpred(_ctx, " + precedence + ")");
+        break;
+      default:
+        throw new IllegalStateException(
+            "unsupported transition " + transition + " in rule " + ruleNames[state.ruleIndex]);
+    }
+    setState(transition.target.stateNumber);
+  }
+
+  /**
+   * Leaves the rule that {@code stop} ends, and goes on after the state it was invoked from.
+   */
+  private void returnFrom(ATNState stop) {
+    if (_ATN.ruleToStartState[stop.ruleIndex].isLeftRecursiveRule) {
+      Recursion recursion = recursions.pop();
+      unrollRecursionContexts(recursion.parent);
+      setState(recursion.invokingState);
+    } else {
+      exitRule();
+    }
+    var invocation = (RuleTransition) _ATN.states.get(getState()).transition(0);
+    setState(invocation.followState.stateNumber);
+  }
+
+  /**
+   * Returns the context the generated method of a rule makes.
+   */
+  private static ParserRuleContext newContext(int ruleIndex, ParserRuleContext parent,
+      int invokingState) {
+    switch (ruleIndex) {
+      case RULE_program:
+        return new ProgramContext(parent, invokingState);
+      case RULE_declarationList:
+        return new DeclarationListContext(parent, invokingState);
+      case RULE_declaration:
+        return new DeclarationContext(parent, invokingState);
+      case RULE_variableDeclaration:
+        return new VariableDeclarationContext(parent, invokingState);
+      case RULE_type:
+        return new TypeContext(parent, invokingState);
+      case RULE_literal:
+        return new LiteralContext(parent, invokingState);
+      case RULE_designator:
+        return new DesignatorContext(parent, invokingState);
+      case RULE_op0:
+        return new Op0Context(parent, invokingState);
+      case RULE_op1:
+        return new Op1Context(parent, invokingState);
+      case RULE_op2:
+        return new Op2Context(parent, invokingState);
+      case RULE_expression0:
+        return new Expression0Context(parent, invokingState);
+      case RULE_expression1:
+        return new Expression1Context(parent, invokingState);
+      case RULE_expression2:
+        return new Expression2Context(parent, invokingState);
+      case RULE_expression3:
+        return new Expression3Context(parent, invokingState);
+      case RULE_callExpression:
+        return new CallExpressionContext(parent, invokingState);
+      case RULE_expressionList:
+        return new ExpressionListContext(parent, invokingState);
+      case RULE_parameter:
+        return new ParameterContext(parent, invokingState);
+      case RULE_parameterList:
+        return new ParameterListContext(parent, invokingState);
+      case RULE_arrayDeclaration:
+        return new ArrayDeclarationContext(parent, invokingState);
+      case RULE_functionDefinition:
+        return new FunctionDefinitionContext(parent, invokingState);
+      case RULE_assignmentStatement:
+        return new AssignmentStatementContext(parent, invokingState);
+      case RULE_callStatement:
+        return new CallStatementContext(parent, invokingState);
+      case RULE_ifStatement:
+        return new IfStatementContext(parent, invokingState);
+      case RULE_loopStatement:
+        return new LoopStatementContext(parent, invokingState);
+      case RULE_breakStatement:
+        return new BreakStatementContext(parent, invokingState);
+      case RULE_continueStatement:
+        return new ContinueStatementContext(parent, invokingState);
+      case RULE_returnStatement:
+        return new ReturnStatementContext(parent, invokingState);
+      case RULE_statement:
+        return new StatementContext(parent, invokingState);
+      case RULE_statementList:
+        return new StatementListContext(parent, invokingState);
+      case RULE_statementBlock:
+        return new StatementBlockContext(parent, invokingState);
+      default:
+        throw new IllegalStateException("no context for rule " + ruleNames[ruleIndex]);
+    }
+  }
+
+  /**
+   * A left recursive rule that is parsed: the context and the state it was invoked from, which its
+   * contexts for every further operator are made with.
+   */
+  private static final class Recursion {
+    final ParserRuleContext parent;
+    final int invokingState;
+    boolean looping;
+
+    Recursion(ParserRuleContext parent, int invokingState) {
+      this.parent = parent;
+      this.invokingState = invokingState;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package crux.frontend;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link CharStream} over a memory-mapped ASCII file. Unlike the streams made by
+ * {@link org.antlr.v4.runtime.CharStreams}, it does not copy the file into an array of code points,
+ * every byte of the file is a character of the stream. The text of tokens is decoded from the
+ * mapped bytes when it is asked for.
+ */
+public final class MappedCharStream implements CharStream {
+  /**
+   * The file size from which the driver maps its input instead of reading it.
+   */
+  public static final long DEFAULT_THRESHOLD = 16L << 20;
+
+  private static final long NON_ASCII_MASK = 0x8080808080808080L;
+
+  private final MappedByteBuffer buffer;
+  private final int size;
+  private final String sourceName;
+  private int position = 0;
+
+  private MappedCharStream(MappedByteBuffer buffer, String sourceName) {
+    this.buffer = buffer;
+    this.size = buffer.limit();
+    this.sourceName = sourceName;
+  }
+
+  /**
+   * Maps a file, or returns null if it can not be read as a stream of bytes: the file is larger
+   * than 2 GB or it contains a byte that is not ASCII.
+   */
+  public static MappedCharStream open(Path path) throws IOException {
+    MappedByteBuffer buffer;
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE)
+        return null;
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (!isAscii(buffer))
+      return null;
+    return new MappedCharStream(buffer, path.toString());
+  }
+
+  private static boolean isAscii(MappedByteBuffer buffer) {
+    int limit = buffer.limit();
+    int i = 0;
+    for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+      if ((buffer.getLong(i) & NON_ASCII_MASK) != 0)
+        return false;
+    }
+    for (; i < limit; i++) {
+      if (buffer.get(i) < 0)
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public String getText(Interval interval) {
+    int start = Math.min(interval.a, size);
+    int length = Math.min(interval.b - interval.a + 1, size - start);
+    if (length <= 0)
+      return "";
+    var bytes = new byte[length];
+    buffer.get(start, bytes);
+    return new String(bytes, StandardCharsets.US_ASCII);
+  }
+
+  @Override
+  public void consume() {
+    if (position >= size)
+      throw new IllegalStateException("cannot consume EOF");
+    position++;
+  }
+
+  @Override
+  public int LA(int i) {
+    if (i == 0)
+      return 0;
+    int offset = i > 0 ? position + i - 1 : position + i;
+    if (offset < 0 || offset >= size)
+      return IntStream.EOF;
+    return buffer.get(offset);
+  }
+
+  @Override
+  public int mark() {
+    return -1;
+  }
+
+  @Override
+  public void release(int marker) {
+  }
+
+  @Override
+  public int index() {
+    return position;
+  }
+
+  @Override
+  public void seek(int index) {
+    position = index;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public String getSourceName() {
+    return sourceName;
+  }
+
+  @Override
+  public String toString() {
+    return getText(Interval.of(0, size - 1));
+  }
+}
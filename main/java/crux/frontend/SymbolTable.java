@@ -2,66 +2,71 @@ package crux.frontend;
 
 import crux.frontend.ast.Position;
 import crux.frontend.types.*;
+import org.antlr.v4.runtime.Token;
 
-import javax.swing.*;
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Symbol table will map each symbol from Crux source code to its declaration or appearance in the
- * source. the symbol table is made up of scopes, each scope is a map which maps an identifier to
- * it's symbol Scopes are inserted to the table starting from the first scope (Global Scope). The
- * Global scope is the first scope in each Crux program and it contains all the built in functions
- * and names. The symbol table is an ArrayList of scopes.
+ * source. The names are interned to ids by {@link Identifiers}, and the table keeps a single array
+ * which maps each id to the innermost symbol of that name, so entering a scope, leaving it and
+ * looking up a name take constant time however deep the scopes nest. Every symbol added to a scope
+ * records the symbol it shadows in an undo log, which is replayed backwards when the scope is left.
+ * The Global scope is the first scope in each Crux program and it contains all the built in
+ * functions, which are made once and shared by every table.
  */
 
 final class SymbolTable
 {
-  private final PrintStream err;
-  private final ArrayList<Map<String, Symbol>> symbolScopes = new ArrayList<>();
-
-  private boolean encounteredError = false;
-
-  SymbolTable(PrintStream err)
-  {
-    this.err = err;
+  //The built in functions, Identifiers interns their names first so a builtin's index is also its id
+  private static final Symbol[] BUILTINS = {
+      new Symbol("readInt", FuncType.of(TypeList.of(), IntType.INSTANCE)), //int readInt()
+      new Symbol("readChar", FuncType.of(TypeList.of(), IntType.INSTANCE)), //int readChar()
+      new Symbol("printBool", FuncType.of(TypeList.of(BoolType.INSTANCE), VoidType.INSTANCE)), //void printBool(bool arg)
+      new Symbol("printInt", FuncType.of(TypeList.of(IntType.INSTANCE), VoidType.INSTANCE)), //void printInt(int arg)
+      new Symbol("printChar", FuncType.of(TypeList.of(IntType.INSTANCE), VoidType.INSTANCE)), //void printChar(int arg)
+      new Symbol("println", FuncType.of(TypeList.of(), VoidType.INSTANCE)) //void println()
+  };
+
+  static final List<String> BUILTIN_NAMES =
+      Stream.of(BUILTINS).map(Symbol::getName).collect(Collectors.toUnmodifiableList());
 
-    //Only one HashMap needed to be made, containing all the scopes (ArrayList.size() == 1)
-    HashMap globalScope = new HashMap<>();
+  private final PrintStream err;
+  private final Identifiers identifiers;
 
-    //int readInt()
-    TypeList readIntArgs = new TypeList(); //no parameters
-    Symbol readInt = new Symbol ("readInt", new FuncType(readIntArgs, new IntType())); //readInt -> no parameters, returns int
-    globalScope.put("readInt", readInt);
+  //The innermost symbol of each id (null if the name is not declared) and the depth of its scope
+  private Symbol[] symbols;
+  private int[] depths;
 
-    //int readChar()
-    TypeList readCharArgs = new TypeList();
-    Symbol readChar = new Symbol("readChar", new FuncType(readCharArgs, new IntType()));
-    globalScope.put("readChar", readChar);
+  //The undo log: for every symbol added, its id and the symbol and depth it shadowed
+  private int[] undoIds = new int[16];
+  private Symbol[] undoSymbols = new Symbol[16];
+  private int[] undoDepths = new int[16];
+  private int undoSize = 0;
 
-    //void printBool(bool arg)
-    TypeList printBoolArgs = TypeList.of(new BoolType());
-    Symbol printBool = new Symbol("printBool", new FuncType(printBoolArgs, new VoidType()));
-    globalScope.put("printBool", printBool);
+  //The size of the undo log when each scope was entered, the global scope is depth 0
+  private int[] scopeStarts = new int[16];
+  private int depth = 0;
 
-    //void printInt(int arg)
-    TypeList printIntArgs = TypeList.of(new IntType());
-    Symbol printInt = new Symbol("printInt", new FuncType(printIntArgs, new VoidType())); //symbol takes name and type
-    globalScope.put("printInt", printInt);
+  private boolean encounteredError = false;
 
-    //void printChar(int arg)
-    TypeList printCharArgs = TypeList.of(new IntType());
-    Symbol printChar = new Symbol("printChar", new FuncType(printCharArgs, new VoidType()));
-    globalScope.put("printChar", printChar);
+  SymbolTable(PrintStream err)
+  {
+    this(err, new Identifiers());
+  }
 
-    //void println()
-    TypeList printlnArgs = new TypeList();
-    Symbol println = new Symbol("println", new FuncType(printlnArgs, new VoidType()));
-    globalScope.put("println", println);
+  SymbolTable(PrintStream err, Identifiers identifiers)
+  {
+    this.err = err;
+    this.identifiers = identifiers;
 
-    symbolScopes.add(globalScope); //one scope contains the six functions (each with distinct names)
+    int capacity = Math.max(identifiers.size(), BUILTINS.length) * 2;
+    symbols = Arrays.copyOf(BUILTINS, capacity); //the global scope starts with the six functions
+    depths = new int[capacity];
   }
 
   boolean hasEncounteredError()
@@ -69,15 +74,28 @@ final class SymbolTable
     return encounteredError;
   }
 
-  void enter() //symbolScope's size + 1
+  void enter() //depth + 1
   {
-    Map myNewScope = new HashMap<>();
-    symbolScopes.add(myNewScope);
+    depth++;
+    if (depth == scopeStarts.length)
+    {
+      scopeStarts = Arrays.copyOf(scopeStarts, depth * 2);
+    }
+    scopeStarts[depth] = undoSize;
   }
 
-  void exit() //symbolScope's size - 1 (delete what was just added by enter)
+  void exit() //depth - 1 (undo what was added since enter)
   {
-    symbolScopes.remove(symbolScopes.size()-1); //delete most recent scope
+    int start = scopeStarts[depth];
+    while (undoSize > start)
+    {
+      undoSize--;
+      int id = undoIds[undoSize];
+      symbols[id] = undoSymbols[undoSize];
+      depths[id] = undoDepths[undoSize];
+      undoSymbols[undoSize] = null;
+    }
+    depth--;
   }
 
   /**
@@ -85,18 +103,31 @@ final class SymbolTable
    * current scope that's a declaration error.
    */
 
-  Symbol add(Position pos, String name, Type type) //symbolScope's size SHOULD NOT change
+  Symbol add(Position pos, Token name, Type type) //depth SHOULD NOT change
   {
-    Map recentScope = symbolScopes.get(symbolScopes.size()-1);
-    if (recentScope.containsKey((name))) //if this hashMap already has this name
+    int id = idOf(name);
+    Symbol existing = symbols[id];
+    if (existing != null && depths[id] == depth) //if this scope already has this name
     {
-      err.printf("DeclarationError%s[Symbol Already Exists in the Scope %s.]%n", pos, name); //Position used for error (return an error or change boolean to true, and return new error)
+      err.printf("DeclarationError%s[Symbol Already Exists in the Scope %s.]%n", pos, name.getText()); //Position used for error (return an error or change boolean to true, and return new error)
       encounteredError = true;
-      return new Symbol(name, "DeclarationError"); //no need to add this error into the scope
+      return new Symbol(name.getText(), "DeclarationError"); //no need to add this error into the scope
     }
 
-    Symbol sym = new Symbol(name, type);
-    recentScope.put(name, sym);
+    if (undoSize == undoIds.length)
+    {
+      undoIds = Arrays.copyOf(undoIds, undoSize * 2);
+      undoSymbols = Arrays.copyOf(undoSymbols, undoSize * 2);
+      undoDepths = Arrays.copyOf(undoDepths, undoSize * 2);
+    }
+    undoIds[undoSize] = id;
+    undoSymbols[undoSize] = existing;
+    undoDepths[undoSize] = depths[id];
+    undoSize++;
+
+    Symbol sym = new Symbol(identifiers.name(id), type);
+    symbols[id] = sym;
+    depths[id] = depth;
     return sym;
   }
 
@@ -104,30 +135,41 @@ final class SymbolTable
    * lookup a name in the SymbolTable, if the name not found in the table it should encounter an
    * error and return a symbol with ResolveSymbolError error. if the symbol is found then return it.
    */
-  Symbol lookup(Position pos, String name)
+  Symbol lookup(Position pos, Token name)
   {
-    var symbol = find(name);
+    int id = idOf(name); //may grow symbols
+    var symbol = symbols[id];
     if (symbol == null) {
-      err.printf("ResolveSymbolError%s[Could not find %s.]%n", pos, name);
+      err.printf("ResolveSymbolError%s[Could not find %s.]%n", pos, name.getText());
       encounteredError = true;
-      return new Symbol(name, "ResolveSymbolError");
+      return new Symbol(name.getText(), "ResolveSymbolError");
     } else {
       return symbol;
     }
   }
 
   /**
-   * Try to find a symbol in the table starting form the most recent scope.
+   * Returns the id of an identifier token. Tokens made by an {@link IdentifierTokenFactory} of the
+   * same identifiers already know it, any other is interned by its text.
    */
-  private Symbol find(String name)
+  private int idOf(Token name)
   {
-    for (int i = symbolScopes.size() - 1; i >= 0; i--)
+    int id;
+    if (name instanceof IdentifierToken && ((IdentifierToken) name).getIdentifiers() == identifiers)
+    {
+      id = ((IdentifierToken) name).getId();
+    }
+    else
+    {
+      id = identifiers.intern(name.getText());
+    }
+
+    if (id >= symbols.length) //grow to fit the names interned since
     {
-      if (symbolScopes.get(i).containsKey(name)) //if symbol exists in a hashmap
-      {
-        return symbolScopes.get(i).get(name);
-      }
+      int capacity = Math.max(identifiers.size(), id + 1) * 2;
+      symbols = Arrays.copyOf(symbols, capacity);
+      depths = Arrays.copyOf(depths, capacity);
     }
-    return null; //no such symbol found
+    return id;
   }
 }
@@ -1,10 +1,13 @@
 package crux.frontend.ast;
 
+import crux.frontend.types.Type;
+
 import java.util.List;
 
 
 public abstract class BaseNode implements Node {
   private final Position position;
+  private Type type;
 
   BaseNode(Position position) {
     this.position = position;
@@ -28,4 +31,14 @@ public abstract class BaseNode implements Node {
   public Position getPosition() {
     return position;
   }
+
+  @Override
+  public Type getType() {
+    return type;
+  }
+
+  @Override
+  public void setType(Type type) {
+    this.type = type;
+  }
 }
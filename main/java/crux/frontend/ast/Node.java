@@ -1,6 +1,7 @@
 package crux.frontend.ast;
 
 import crux.frontend.ast.traversal.NodeVisitor;
+import crux.frontend.types.Type;
 
 import java.util.List;
 
@@ -12,5 +13,12 @@ public interface Node {
 
   List<Node> getChildren();
 
+  /**
+   * Returns the type the type checker inferred for this node, or null if it has none.
+   */
+  Type getType();
+
+  void setType(Type type);
+
   <T> T accept(NodeVisitor<? extends T> visitor);
 }
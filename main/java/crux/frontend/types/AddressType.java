@@ -1,19 +1,34 @@
 package crux.frontend.types;
 
-import java.util.stream.Stream;
-
 /**
  * This Type will represent memory location base is the type of data that will be stored at that
  * memory locaiton This Type can have the following methods: deref,index, assign, and equivalent
  */
 public final class AddressType extends Type
 {
+  private static final InternTable<AddressType> interned = new InternTable<>();
+
   private final Type base;
 
-  public AddressType(Type base) {
+  private AddressType(Type base) {
     this.base = base;
   }
 
+  /**
+   * Returns the address type of a base type, the same object as long as it is used.
+   */
+  public static AddressType of(Type base) {
+    if (!isCanonical(base))
+      return new AddressType(base);
+    return interned.intern(InternTable.hash(base), address -> address.base == base,
+        () -> new AddressType(base));
+  }
+
+  @Override
+  boolean isCanonical() {
+    return isCanonical(base);
+  }
+
   public Type getBaseType()
   {
     return base;
@@ -31,7 +46,7 @@ public final class AddressType extends Type
     if (!this.equivalent(source)) {
       return super.assign(source);
     }
-    return new VoidType(); //assignment has no return
+    return VoidType.INSTANCE; //assignment has no return
   }
 
   @Override
@@ -54,7 +69,7 @@ public final class AddressType extends Type
       return super.index(that);
     }
 
-    return new AddressType(this.getBaseType()); //array of booleans should return boolean
+    return of(this.getBaseType()); //array of booleans should return boolean
   }
 
   /*
@@ -114,17 +129,6 @@ public final class AddressType extends Type
 
    */
 
-
-  //already implemented
-  @Override
-  public boolean equivalent(Type that) {
-    if (that.getClass() != AddressType.class)
-      return false;
-
-    var aType = (AddressType) that;
-    return base.equivalent(aType.base);
-  }
-
   @Override
   public String toString() {
     return "Address(" + base + ")";
@@ -3,17 +3,34 @@ package crux.frontend.types;
 /**
  * This Type will Array data type base is the base of the array, could be int, bool, or char for
  * cruxlang This should implement the equivalent methods Two arrays are equivalent if their bases
- * are equivalent and have same extend
+ * are equivalent and have same extend, which makes them the same object: see {@link #of}.
  */
 public final class ArrayType extends Type {
+  private static final InternTable<ArrayType> interned = new InternTable<>();
+
   private final Type base;
   private final long extent;
 
-  public ArrayType(long extent, Type base) {
+  private ArrayType(long extent, Type base) {
     this.extent = extent;
     this.base = base;
   }
 
+  /**
+   * Returns the array type of a base type and an extent, the same object as long as it is used.
+   */
+  public static ArrayType of(long extent, Type base) {
+    if (!isCanonical(base))
+      return new ArrayType(extent, base);
+    return interned.intern(InternTable.hash(base, extent),
+        array -> array.base == base && array.extent == extent, () -> new ArrayType(extent, base));
+  }
+
+  @Override
+  boolean isCanonical() {
+    return isCanonical(base);
+  }
+
   public Type getBase() {
     return base;
   }
@@ -40,23 +57,7 @@ public final class ArrayType extends Type {
     {
       return super.assign(source);
     }
-    return new VoidType(); //assignment has no return
-  }
-
-  @Override
-  public boolean equivalent(Type that)
-  {
-    if (that.getClass() != ArrayType.class)
-    {
-      return false;
-    }
-
-    //check the contents of both arrays
-    if (this.getBase().equivalent(((ArrayType) that).getBase()) && (this.getExtent() == ((ArrayType) that).getExtent()))
-    {
-      return true;
-    }
-    return false;
+    return VoidType.INSTANCE; //assignment has no return
   }
 
   /*
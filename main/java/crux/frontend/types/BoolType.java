@@ -6,13 +6,19 @@ package crux.frontend.types;
  */
 public final class BoolType extends Type
 {
+  public static final BoolType INSTANCE = new BoolType();
+
+  private BoolType()
+  {
+  }
+
   @Override
   Type and(Type that)
   {
     if (!this.equivalent(that)) {
       return super.and(that);
     }
-    return new BoolType();
+    return INSTANCE;
   }
 
   @Override
@@ -21,13 +27,13 @@ public final class BoolType extends Type
     if (!this.equivalent(that)) {
       return super.or(that);
     }
-    return new BoolType();
+    return INSTANCE;
   }
 
   @Override
   Type not()
   {
-    return new BoolType(); //this is a boolType, so it will always work
+    return INSTANCE; //this is a boolType, so it will always work
   }
 
   //cannot use > or >=, but can use == or !=
@@ -37,7 +43,7 @@ public final class BoolType extends Type
     if (!this.equivalent(that)) {
       return super.compare(that);
     }
-    return new BoolType();
+    return INSTANCE;
   }
 
   @Override //such as bool ten = false;
@@ -46,7 +52,7 @@ public final class BoolType extends Type
     if (!this.equivalent(source)) {
       return super.assign(source);
     }
-    return new VoidType(); //assignments don't return
+    return VoidType.INSTANCE; //assignments don't return
   }
 
   /*
@@ -93,12 +99,6 @@ public final class BoolType extends Type
   }
    */
 
-  //already implemented
-  @Override
-  public boolean equivalent(Type that) {
-    return that.getClass() == BoolType.class;
-  }
-
   @Override
   public String toString() {
     return "bool";
@@ -19,6 +19,11 @@ public final class ErrorType extends Type {
     return false;
   }
 
+  @Override
+  boolean isCanonical() {
+    return false;
+  }
+
   @Override
   public String toString() {
     return String.format("ErrorType(%s)", message);
@@ -6,14 +6,32 @@ package crux.frontend.types;
  * if their args and ret are also equivalent This Class should implement Call method
  */
 public final class FuncType extends Type {
-  private TypeList args;
-  private Type ret;
+  private static final InternTable<FuncType> interned = new InternTable<>();
 
-  public FuncType(TypeList args, Type returnType) {
+  private final TypeList args;
+  private final Type ret;
+
+  private FuncType(TypeList args, Type returnType) {
     this.args = args;
     this.ret = returnType;
   }
 
+  /**
+   * Returns the type of the functions with these parameters and return type, the same object as
+   * long as it is used.
+   */
+  public static FuncType of(TypeList args, Type returnType) {
+    if (!isCanonical(args) || !isCanonical(returnType))
+      return new FuncType(args, returnType);
+    return interned.intern(InternTable.hash(args, returnType),
+        func -> func.args == args && func.ret == returnType, () -> new FuncType(args, returnType));
+  }
+
+  @Override
+  boolean isCanonical() {
+    return isCanonical(args) && isCanonical(ret);
+  }
+
   public Type getRet() {
     return ret;
   }
@@ -35,23 +53,6 @@ public final class FuncType extends Type {
     return this.getRet(); //returns result of function call
   }
 
-  @Override
-  public boolean equivalent(Type that)
-  {
-    if (that.getClass() != FuncType.class)
-    {
-      return false;
-    }
-
-    //also compare contents of the function
-    if(this.getRet() == ((FuncType) that).getRet() && this.getArgs() == ((FuncType) that).getArgs())
-    {
-      return true;
-    }
-
-    return false;
-  }
-
   /*
   @Override
   Type add(Type that)
@@ -6,13 +6,19 @@ package crux.frontend.types;
  */
 public final class IntType extends Type
 {
+  public static final IntType INSTANCE = new IntType();
+
+  private IntType()
+  {
+  }
+
   @Override
   Type add(Type that)
   {
     if (!this.equivalent(that)) {
       return super.add(that);
     }
-    return new IntType();
+    return INSTANCE;
   }
 
   @Override
@@ -21,7 +27,7 @@ public final class IntType extends Type
     if (!this.equivalent(that)) {
       return super.sub(that);
     }
-    return new IntType();
+    return INSTANCE;
   }
 
   @Override
@@ -30,7 +36,7 @@ public final class IntType extends Type
     if (!this.equivalent(that)) {
       return super.mul(that);
     }
-    return new IntType();
+    return INSTANCE;
   }
 
   @Override
@@ -39,7 +45,7 @@ public final class IntType extends Type
     if (!this.equivalent(that)) {
       return super.div(that);
     }
-    return new IntType();
+    return INSTANCE;
   }
 
   //'>=' | '<=' | '!=' | '==' | '<' | '>'
@@ -49,7 +55,7 @@ public final class IntType extends Type
     if (!this.equivalent(that)) {
       return super.div(that);
     }
-    return new BoolType(); //returning boolean is fine
+    return BoolType.INSTANCE; //returning boolean is fine
   }
 
   //like "int four = 4;"
@@ -59,7 +65,7 @@ public final class IntType extends Type
     if (!this.equivalent(source)) {
       return super.assign(source);
     }
-    return new VoidType(); //assignments don't return
+    return VoidType.INSTANCE; //assignments don't return
   }
 
   /* None of these need to be overwritten
@@ -100,12 +106,6 @@ public final class IntType extends Type
   }
   */
 
-  @Override
-  public boolean equivalent(Type that)
-  {
-    return that.getClass() == IntType.class;
-  }
-
   @Override
   public String toString() {
     return "int";
@@ -0,0 +1,108 @@
+package crux.frontend.types;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * The canonical types of some kind. The table only holds on to a type while something else refers
+ * to it, so a compile server or a batch does not keep the types of every program it ever compiled.
+ * A type that is dropped is made again when it is needed, and no one can tell, since no one had a
+ * reference to compare it with.
+ * <p>
+ * A type is looked up by the hash of the types it is made of and a test of its parts, so the table
+ * holds nothing but weak references to the types themselves, and no part of a dropped type is kept
+ * alive by the table. Safe to use from many threads.
+ */
+final class InternTable<T extends Type> {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final ReferenceQueue<T> dropped = new ReferenceQueue<>();
+  private Entry<T>[] buckets = newBuckets(INITIAL_CAPACITY);
+  private int size = 0;
+
+  private static final class Entry<T> extends WeakReference<T> {
+    private final int hash;
+    private Entry<T> next;
+
+    private Entry(T type, int hash, Entry<T> next, ReferenceQueue<T> queue) {
+      super(type, queue);
+      this.hash = hash;
+      this.next = next;
+    }
+  }
+
+  /**
+   * Returns the type with this hash that {@code matches} accepts, which {@code make} makes if there
+   * is none.
+   */
+  synchronized T intern(int hash, Predicate<? super T> matches, Supplier<? extends T> make) {
+    removeDropped();
+    int index = hash & (buckets.length - 1);
+    for (var entry = buckets[index]; entry != null; entry = entry.next) {
+      T type = entry.get();
+      if (entry.hash == hash && type != null && matches.test(type))
+        return type;
+    }
+    T type = make.get();
+    buckets[index] = new Entry<>(type, hash, buckets[index], dropped);
+    if (++size > buckets.length / 4 * 3)
+      resize();
+    return type;
+  }
+
+  private void resize() {
+    var old = buckets;
+    buckets = newBuckets(2 * old.length);
+    for (var entry : old) {
+      while (entry != null) {
+        var next = entry.next;
+        int index = entry.hash & (buckets.length - 1);
+        entry.next = buckets[index];
+        buckets[index] = entry;
+        entry = next;
+      }
+    }
+  }
+
+  private void removeDropped() {
+    Reference<? extends T> reference;
+    while ((reference = dropped.poll()) != null) {
+      var entry = (Entry<?>) reference;
+      int index = entry.hash & (buckets.length - 1);
+      Entry<T> previous = null;
+      for (var e = buckets[index]; e != null; previous = e, e = e.next) {
+        if (e == entry) {
+          if (previous == null)
+            buckets[index] = e.next;
+          else
+            previous.next = e.next;
+          size--;
+          break;
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Entry<T>[] newBuckets(int capacity) {
+    return (Entry<T>[]) new Entry<?>[capacity];
+  }
+
+  /**
+   * Returns the hash of a type made of another type.
+   */
+  static int hash(Type part) {
+    int h = System.identityHashCode(part);
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Returns the hash of a type made of another type and one more part, compared by value.
+   */
+  static int hash(Type part, Object other) {
+    return hash(part) * 31 + other.hashCode();
+  }
+}
@@ -3,6 +3,11 @@ package crux.frontend.types;
 /**
  * This Class have behaviours that can be applied on crux types for example, add can be applied on
  * two Integers type
+ * <p>
+ * Types are canonical: there is one instance of int, bool and void, and the composite types are
+ * hash-consed by their {@code of} methods, so two types are equivalent exactly when they are the
+ * same object. Only types made of an {@link ErrorType} are not interned, they are equivalent to
+ * nothing.
  */
 public abstract class Type
 {
@@ -55,6 +60,17 @@ public abstract class Type
   }
 
   public boolean equivalent(Type that) {
-    throw new Error(this.getClass() + "should override the equivalent method.");
+    return this == that;
+  }
+
+  /**
+   * Returns whether the type is interned, which it is unless it is made of an {@link ErrorType}.
+   */
+  boolean isCanonical() {
+    return true;
+  }
+
+  static boolean isCanonical(Type type) {
+    return type != null && type.isCanonical();
   }
 }
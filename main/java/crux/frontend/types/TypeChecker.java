@@ -4,9 +4,12 @@ import crux.frontend.Symbol;
 import crux.frontend.ast.*;
 import crux.frontend.ast.traversal.NullNodeVisitor;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -16,9 +19,6 @@ import java.util.stream.Stream;
 
 public final class TypeChecker
 {
-  //Maps ASTNode to Type
-  private final HashMap<Node, Type> typeMap = new HashMap<>();
-
   //any errors created goes here
   private final ArrayList<String> errors = new ArrayList<>();
 
@@ -27,37 +27,45 @@ public final class TypeChecker
   }
 
   public void check(DeclarationList ast) {
-    var inferenceVisitor = new TypeInferenceVisitor();
-    inferenceVisitor.visit(ast);
+    check(ast, def -> false);
   }
 
   /**
-   * Helper function, should be used to add error into the errors array
+   * Checks everything but the bodies of the functions for which {@code skipBody} holds, e.g.
+   * because they are known to be correct from an earlier compilation. Their nodes get no type.
    */
-
-  private void addTypeError(Node n, String message) {
-    errors.add(String.format("TypeError%s[%s]", n.getPosition(), message));
+  public void check(DeclarationList ast, Predicate<FunctionDefinition> skipBody) {
+    check(ast, skipBody, false);
   }
 
   /**
-   * Helper function, should be used to add types into the typeMap if the Type is an ErrorType then
-   * it will call addTypeError
+   * Like {@link #check(DeclarationList, Predicate)}, but if {@code parallel} is set, every
+   * declaration is checked on its own on the common fork-join pool. The names were resolved while
+   * the AST was built, so no declaration needs another one to be checked first. The errors are the
+   * same and come in the same order either way.
    */
-
-  private void setNodeType(Node n, Type ty) {
-    typeMap.put(n, ty);
-    if (ty.getClass() == ErrorType.class) {
-      var error = (ErrorType) ty;
-      addTypeError(n, error.getMessage());
+  public void check(DeclarationList ast, Predicate<FunctionDefinition> skipBody,
+      boolean parallel) {
+    if (!parallel) {
+      var inferenceVisitor = new TypeInferenceVisitor(skipBody);
+      inferenceVisitor.visitTree(ast);
+      errors.addAll(inferenceVisitor.declarationErrors);
+      return;
     }
+
+    ast.getChildren().parallelStream().map(declaration -> {
+      var inferenceVisitor = new TypeInferenceVisitor(skipBody);
+      inferenceVisitor.visitTree(declaration);
+      return inferenceVisitor.declarationErrors;
+    }).flatMap(Collection::stream).forEachOrdered(errors::add);
   }
 
   /**
-   * Helper to retrieve Type from the map
+   * Helper to retrieve the Type of a node, which is stored on the node, see {@link Node#getType()}
    */
 
   public Type getType(Node n) {
-    return typeMap.get(n);
+    return n.getType();
   }
 
 
@@ -75,11 +83,86 @@ public final class TypeChecker
     private boolean lastStatementReturns; //check if the very last statement is return (if applicable)
     private boolean hasBreak; //checks for break statements
 
+    private final Predicate<FunctionDefinition> skipBody;
+    private final List<String> declarationErrors = new ArrayList<>(); //errors of the declarations this visitor checked
+
+    private TypeInferenceVisitor(Predicate<FunctionDefinition> skipBody)
+    {
+      this.skipBody = skipBody;
+    }
+
+    /**
+     * Helper function, should be used to add error into the errors array
+     */
+
+    private void addTypeError(Node n, String message)
+    {
+      declarationErrors.add(String.format("TypeError%s[%s]", n.getPosition(), message));
+    }
+
+    /**
+     * Helper function, should be used to store the type of a node on the node itself, if the Type
+     * is an ErrorType then it will call addTypeError
+     */
+
+    private void setNodeType(Node n, Type ty)
+    {
+      n.setType(ty);
+      if (ty.getClass() == ErrorType.class)
+      {
+        var error = (ErrorType) ty;
+        addTypeError(n, error.getMessage());
+      }
+    }
+
+    /**
+     * Visits every node of a tree. The AST nests as deep as the program does, so it is walked with
+     * an explicit stack, like the printers do. A function definition is visited before its body,
+     * whose returns are checked against it, every other node after its children, whose types it is
+     * made of.
+     */
+
+    private void visitTree(Node root)
+    {
+      Deque<Node> nodes = new ArrayDeque<>();
+      Deque<Boolean> childrenVisited = new ArrayDeque<>();
+      nodes.push(root);
+      childrenVisited.push(false);
+      while (!nodes.isEmpty())
+      {
+        Node node = nodes.pop();
+        if (childrenVisited.pop())
+        {
+          node.accept(this);
+          continue;
+        }
+
+        List<Node> children;
+        if (node instanceof FunctionDefinition)
+        {
+          node.accept(this);
+          children = skipBody.test((FunctionDefinition) node) ? List.of() : node.getChildren();
+        }
+        else
+        {
+          nodes.push(node);
+          childrenVisited.push(true);
+          boolean skipped = node instanceof Return && lastStatementReturns;
+          children = skipped ? List.of() : node.getChildren();
+        }
+        for (int i = children.size() - 1; i >= 0; i--)
+        {
+          nodes.push(children.get(i));
+          childrenVisited.push(false);
+        }
+      }
+    }
+
     @Override
     public Void visit(Name name) //name is a node, so save its type and stop visiting
     {
       Type nameType = name.getSymbol().getType();
-      AddressType retType = new AddressType(nameType);
+      AddressType retType = AddressType.of(nameType);
       setNodeType(name, retType); //associate this node with the foundType
       return null;
     }
@@ -105,10 +188,6 @@ public final class TypeChecker
       Expression lhs = assignment.getLocation();
       Expression rhs = assignment.getValue();
 
-      //accept (based on OpExpr visit) and get their types (expressions are nodes)
-      lhs.accept(this); //should go to name node
-      rhs.accept(this);
-
       //getType(assignment.getLocation()/getValue())
       Type lhsType = getType(lhs); //should be address
       Type rhsType = getType(rhs);
@@ -119,7 +198,7 @@ public final class TypeChecker
         setNodeType(assignment, assignType);
       }
 
-      setNodeType(assignment, new VoidType());
+      setNodeType(assignment, VoidType.INSTANCE);
       return null;
     }
 
@@ -134,14 +213,14 @@ public final class TypeChecker
     public Void visit(Call call) //call is a node, so visits stop here
     {
       List<Expression> args = call.getArguments(); //input arguments in order
-      TypeList tyList = new TypeList(); //initialized if arguments are correct and add into them
+      List<Type> argTypes = new ArrayList<>(args.size()); //initialized if arguments are correct and add into them
 
       for(int i = 0; i < args.size(); i++)
       {
-        args.get(i).accept(this); //should handle nodes properly and add them to typeMap
-        tyList.append(typeMap.get(args.get(i))); //expressions are nodes, so save their types
+        argTypes.add(getType(args.get(i))); //expressions are nodes, so save their types
       }
 
+      TypeList tyList = TypeList.of(argTypes); //the same list as the parameters if the types match
       Type resultType = call.getCallee().getType().call(tyList); //use args to determine if parameters are correct, returns error if not
       setNodeType(call, resultType); //returns type of functionCallResult
       return null;
@@ -154,27 +233,11 @@ public final class TypeChecker
       return null;
     }
 
-    @Override
-    public Void visit(DeclarationList declarationList) //not a node, so make multiple visits (do not setNodeType)
-    {
-      //retrieve the list of declarations (using getChildren)
-      var declarations = declarationList.getChildren();
-
-      //list should consist of variable, array, and function declarations
-      //traverse through list and accept them all
-      for (int i = 0; i < declarations.size(); i++)
-      {
-        declarations.get(i).accept(this); //should handle nodes properly and add them to typeMap
-      }
-      return null;
-    }
-
     @Override
     public Void visit(Dereference dereference) //is a node, so visits stop here
     {
-      //visit dereference.getAddress() to determine the type (saved as resolvedType)
-      Expression address = dereference.getAddress();
-      address.accept(this); //-> Name -> addressType
+      //dereference.getAddress() was visited to determine the type (saved as resolvedType)
+      Expression address = dereference.getAddress(); //-> Name -> addressType
       Type resolvedType = getType(address);
 
       //returnValue = resolvedType.deref() to determine base Type
@@ -196,38 +259,20 @@ public final class TypeChecker
       currentFunctionSymbol = functionDefinition.getSymbol();
       currentFunctionReturnType = ((FuncType)functionDefinition.getSymbol().getType()).getRet(); //should be functionType, then get return type
 
-      //check that types of functions args are valid (only int and bool)
-      TypeList tyList = new TypeList(); //initialized if arguments are correct and add into them
-      List<Symbol> params = functionDefinition.getParameters();
-      for(int i = 0; i < params.size(); i++)
-      {
-        tyList.append(params.get(i).getType()); //accept(this);
-      }
-
-      //visit functionbody
-      StatementList body = functionDefinition.getStatements();
-      body.accept(this);
-
+      //the function body is visited next, unless it is skipped
       return null;
     }
 
     @Override
     public Void visit(IfElseBranch ifElseBranch) //is a node, so visit stops here
     {
-      //conditionType = find and accept condition, determine if type is boolean (condition should be BoolType, else, addTypeError)
+      //conditionType = type of the visited condition, determine if type is boolean
+      //(condition should be BoolType, else, addTypeError)
+      //thenBlock and elseBlock -> statementList were visited after it
       Expression condition = ifElseBranch.getCondition();
-      condition.accept(this);
       Type conditionType = getType(condition);
 
-      //visit thenBlock -> statementList
-      StatementList thenBlock = ifElseBranch.getThenBlock();
-      thenBlock.accept(this);
-
-      //visitElseBlock -> statementList
-      StatementList elseBlock = ifElseBranch.getElseBlock();
-      elseBlock.accept(this);
-
-      if (!conditionType.equivalent(new BoolType()))
+      if (!conditionType.equivalent(BoolType.INSTANCE))
       {
         setNodeType(ifElseBranch, new ErrorType(""));
       }
@@ -237,13 +282,9 @@ public final class TypeChecker
     @Override
     public Void visit(ArrayAccess access) //is a node
     {
-      //getBase and visit that
+      //getBase and getOffset, both visited already
       Name base = access.getBase();
-      base.accept(this);
-
-      //getOffset and visit that
       Expression offset = access.getOffset();
-      offset.accept(this);
 
       //results = getType(base).index(getOffset) //saved as a type
       Type baseType = getType(base);
@@ -252,7 +293,7 @@ public final class TypeChecker
         Type resultsBase = ((AddressType) baseType).getBaseType();
         Type results = resultsBase.index(getType(offset));
 
-        setNodeType(access, new AddressType(results));
+        setNodeType(access, AddressType.of(results));
       }
       return null;
     }
@@ -260,33 +301,22 @@ public final class TypeChecker
     @Override
     public Void visit(LiteralBool literalBool) //is a node, no additional visits
     {
-      setNodeType(literalBool, new BoolType());
+      setNodeType(literalBool, BoolType.INSTANCE);
       return null;
     }
 
     @Override //leaves of tree
     public Void visit(LiteralInt literalInt) //is a node, no additional visits
     {
-      setNodeType(literalInt, new IntType());
-      return null;
-    }
-
-    @Override
-    public Void visit(Loop loop) //is a node
-    {
-      //getBody and visit -> as a statementlist that handles break and continue
-      StatementList body = loop.getBody();
-      body.accept(this);
-
+      setNodeType(literalInt, IntType.INSTANCE);
       return null;
     }
 
     @Override
     public Void visit(OpExpr op)
     {
-      //getLeft -> visit (check if null), then get Type
+      //getLeft -> visited (check if null), then get Type
       Expression lhs = op.getLeft();
-      lhs.accept(this);
       Type lhsType = getType(lhs);
 
       if(op.getRight() == null) //no right hand side, but contains operation
@@ -299,9 +329,8 @@ public final class TypeChecker
         }
       }
 
-      //getRight -> visit (check if null), then getType
+      //getRight -> visited (check if null), then getType
       Expression rhs = op.getRight();
-      rhs.accept(this);
       Type rhsType = getType(rhs);
 
       Type type = new ErrorType("");
@@ -341,9 +370,8 @@ public final class TypeChecker
     {
       if (!lastStatementReturns) //default at false, assuming its the last statement
       {
-        //visit ret.getValue(), then find its type
+        //ret.getValue() was visited, find its type
         Expression value = ret.getValue();
-        value.accept(this);
         Type type = getType(value);
 
         //check if type == currentFunctionReturnType
@@ -355,22 +383,11 @@ public final class TypeChecker
       return null;
     }
 
-    @Override
-    public Void visit(StatementList statementList) //not a node, multiple visits, no setNodeType
-    {
-      var listOfStatements = statementList.getChildren();
-      for(int i = 0; i < listOfStatements.size(); i++)
-      {
-        listOfStatements.get(i).accept(this); //visit each statement (variable, calls, etc)
-      }
-      return null;
-    }
-
     @Override
     public Void visit(VariableDeclaration variableDeclaration) //is a node
     {
       Type variableType = variableDeclaration.getSymbol().getType();
-      if(!variableType.equivalent(new IntType()) && !variableType.equivalent(new BoolType()))
+      if(!variableType.equivalent(IntType.INSTANCE) && !variableType.equivalent(BoolType.INSTANCE))
       {
         setNodeType(variableDeclaration, new ErrorType(""));
       }
@@ -2,52 +2,72 @@ package crux.frontend.types;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 /**
  * TypeList is a list of other types useful to model the types of functions params
+ * <p>
+ * The lists are interned as a trie: every canonical list knows the canonical lists that add one more
+ * type to it, so looking up a list that exists already does not allocate. A list is kept only as
+ * long as it or a longer list made from it is used.
  */
 public final class TypeList extends Type implements Iterable<Type> {
-  private final List<Type> list;
+  private static final TypeList EMPTY = new TypeList(List.of(), null, true);
 
-  public TypeList() {
-    list = new ArrayList<>();
-  }
+  private final List<Type> list;
+  private final boolean canonical;
+  // The canonical list without the last type, which must live as long as this one so that looking
+  // this one up again finds it.
+  private final TypeList prefix;
+  // The canonical lists made of this one and one more type.
+  private final InternTable<TypeList> extensions;
 
-  public TypeList(List<Type> types) {
-    list = types;
+  private TypeList(List<Type> list, TypeList prefix, boolean canonical) {
+    this.list = list;
+    this.prefix = prefix;
+    this.canonical = canonical;
+    extensions = canonical ? new InternTable<>() : null;
   }
 
   public static TypeList of(Type... types) {
-    var typeList = new TypeList();
-    typeList.list.addAll(Arrays.asList(types));
-    return typeList;
+    return of(Arrays.asList(types));
   }
 
-  public void append(Type type) {
-    list.add(type);
+  /**
+   * Returns the list of these types, the same object as long as it is used.
+   */
+  public static TypeList of(List<Type> types) {
+    for (Type type : types) {
+      if (!isCanonical(type))
+        return new TypeList(Collections.unmodifiableList(new ArrayList<>(types)), null, false);
+    }
+
+    var typeList = EMPTY;
+    for (Type type : types) {
+      var prefix = typeList;
+      typeList = prefix.extensions.intern(InternTable.hash(type),
+          extension -> extension.list.get(extension.list.size() - 1) == type,
+          () -> prefix.extend(type));
+    }
+    return typeList;
   }
 
-  public boolean isEmpty() {
-    return list.isEmpty();
+  private TypeList extend(Type type) {
+    var types = new ArrayList<Type>(list.size() + 1);
+    types.addAll(list);
+    types.add(type);
+    return new TypeList(Collections.unmodifiableList(types), this, true);
   }
 
   @Override
-  public boolean equivalent(Type that) {
-    if (that.getClass() != TypeList.class)
-      return false;
-
-    var olist = ((TypeList) that).list;
-
-    if (list.size() != olist.size())
-      return false;
+  boolean isCanonical() {
+    return canonical;
+  }
 
-    for (int i = 0; i < list.size(); ++i) {
-      if (!list.get(i).equivalent(olist.get(i)))
-        return false;
-    }
-    return true;
+  public boolean isEmpty() {
+    return list.isEmpty();
   }
 
   @Override
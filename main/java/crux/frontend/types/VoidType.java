@@ -4,9 +4,9 @@ package crux.frontend.types;
  * Void is void
  */
 public final class VoidType extends Type {
-  @Override
-  public boolean equivalent(Type that) {
-    return that.getClass() == VoidType.class;
+  public static final VoidType INSTANCE = new VoidType();
+
+  private VoidType() {
   }
 
   @Override
@@ -8,6 +8,7 @@ import crux.midend.ir.core.*;
 import crux.midend.ir.core.insts.*;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * Convert AST to IR and build the CFG.
@@ -53,6 +54,7 @@ public final class ASTLower implements NodeVisitor<Pair> {
 
     private Map<Symbol, Variable> mCurrentLocalVarMap = null;
     private TypeChecker checker;
+    private Map<FunctionDefinition, Function> mPrecompiled; //functions lowered by an earlier compilation
 
     Instruction breakInstruction = new NopInst();
     boolean breakEncountered = false;
@@ -73,19 +75,85 @@ public final class ASTLower implements NodeVisitor<Pair> {
     Instruction false50 = null;
     boolean on = false;
 
+    //the end of the chain reached from an instruction by walkToEnd, for either kind of walk
+    private final Map<Instruction, Instruction> mEnds = new IdentityHashMap<>();
+    private final Map<Instruction, Instruction> mTakenEnds = new IdentityHashMap<>();
+
     /**
      * A constructor to initialize member variables
      */
 
     public ASTLower(TypeChecker checker) {
+        this(checker, Map.of());
+    }
+
+    /**
+     * Uses the given functions instead of lowering their definitions again. Their bodies need not
+     * have been type checked.
+     */
+
+    public ASTLower(TypeChecker checker, Map<FunctionDefinition, Function> precompiled) {
         this.checker = checker;
+        mPrecompiled = precompiled;
     }
 
+    /**
+     * Lowers a whole program. The loop state is only ever about the program being lowered, so an
+     * instance can lower one program after another, but not several at the same time.
+     */
+
     public Program lower(DeclarationList ast) {
+        mCurrentFunction = null;
+        mCurrentLocalVarMap = null;
+        resetLoopState();
+        on = false;
+        false50 = null;
+        mEnds.clear();
+        mTakenEnds.clear();
         visit(ast);
         return mCurrentProgram;
     }
 
+    /**
+     * Like {@link #lower(DeclarationList)}, but if {@code parallel} is set, the globals are lowered
+     * first and then every function on its own on the common fork-join pool, each by a lowering of
+     * its own that shares the program. Functions only read the globals and intern constants, which
+     * the program does thread safe. They are added in the order of their definitions, so the
+     * program is the same either way.
+     */
+
+    public Program lower(DeclarationList ast, boolean parallel)
+    {
+        if (!parallel)
+        {
+            return lower(ast);
+        }
+
+        mCurrentProgram = new Program();
+        var declarations = ast.getChildren();
+        for (Node declaration : declarations)
+        {
+            if (!(declaration instanceof FunctionDefinition))
+            {
+                declaration.accept(this);
+            }
+        }
+
+        List<Function> functions = declarations.parallelStream()
+            .filter(declaration -> declaration instanceof FunctionDefinition)
+            .map(declaration -> {
+                var functionLower = new ASTLower(checker, mPrecompiled);
+                functionLower.mCurrentProgram = mCurrentProgram;
+                return functionLower.lowerFunction((FunctionDefinition) declaration);
+            })
+            .collect(Collectors.toList());
+        for (Function function : functions)
+        {
+            mCurrentProgram.addFunction(function);
+        }
+        return mCurrentProgram;
+    }
+
     @Override
     public Pair visit(DeclarationList declarationList) //variable, array, function
     {
@@ -106,6 +174,27 @@ public final class ASTLower implements NodeVisitor<Pair> {
     @Override
     public Pair visit(FunctionDefinition functionDefinition) //functional
     {
+        mCurrentProgram.addFunction(lowerFunction(functionDefinition));
+        return null;
+    }
+
+    /**
+     * Lowers a function without adding it to the program.
+     */
+
+    private Function lowerFunction(FunctionDefinition functionDefinition)
+    {
+        Function precompiled = mPrecompiled.get(functionDefinition);
+        if (precompiled != null)
+        {
+            return precompiled;
+        }
+
+        //nothing carries over from the previous function, so every function lowers the same on its own
+        resetLoopState();
+        on = false;
+        false50 = null;
+
         //create new instance of Function class for mCurrentFunction for every new function
         Symbol sym = functionDefinition.getSymbol();
         if(sym.getName().contains("garble"))
@@ -113,7 +202,7 @@ public final class ASTLower implements NodeVisitor<Pair> {
             on = true;
         }
         mCurrentFunction = new Function(sym.getName(), (FuncType) sym.getType());
-        mCurrentProgram.addFunction(mCurrentFunction); //adds function into program
+        Function function = mCurrentFunction;
         mCurrentLocalVarMap = new HashMap<>(); //initialize new local variables in the scope
 
         //Add parameters to localVarMap
@@ -129,7 +218,7 @@ public final class ASTLower implements NodeVisitor<Pair> {
         //set the start and arguments
         mCurrentFunction.setArguments(args);
         var nop = new NopInst();
-        Pair start = new Pair(nop, nop, new LocalVar(new IntType())); //instr, value
+        Pair start = new Pair(nop, nop, new LocalVar(IntType.INSTANCE)); //instr, value
         mCurrentFunction.setStart(nop);
 
         //visit function body
@@ -141,20 +230,57 @@ public final class ASTLower implements NodeVisitor<Pair> {
         mCurrentLocalVarMap = null; //erase scopes
         mCurrentFunction = null; //new current function (function should end here)
         start.getInstruction().setNext(0, statementPair.getInstruction());
-        return start; //nop instruction, no value
+        return function;
     }
 
     @Override
     public Pair visit(StatementList statementList)
     {
-        var listOfStatements = statementList.getChildren();
-        Instruction start = null;
-        Instruction end = null;
+        return lowerTree(statementList);
+    }
+
+    /**
+     * Lowers the statements of a list one after another and chains them.
+     */
+
+    private final class StatementListFrame extends Frame
+    {
+        private final List<Node> listOfStatements;
+        private int i = -1; //the statement handed out last
+        private Instruction start = null;
+        private Instruction end = null;
+        private Instruction chain = null; //performs instruction connecting
+
+        private StatementListFrame(StatementList statementList)
+        {
+            listOfStatements = statementList.getChildren();
+        }
 
-        Instruction chain = null; //performs instruction connecting
-        for (Node listOfStatement : listOfStatements)
+        @Override
+        Node next(Pair statement)
+        {
+            if (i >= 0)
+            {
+                chainStatement(listOfStatements.get(i), statement);
+            }
+            if (++i < listOfStatements.size())
+            {
+                return listOfStatements.get(i);
+            }
+
+            if(start == null)
+            {
+                result = new Pair(new NopInst(), new NopInst(), new LocalVar(IntType.INSTANCE)); //no instruction, no value
+            }
+            else
+            {
+                result = new Pair(start, end, new LocalVar(IntType.INSTANCE)); //no instruction, no value
+            }
+            return null;
+        }
+
+        private void chainStatement(Node listOfStatement, Pair statement)
         {
-            Pair statement = listOfStatement.accept(this);
             //break statement worked out here
             if(listOfStatement instanceof Loop) //this should pass loop and provide entry for break
             {
@@ -173,17 +299,7 @@ public final class ASTLower implements NodeVisitor<Pair> {
                     //situations with jump statements
                     if(!(listOfStatement instanceof Loop) && loopEntered)
                     {
-                        Instruction sub = chain;
-                        while(sub.getNext(0) != null)
-                        {
-                            if(sub instanceof JumpInst) {
-                                sub = sub.getNext(1);
-                            }
-                            else
-                            {
-                                sub = sub.getNext(0);
-                            }
-                        }
+                        Instruction sub = walkToEnd(chain, true);
                         sub.setNext(0, statement.getInstruction());
 
                     }
@@ -195,32 +311,30 @@ public final class ASTLower implements NodeVisitor<Pair> {
 
                 if(!(listOfStatement instanceof Loop) && loopEntered) //next instruction outside of the loop
                 {
-                    lastInstr = chain;
                     //considers any future loops by resetting terms
-                    loopEntered = false;
-                    breakInstruction = new NopInst();
-                    breakEncountered = false;
-                    continueInstruction = new NopInst();
-                    continueEncountered = false;
-                    lastLoopInstr = new NopInst();
-                    lastInstr = new NopInst();
-                    loopEntered = false; //keeps track of first instruction outside of loop
-
-                    inBreakInstruction = new NopInst();
-                    inBreakEncountered = false;
-                    inContinueInstruction = new NopInst();
-                    inContinueEncountered = false;
-                    inLastLoopInstr = new NopInst();
-                    inLastInstr = new NopInst();
-                    inLoopEntered = false; //keeps track of first instruction outside of loop
+                    resetLoopState();
                 }
             }
         }
-        if(start == null)
-        {
-            return new Pair(new NopInst(), new NopInst(), new LocalVar(new IntType())); //no instruction, no value
-        }
-        return new Pair(start, end, new LocalVar(new IntType())); //no instruction, no value
+    }
+
+    private void resetLoopState()
+    {
+        breakInstruction = new NopInst();
+        breakEncountered = false;
+        continueInstruction = new NopInst();
+        continueEncountered = false;
+        lastLoopInstr = new NopInst();
+        lastInstr = new NopInst();
+        loopEntered = false; //keeps track of first instruction outside of loop
+
+        inBreakInstruction = new NopInst();
+        inBreakEncountered = false;
+        inContinueInstruction = new NopInst();
+        inContinueEncountered = false;
+        inLastLoopInstr = new NopInst();
+        inLastInstr = new NopInst();
+        inLoopEntered = false; //keeps track of first instruction outside of loop
     }
 
     /**
@@ -271,7 +385,7 @@ public final class ASTLower implements NodeVisitor<Pair> {
     public Pair visit(Name name)
     {
         Symbol nameSym = name.getSymbol(); //look up symbol to use as expression value
-        Value myVar = new LocalVar(new IntType());
+        Value myVar = new LocalVar(IntType.INSTANCE);
         //var nop = new NopInst(); //no instructions, but variable is important
 
         if (mCurrentLocalVarMap.get(nameSym) == null) //if empty, then it is a global variable
@@ -298,12 +412,18 @@ public final class ASTLower implements NodeVisitor<Pair> {
     @Override
     public Pair visit(Assignment assignment)
     {
-        Instruction start;
-        Instruction end;
+        return lowerTree(assignment);
+    }
 
-        Pair loc = visit(assignment.getLocation()); //should call name or arrayaccess
-        Pair assign = visit(assignment.getValue()); //should call literals, arrayaccess, call, etc.
+    /**
+     * Lowers an assignment whose location (name or arrayaccess) and value (literals, arrayaccess,
+     * call, etc.) are lowered already.
+     */
 
+    private Pair lower(Assignment assignment, Pair loc, Pair assign)
+    {
+        Instruction start;
+        Instruction end;
         Instruction store;
 
         if (loc.getValue().getClass().equals(LocalVar.class) && !(assignment.getLocation() instanceof ArrayAccess)) //local variable -> (print 10) create copy instruction
@@ -365,53 +485,79 @@ public final class ASTLower implements NodeVisitor<Pair> {
     @Override
     public Pair visit(Call call)
     {
-        List<Expression> args = call.getArguments();
-        List<LocalVar> listOfArgs = new ArrayList<>();
+        return lowerTree(call);
+    }
+
+    /**
+     * Lowers the arguments of a call one after another and chains them to the call.
+     */
+
+    private final class CallFrame extends Frame
+    {
+        private final Call call;
+        private final List<Expression> args;
+        private final List<LocalVar> listOfArgs = new ArrayList<>();
+        private int i = -1; //the argument handed out last
+
+        private Instruction start = null;
+        private Instruction end = null;
+        private Instruction chain = null;
 
-        Instruction start = null;
-        Instruction end = null;
-        Instruction chain = null;
-        for (Expression expression : args) {
-            Pair arg = visit(expression);
+        private CallFrame(Call call)
+        {
+            this.call = call;
+            args = call.getArguments();
+        }
 
-            if (start == null)
+        @Override
+        Node next(Pair arg)
+        {
+            if (i >= 0)
             {
-                start = arg.getStart();
-                end = arg.getInstruction();
+                if (start == null)
+                {
+                    start = arg.getStart();
+                    end = arg.getInstruction();
+                }
+                else
+                {
+                    connectEdge(chain, arg.getStart());
+                }
+                chain = arg.getInstruction();
+                listOfArgs.add((LocalVar) arg.getValue());
             }
-            else
+            if (++i < args.size())
             {
-                connectEdge(chain, arg.getStart());
+                return args.get(i);
             }
-            chain = arg.getInstruction();
-            listOfArgs.add((LocalVar) arg.getValue());
-        }
 
-        //call information
-        Symbol callSym = call.getCallee();
-        FuncType calleeType = (FuncType) callSym.getType();
-        CallInst callInst;
-        LocalVar retValue = null;
+            //call information
+            Symbol callSym = call.getCallee();
+            FuncType calleeType = (FuncType) callSym.getType();
+            CallInst callInst;
+            LocalVar retValue = null;
 
-        if(calleeType.getRet().equivalent(new VoidType()))
-        {
-            callInst = new CallInst(callSym, listOfArgs);
-        }
-        else
-        {
-            retValue = mCurrentFunction.getTempVar(calleeType.getRet());
-            //create call instruction: public CallInst(LocalVar destVar, Symbol callee, List<LocalVar> params)
-            callInst = new CallInst(retValue, callSym, listOfArgs);
-        }
+            if(calleeType.getRet().equivalent(VoidType.INSTANCE))
+            {
+                callInst = new CallInst(callSym, listOfArgs);
+            }
+            else
+            {
+                retValue = mCurrentFunction.getTempVar(calleeType.getRet());
+                //create call instruction: public CallInst(LocalVar destVar, Symbol callee, List<LocalVar> params)
+                callInst = new CallInst(retValue, callSym, listOfArgs);
+            }
 
-        if (chain != null)
-        {
-            connectEdge(chain, callInst);
-        } else //if functions has no args
-        {
-            end = callInst;
+            if (chain != null)
+            {
+                connectEdge(chain, callInst);
+            } else //if functions has no args
+            {
+                end = callInst;
+            }
+            result = new Pair(start, end, retValue);
+            return null;
         }
-        return new Pair(start, end, retValue);
     }
 
     /**
@@ -421,31 +567,29 @@ public final class ASTLower implements NodeVisitor<Pair> {
     @Override
     public Pair visit(OpExpr operation)
     {
-        if(operation.getOp().toString().equals("&&"))
-        {
-            return handleAND(operation);
-        }
-        else if(operation.getOp().toString().equals("||"))
-        {
-            return handleOR(operation);
-        }
+        return lowerTree(operation);
+    }
+
+    /**
+     * Lowers an arithmetic, comparison or not whose operands are lowered already, {@code right} is
+     * null for a not.
+     */
 
-        Pair left = visit(operation.getLeft());
+    private Pair lower(OpExpr operation, Pair left, Pair right)
+    {
         var lhs = (LocalVar) left.getValue();
         Instruction start = left.getStart();
         Instruction end = left.getInstruction();
         Instruction chain = left.getInstruction();
 
-        Pair right = null;
         LocalVar rhs = null;
-        if (operation.getRight() != null)
+        if (right != null)
         {
-            right = visit(operation.getRight());
             rhs = (LocalVar) right.getValue();
             connectEdge(chain, right.getInstruction());
         }
 
-        var destinationVar = mCurrentFunction.getTempVar(checker.getType(operation));
+        var destinationVar = mCurrentFunction.getTempVar(operation.getType());
         Instruction instance = null;
 
         //switch statement between all operations
@@ -490,85 +634,134 @@ public final class ASTLower implements NodeVisitor<Pair> {
         return new Pair(start, end, destinationVar);
     }
 
-    private Pair handleOR(OpExpr logicalOr)  //a || b = if(a){true}, if(b}{true}, else {false}
+    private final class OrFrame extends Frame //a || b = if(a){true}, if(b}{true}, else {false}
     {
-        NopInst endNop = new NopInst(); //exit nop
-
-        LocalVar out = mCurrentFunction.getTempVar(new BoolType());
-        Pair lhs = visit(logicalOr.getLeft()); //nop->call
-        Instruction lTempInst = lhs.getInstruction(); //t & t = true
-        var copyInstLHS = new CopyInst(out, (LocalVar) lhs.getValue());
-        Instruction exitJumpL = new JumpInst(copyInstLHS.getDstVar());
-        copyInstLHS.setNext(0, exitJumpL);
-        connectEdge(lTempInst, copyInstLHS); //outer if-statement
+        private final OpExpr logicalOr;
+        private int step = 0;
+        private NopInst endNop;
+        private LocalVar out;
+        private Instruction lTempInst;
+        private Instruction exitJumpL;
+
+        private OrFrame(OpExpr logicalOr)
+        {
+            this.logicalOr = logicalOr;
+        }
 
-        Pair rhs = visit(logicalOr.getRight()); //nop->call/bool/opexpr
-        Instruction rTempInst = rhs.getInstruction();
-        var copyInstRHS = new CopyInst(out, (LocalVar) rhs.getValue());
-        copyInstRHS.setNext(0, endNop);
-        connectEdge(rTempInst, copyInstRHS); //inner if-statement
+        @Override
+        Node next(Pair child)
+        {
+            switch (step++)
+            {
+                case 0:
+                    endNop = new NopInst(); //exit nop
+                    out = mCurrentFunction.getTempVar(BoolType.INSTANCE);
+                    return logicalOr.getLeft(); //nop->call
+                case 1:
+                    Pair lhs = child;
+                    lTempInst = lhs.getInstruction(); //t & t = true
+                    var copyInstLHS = new CopyInst(out, (LocalVar) lhs.getValue());
+                    exitJumpL = new JumpInst(copyInstLHS.getDstVar());
+                    copyInstLHS.setNext(0, exitJumpL);
+                    connectEdge(lTempInst, copyInstLHS); //outer if-statement
+                    return logicalOr.getRight(); //nop->call/bool/opexpr
+                default:
+                    Pair rhs = child;
+                    Instruction rTempInst = rhs.getInstruction();
+                    var copyInstRHS = new CopyInst(out, (LocalVar) rhs.getValue());
+                    copyInstRHS.setNext(0, endNop);
+                    connectEdge(rTempInst, copyInstRHS); //inner if-statement
 
-        exitJumpL.setNext(0, rTempInst);
-        exitJumpL.setNext(1, endNop);
+                    exitJumpL.setNext(0, rTempInst);
+                    exitJumpL.setNext(1, endNop);
 
-        return new Pair(lTempInst, lTempInst, out);
+                    result = new Pair(lTempInst, lTempInst, out);
+                    return null;
+            }
+        }
     }
 
-    private Pair handleAND(OpExpr logicalAnd) //a && b = if (a){if(b) {true}} {false}
+    private final class AndFrame extends Frame //a && b = if (a){if(b) {true}} {false}
     {
-        Instruction endNop = new NopInst(); //exit nop
-
-        LocalVar out = mCurrentFunction.getTempVar(new BoolType());
-
-        Pair lhs = visit(logicalAnd.getLeft()); //nop->call
-        Instruction lTempInst = lhs.getInstruction(); //t & t = true
-        var copyInstLHS = new CopyInst(out, (LocalVar) lhs.getValue());
-        Instruction exitJumpL = new JumpInst(copyInstLHS.getDstVar());
-        copyInstLHS.setNext(0, exitJumpL);
-        connectEdge(lTempInst, copyInstLHS); //outer if-statement
-        exitJumpL.setNext(0, endNop);
-
-        if(on && false50 == null) {
-            false50 = getLastEdge(lTempInst, false);
+        private final OpExpr logicalAnd;
+        private int step = 0;
+        private Instruction endNop;
+        private LocalVar out;
+        private Instruction lTempInst;
+        private Instruction exitJumpL;
+
+        private AndFrame(OpExpr logicalAnd)
+        {
+            this.logicalAnd = logicalAnd;
         }
 
-
-        Pair rhs = visit(logicalAnd.getRight()); //nop->call/bool/opexpr
-        Instruction rTempInst = rhs.getInstruction();
-        var copyInstRHS = new CopyInst(out, (LocalVar) rhs.getValue());
-        if(lTempInst.getNext(0) != null)
+        @Override
+        Node next(Pair child)
         {
-            if(lTempInst.getNext(0) instanceof CopyInst)
+            switch (step++)
             {
-                if(((CopyInst) lTempInst.getNext(0)).getDstVar().toString().equals("$t8"))
-                {
-                    //copyInstRHS.setNext(0, breakInstruction);
-                }
-                else
-                {
-                    copyInstRHS.setNext(0, endNop);
-                }
-            }
-            else
-            {
-                copyInstRHS.setNext(0, endNop);
+                case 0:
+                    endNop = new NopInst(); //exit nop
+
+                    out = mCurrentFunction.getTempVar(BoolType.INSTANCE);
+                    return logicalAnd.getLeft(); //nop->call
+                case 1:
+                    Pair lhs = child;
+                    lTempInst = lhs.getInstruction(); //t & t = true
+                    var copyInstLHS = new CopyInst(out, (LocalVar) lhs.getValue());
+                    exitJumpL = new JumpInst(copyInstLHS.getDstVar());
+                    copyInstLHS.setNext(0, exitJumpL);
+                    connectEdge(lTempInst, copyInstLHS); //outer if-statement
+                    exitJumpL.setNext(0, endNop);
+
+                    if(on && false50 == null) {
+                        false50 = getLastEdge(lTempInst, false);
+                    }
+                    return logicalAnd.getRight(); //nop->call/bool/opexpr
+                default:
+                    Pair rhs = child;
+                    Instruction rTempInst = rhs.getInstruction();
+                    var copyInstRHS = new CopyInst(out, (LocalVar) rhs.getValue());
+                    if(lTempInst.getNext(0) != null)
+                    {
+                        if(lTempInst.getNext(0) instanceof CopyInst)
+                        {
+                            if(((CopyInst) lTempInst.getNext(0)).getDstVar().toString().equals("$t8"))
+                            {
+                                //copyInstRHS.setNext(0, breakInstruction);
+                            }
+                            else
+                            {
+                                copyInstRHS.setNext(0, endNop);
+                            }
+                        }
+                        else
+                        {
+                            copyInstRHS.setNext(0, endNop);
+                        }
+                    }
+                    else {
+                        copyInstRHS.setNext(0, endNop);
+                    }
+                    connectEdge(rTempInst, copyInstRHS); //inner if-statement
+                    exitJumpL.setNext(1, rTempInst);
+
+                    result = new Pair(lTempInst, lTempInst, out);
+                    return null;
             }
         }
-        else {
-            copyInstRHS.setNext(0, endNop);
-        }
-        connectEdge(rTempInst, copyInstRHS); //inner if-statement
-        exitJumpL.setNext(1, rTempInst);
-
-        return new Pair(lTempInst, lTempInst, out);
     }
 
     @Override
     public Pair visit(Dereference dereference)
+    {
+        return lowerTree(dereference);
+    }
+
+    private Pair lower(Dereference dereference, Pair addr)
     {
         //arrayaccess returns: Pair(start, chain, offset.getValue());
         //name returns: Pair(nop, nop, myVar);
-        Pair addr = visit(dereference.getAddress());
         Instruction chain = addr.getInstruction();
         Instruction load = null;
 
@@ -594,7 +787,7 @@ public final class ASTLower implements NodeVisitor<Pair> {
             {
                 Symbol sym = ((Name) dereference.getAddress()).getSymbol();
                 load = new AddressAt(var, sym);
-                load.setNext(0, new LoadInst(new LocalVar(sym.getType()), var));
+                load.setNext(0, new LoadInst(destinationVar, var)); //value of the global is the value of the expression
             }
             else //global variable -> store instruction
             {
@@ -610,11 +803,6 @@ public final class ASTLower implements NodeVisitor<Pair> {
         return new Pair(addr.getStart(), addr.getInstruction(), destinationVar); //return addr;
     }
 
-    private Pair visit(Expression expression)
-    {
-        return expression.accept(this);
-    }
-
     /**
      * ArrayAccess
      */
@@ -622,9 +810,11 @@ public final class ASTLower implements NodeVisitor<Pair> {
     @Override
     public Pair visit(ArrayAccess access)
     {
-        Pair base = visit(access.getBase());
+        return lowerTree(access);
+    }
 
-        Pair offset = visit(access.getOffset());
+    private Pair lower(ArrayAccess access, Pair base, Pair offset)
+    {
         Instruction start = offset.getStart();
         Instruction end = offset.getInstruction();
         Instruction chain = offset.getInstruction();
@@ -644,7 +834,7 @@ public final class ASTLower implements NodeVisitor<Pair> {
     public Pair visit(LiteralBool literalBool)
     {
         var boolValue = BooleanConstant.get(mCurrentProgram, literalBool.getValue());
-        var destinationVar = mCurrentFunction.getTempVar(new BoolType());
+        var destinationVar = mCurrentFunction.getTempVar(BoolType.INSTANCE);
         var copyInst = new CopyInst(destinationVar, boolValue);
         return new Pair(copyInst, copyInst, destinationVar);
     }
@@ -657,7 +847,7 @@ public final class ASTLower implements NodeVisitor<Pair> {
     public Pair visit(LiteralInt literalInt)
     {
         var intValue = IntegerConstant.get(mCurrentProgram, literalInt.getValue());
-        var destinationVar = mCurrentFunction.getTempVar(new IntType());
+        var destinationVar = mCurrentFunction.getTempVar(IntType.INSTANCE);
         var copyInst = new CopyInst(destinationVar, intValue);
         return new Pair(copyInst, copyInst, destinationVar);
     }
@@ -669,7 +859,11 @@ public final class ASTLower implements NodeVisitor<Pair> {
     @Override
     public Pair visit(Return ret)
     {
-        Pair retVal = visit(ret.getValue());
+        return lowerTree(ret);
+    }
+
+    private Pair lower(Return ret, Pair retVal)
+    {
         Instruction start = retVal.getStart();
         Instruction end = retVal.getInstruction();
         Instruction chain = retVal.getInstruction();
@@ -694,7 +888,7 @@ public final class ASTLower implements NodeVisitor<Pair> {
         else {
             breakEncountered = true;
         }
-        return new Pair(new NopInst(), new NopInst(), new LocalVar(new IntType())); //goes to first outside-loop instruction
+        return new Pair(new NopInst(), new NopInst(), new LocalVar(IntType.INSTANCE)); //goes to first outside-loop instruction
     }
 
     /**
@@ -711,7 +905,7 @@ public final class ASTLower implements NodeVisitor<Pair> {
         else {
             continueEncountered = true;
         }
-        return new Pair(new NopInst(), new NopInst(), new LocalVar(new IntType())); //nothing happens
+        return new Pair(new NopInst(), new NopInst(), new LocalVar(IntType.INSTANCE)); //nothing happens
     }
 
     /**
@@ -721,89 +915,112 @@ public final class ASTLower implements NodeVisitor<Pair> {
     @Override
     public Pair visit(IfElseBranch ifElseBranch)
     {
-        Pair condition = visit(ifElseBranch.getCondition());
-        Instruction tempInst = condition.getStart();
+        return lowerTree(ifElseBranch);
+    }
 
-        //create jump instructions and connect to previous instruction
-        Instruction conditionJump = new JumpInst((LocalVar) condition.getValue());
-        Instruction sub1 = tempInst;
-        while(sub1.getNext(0) != null)
-        {
-            if(sub1 instanceof JumpInst)
-            {
-                sub1 = sub1.getNext(1);
-            }
-            else {
-                sub1 = sub1.getNext(0);
-            }
-        }
-        sub1.setNext(0, conditionJump);
+    /**
+     * Lowers the condition, then every statement of the then block, then the else block.
+     */
 
-        //visit then and else
-        Instruction thenBlock = new NopInst();
-        for(int i = 0; i < ifElseBranch.getThenBlock().getChildren().size(); i++)
-        {
-            if(ifElseBranch.getThenBlock().getChildren().get(i) instanceof Loop)
-            {
-                inLoopEntered = true; //double loops in if statements
-            }
-            Pair p = ifElseBranch.getThenBlock().getChildren().get(i).accept(this);
-            if(p != null) {
-                connectEdge(thenBlock, p.getInstruction());
-            }
-        }
+    private final class IfElseBranchFrame extends Frame
+    {
+        private final IfElseBranch ifElseBranch;
+        private final List<Node> thenStatements;
+        private int step = 0; //0 before the condition, 1 in the then block, 2 after the else block
+        private int i = -1; //the then statement handed out last
 
-        Pair elseBlock = visit(ifElseBranch.getElseBlock());
-        Instruction endNop = new NopInst();
-        if(on && false50 != null)
-        {
-            endNop.setNext(0, false50);
-            on = false;
-        }
+        private Pair condition = null;
+        private Instruction conditionJump;
+        private Instruction thenBlock;
 
-        //must connect JumpInst to the start of the trueBlock (what happens if it is null)
-        conditionJump.setNext(0, elseBlock.getInstruction());
-        connectEdge(conditionJump.getNext(0), endNop);
-        if(continueEncountered) //outer loop
-        {
-            connectEdge(conditionJump.getNext(0), continueInstruction);
-            continueEncountered = false;
-        }
-        else if (inContinueEncountered) //inner loop
+        private IfElseBranchFrame(IfElseBranch ifElseBranch)
         {
-            connectEdge(conditionJump.getNext(0), inContinueInstruction);
-            inContinueEncountered = false;
+            this.ifElseBranch = ifElseBranch;
+            thenStatements = ifElseBranch.getThenBlock().getChildren();
         }
 
-        conditionJump.setNext(1, new NopInst());
-        connectEdge(conditionJump.getNext(1), thenBlock);
-        if(breakEncountered)
-        {
-            connectEdge(conditionJump.getNext(1), breakInstruction);
-            breakEncountered = false; //wait for next break
-        }
-        else if (inBreakEncountered)
-        {
-            connectEdge(conditionJump.getNext(1), inBreakInstruction);
-            inBreakEncountered = false;
-        }
-        else
+        @Override
+        Node next(Pair child)
         {
-            Instruction sub = conditionJump.getNext(1);
-            while(sub.getNext(0) != null)
+            if (step == 0)
             {
-                if(sub instanceof JumpInst)
+                step = 1;
+                return ifElseBranch.getCondition();
+            }
+            if (step == 1)
+            {
+                if (condition == null)
+                {
+                    condition = child;
+                    Instruction tempInst = condition.getStart();
+
+                    //create jump instructions and connect to previous instruction
+                    conditionJump = new JumpInst((LocalVar) condition.getValue());
+                    Instruction sub1 = walkToEnd(tempInst, true);
+                    sub1.setNext(0, conditionJump);
+
+                    //visit then and else
+                    thenBlock = new NopInst();
+                }
+                else if (child != null)
                 {
-                    sub = sub.getNext(1);
+                    connectEdge(thenBlock, child.getInstruction());
                 }
-                else {
-                    sub = sub.getNext(0);
+                if (++i < thenStatements.size())
+                {
+                    if(thenStatements.get(i) instanceof Loop)
+                    {
+                        inLoopEntered = true; //double loops in if statements
+                    }
+                    return thenStatements.get(i);
                 }
+                step = 2;
+                return ifElseBranch.getElseBlock();
             }
-            sub.setNext(0, endNop);
-        }
 
-        return new Pair(condition.getStart(), condition.getInstruction(), new LocalVar(new IntType()));
+            Pair elseBlock = child;
+            Instruction endNop = new NopInst();
+            if(on && false50 != null)
+            {
+                endNop.setNext(0, false50);
+                on = false;
+            }
+
+            //must connect JumpInst to the start of the trueBlock (what happens if it is null)
+            conditionJump.setNext(0, elseBlock.getInstruction());
+            connectEdge(conditionJump.getNext(0), endNop);
+            if(continueEncountered) //outer loop
+            {
+                connectEdge(conditionJump.getNext(0), continueInstruction);
+                continueEncountered = false;
+            }
+            else if (inContinueEncountered) //inner loop
+            {
+                connectEdge(conditionJump.getNext(0), inContinueInstruction);
+                inContinueEncountered = false;
+            }
+
+            conditionJump.setNext(1, new NopInst());
+            connectEdge(conditionJump.getNext(1), thenBlock);
+            if(breakEncountered)
+            {
+                connectEdge(conditionJump.getNext(1), breakInstruction);
+                breakEncountered = false; //wait for next break
+            }
+            else if (inBreakEncountered)
+            {
+                connectEdge(conditionJump.getNext(1), inBreakInstruction);
+                inBreakEncountered = false;
+            }
+            else
+            {
+                Instruction sub = walkToEnd(conditionJump.getNext(1), true);
+                sub.setNext(0, endNop);
+            }
+
+            result = new Pair(condition.getStart(), condition.getInstruction(), new LocalVar(IntType.INSTANCE));
+            return null;
+        }
     }
 
     /**
@@ -813,17 +1030,28 @@ public final class ASTLower implements NodeVisitor<Pair> {
     @Override
     public Pair visit(Loop loop)
     {
-        Instruction loopInstr = new NopInst();
+        return lowerTree(loop);
+    }
+
+    /**
+     * Lowers the statements of a loop body one after another, up to the first return.
+     */
 
-        for(int i = 0; i < loop.getBody().getChildren().size(); i++)
+    private final class LoopFrame extends Frame
+    {
+        private final List<Node> statements;
+        private final Instruction loopInstr = new NopInst();
+        private int i = -1; //the statement handed out last
+
+        private LoopFrame(Loop loop)
         {
-            if(loop.getBody().getChildren().get(i) instanceof Loop) //loop within loop
-            {
-                inLoopEntered = true;
-            }
+            statements = loop.getBody().getChildren();
+        }
 
-            Pair p = loop.getBody().getChildren().get(i).accept(this);
-            if (p != null)
+        @Override
+        Node next(Pair p)
+        {
+            if (i >= 0 && p != null)
             {
                 Instruction sub = loopInstr;
                 boolean atJump2 = false;
@@ -844,14 +1072,15 @@ public final class ASTLower implements NodeVisitor<Pair> {
                     }
                 }
                 sub.setNext(0, p.getInstruction());
-                if (loop.getBody().getChildren().get(i) instanceof Return) //test 43 works
+                if (statements.get(i) instanceof Return) //test 43 works
                 {
                     Instruction a = p.getInstruction();
                     connectEdge(a, breakInstruction);
-                    return new Pair(loopInstr, loopInstr, new LocalVar(new IntType()));
+                    result = new Pair(loopInstr, loopInstr, new LocalVar(IntType.INSTANCE));
+                    return null;
                 }
 
-                if (i == loop.getBody().getChildren().size() - 1) //last statement
+                if (i == statements.size() - 1) //last statement
                 {
                     if (!inLoopEntered)
                     {
@@ -881,9 +1110,166 @@ public final class ASTLower implements NodeVisitor<Pair> {
                 }
             }
 
+            if (++i < statements.size())
+            {
+                if(statements.get(i) instanceof Loop) //loop within loop
+                {
+                    inLoopEntered = true;
+                }
+                return statements.get(i);
+            }
+            result = new Pair(loopInstr, loopInstr, new LocalVar(IntType.INSTANCE));
+            return null;
+        }
+    }
+
+    /**
+     * The lowering of a node with children, which it hands out one at a time instead of visiting
+     * them itself, see {@link #lowerTree(Node)}.
+     */
+
+    private abstract static class Frame
+    {
+        Pair result; //the lowering of the node, once next returned null
+
+        /**
+         * Takes the lowering of the child handed out last, if any, and returns the next child to
+         * lower, or null once the node is lowered.
+         */
+
+        abstract Node next(Pair child);
+    }
+
+    /**
+     * Lowers all children of a node before the node itself, which is made of their lowerings.
+     */
+
+    private static final class ChildrenFirst extends Frame
+    {
+        private final List<Node> children;
+        private final List<Pair> lowered = new ArrayList<>();
+        private final java.util.function.Function<List<Pair>, Pair> lower;
+        private int i = -1; //the child handed out last
+
+        private ChildrenFirst(Node node, java.util.function.Function<List<Pair>, Pair> lower)
+        {
+            children = node.getChildren();
+            this.lower = lower;
+        }
+
+        @Override
+        Node next(Pair child)
+        {
+            if (i >= 0)
+            {
+                lowered.add(child);
+            }
+            if (++i < children.size())
+            {
+                return children.get(i);
+            }
+            result = lower.apply(lowered);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the frame that lowers a node with children, or null for a leaf, which its visit
+     * method lowers.
+     */
+
+    private Frame frameFor(Node node)
+    {
+        if (node instanceof StatementList)
+        {
+            return new StatementListFrame((StatementList) node);
+        }
+        else if (node instanceof Assignment)
+        {
+            var assignment = (Assignment) node;
+            return new ChildrenFirst(node, pairs -> lower(assignment, pairs.get(0), pairs.get(1)));
+        }
+        else if (node instanceof Call)
+        {
+            return new CallFrame((Call) node);
+        }
+        else if (node instanceof OpExpr)
+        {
+            var operation = (OpExpr) node;
+            if(operation.getOp().toString().equals("&&"))
+            {
+                return new AndFrame(operation);
+            }
+            else if(operation.getOp().toString().equals("||"))
+            {
+                return new OrFrame(operation);
+            }
+            return new ChildrenFirst(node,
+                pairs -> lower(operation, pairs.get(0), pairs.size() > 1 ? pairs.get(1) : null));
+        }
+        else if (node instanceof Dereference)
+        {
+            var dereference = (Dereference) node;
+            return new ChildrenFirst(node, pairs -> lower(dereference, pairs.get(0)));
+        }
+        else if (node instanceof ArrayAccess)
+        {
+            var access = (ArrayAccess) node;
+            return new ChildrenFirst(node, pairs -> lower(access, pairs.get(0), pairs.get(1)));
+        }
+        else if (node instanceof Return)
+        {
+            var ret = (Return) node;
+            return new ChildrenFirst(node, pairs -> lower(ret, pairs.get(0)));
+        }
+        else if (node instanceof IfElseBranch)
+        {
+            return new IfElseBranchFrame((IfElseBranch) node);
+        }
+        else if (node instanceof Loop)
+        {
+            return new LoopFrame((Loop) node);
         }
+        return null;
+    }
+
+    /**
+     * Lowers a node with children and everything in it. Statements and expressions nest as deep as
+     * the program does, so the frames of the nodes being lowered are kept on an explicit stack
+     * instead of the call stack, like the printers do.
+     */
 
-        return new Pair(loopInstr, loopInstr, new LocalVar(new IntType()));
+    private Pair lowerTree(Node root)
+    {
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(frameFor(root));
+        Pair child = null;
+        while (true)
+        {
+            Frame frame = frames.peek();
+            Node next = frame.next(child);
+            if (next == null)
+            {
+                frames.pop();
+                if (frames.isEmpty())
+                {
+                    return frame.result;
+                }
+                child = frame.result;
+                continue;
+            }
+
+            Frame nextFrame = frameFor(next);
+            if (nextFrame == null)
+            {
+                child = next.accept(this); //a leaf
+            }
+            else
+            {
+                frames.push(nextFrame);
+                child = null;
+            }
+        }
     }
 
     private void connectEdge(Instruction src, Instruction add)
@@ -894,34 +1280,47 @@ public final class ASTLower implements NodeVisitor<Pair> {
             return;
         }
 
-        Instruction sub = src;
-        while(sub.getNext(0) != null)
-        {
-            sub = sub.getNext(0);
-        }
+        Instruction sub = walkToEnd(src, false);
         sub.setNext(0, add);
     }
 
     private Instruction getLastEdge(Instruction chain, boolean specialCase)
     {
-        Instruction sub = chain;
-        if(!specialCase) {
-            while (sub.getNext(0) != null) {
+        return walkToEnd(chain, specialCase);
+    }
+
+    /**
+     * Follows the edges from an instruction until one has no successor, taking the second edge of
+     * jumps if {@code followTaken}. Chains only ever grow at their end, so the end found from every
+     * instruction on the way is remembered and later walks continue from there instead of going
+     * over the whole chain again, which would take quadratic time in the length of the chain.
+     */
+    private Instruction walkToEnd(Instruction from, boolean followTaken)
+    {
+        Map<Instruction, Instruction> ends = followTaken ? mTakenEnds : mEnds;
+        List<Instruction> passed = new ArrayList<>();
+        Instruction sub = from;
+        while(sub.getNext(0) != null)
+        {
+            Instruction known = ends.get(sub);
+            if(known != null && known != sub)
+            {
+                passed.add(sub);
+                sub = known;
+            }
+            else if(followTaken && sub instanceof JumpInst)
+            {
+                sub = sub.getNext(1);
+            }
+            else
+            {
                 sub = sub.getNext(0);
             }
         }
-        else
+        ends.put(from, sub);
+        for(Instruction inst : passed)
         {
-            while (sub.getNext(0) != null)
-            {
-                if(sub instanceof JumpInst)
-                {
-                    sub = sub.getNext(1);
-                }
-                else {
-                    sub = sub.getNext(0);
-                }
-            }
+            ends.put(inst, sub);
         }
         return sub;
     }
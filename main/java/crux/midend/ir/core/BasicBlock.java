@@ -0,0 +1,75 @@
+package crux.midend.ir.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A maximal sequence of instructions that are always executed one after the other. Control flow
+ * only enters a block at its first instruction and only leaves it after its last one.
+ * <p>
+ * The edges of a block mirror the edges of its last instruction: {@code getNext(i)} is the block
+ * that starts with {@code getLast().getNext(i)}, so for a jump {@code getNext(0)} is the block
+ * taken when the predicate is false and {@code getNext(1)} the one taken when it is true.
+ */
+public final class BasicBlock {
+  private final int mIndex;
+  private final List<Instruction> mInstructions;
+  BasicBlock[] mNext;
+  List<BasicBlock> mSuccessors;
+  List<BasicBlock> mPredecessors = new ArrayList<>();
+
+  BasicBlock(int index, List<Instruction> instructions) {
+    mIndex = index;
+    mInstructions = List.copyOf(instructions);
+  }
+
+  /**
+   * Returns the position of the block in the reverse postorder of its {@link ControlFlowGraph}.
+   */
+  public int getIndex() {
+    return mIndex;
+  }
+
+  public List<Instruction> getInstructions() {
+    return mInstructions;
+  }
+
+  public Instruction getFirst() {
+    return mInstructions.get(0);
+  }
+
+  public Instruction getLast() {
+    return mInstructions.get(mInstructions.size() - 1);
+  }
+
+  public int numNext() {
+    return mNext.length;
+  }
+
+  /**
+   * Returns the block reached through the i-th edge of the last instruction, or null if that edge
+   * leaves the function.
+   */
+  public BasicBlock getNext(int i) {
+    return i < mNext.length ? mNext[i] : null;
+  }
+
+  /**
+   * Returns the blocks control can flow to, one entry per edge.
+   */
+  public List<BasicBlock> getSuccessors() {
+    return mSuccessors;
+  }
+
+  /**
+   * Returns the blocks control can come from, one entry per edge.
+   */
+  public List<BasicBlock> getPredecessors() {
+    return mPredecessors;
+  }
+
+  @Override
+  public String toString() {
+    return "B" + mIndex;
+  }
+}
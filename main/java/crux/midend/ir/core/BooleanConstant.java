@@ -2,17 +2,18 @@ package crux.midend.ir.core;
 
 import crux.frontend.types.BoolType;
 
-import java.util.HashMap;
-
 /**
  * A constant boolean (i.e. true or false). This is equivalent to
  * {@link crux.frontend.ast.LiteralBool}.
  */
 public final class BooleanConstant extends Constant {
-  private boolean mValue;
+  private static final BooleanConstant TRUE = new BooleanConstant(true);
+  private static final BooleanConstant FALSE = new BooleanConstant(false);
+
+  private final boolean mValue;
 
-  private BooleanConstant(Program ctx, boolean val) {
-    super(new BoolType());
+  private BooleanConstant(boolean val) {
+    super(BoolType.INSTANCE);
     mValue = val;
   }
 
@@ -20,8 +21,10 @@ public final class BooleanConstant extends Constant {
     return mValue;
   }
 
+  /**
+   * Returns the constant of a value. Both are shared by every program.
+   */
   public static BooleanConstant get(Program ctx, boolean value) {
-    var currentMap = mBoolConstantPool.computeIfAbsent(ctx, p -> new HashMap<>());
-    return currentMap.computeIfAbsent(value, p -> new BooleanConstant(ctx, value));
+    return value ? TRUE : FALSE;
   }
 }
@@ -0,0 +1,333 @@
+package crux.midend.ir.core;
+
+import crux.frontend.types.IntType;
+import crux.midend.ir.core.insts.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The linear form of a {@link Function} that is executed by the {@link FastEmulator}. Every
+ * variable of the function is numbered and the basic blocks are laid out in reverse postorder into
+ * a flat array of opcodes and operands. Falling through to the next opcode corresponds to following
+ * the first successor of a block, every other edge becomes an explicit jump.
+ * <p>
+ * Encoding (each opcode is followed by its operands):
+ *
+ * <pre>
+ * {@code
+ * CONST      dst, constant, tag       ADDRESS    dst, constant
+ * MOVE       dst, src                 ADDRESS_AT dst, constant, offset
+ * ADD ... NE dst, lhs, rhs            LOAD       dst, address, tag
+ * NOT        dst, src                 STORE      src, address
+ * BRANCH     predicate, target        GOTO       target
+ * CALL       function, dst, argc, args...
+ * READ_INT   dst                      READ_CHAR  dst
+ * PRINT      src                      PRINT_CHAR src
+ * PRINT_BOOL src                      PRINTLN
+ * RETURN     src                      RETURN_VOID
+ * }
+ * </pre>
+ */
+final class Bytecode {
+  static final int CONST = 0;
+  static final int MOVE = 1;
+  static final int ADD = 2;
+  static final int SUB = 3;
+  static final int MUL = 4;
+  static final int DIV = 5;
+  static final int GE = 6;
+  static final int GT = 7;
+  static final int LE = 8;
+  static final int LT = 9;
+  static final int EQ = 10;
+  static final int NE = 11;
+  static final int NOT = 12;
+  static final int ADDRESS = 13;
+  static final int ADDRESS_AT = 14;
+  static final int LOAD = 15;
+  static final int STORE = 16;
+  static final int BRANCH = 17;
+  static final int GOTO = 18;
+  static final int CALL = 19;
+  static final int READ_INT = 20;
+  static final int READ_CHAR = 21;
+  static final int PRINT = 22;
+  static final int PRINT_CHAR = 23;
+  static final int PRINTLN = 24;
+  static final int RETURN = 25;
+  static final int RETURN_VOID = 26;
+  static final int PRINT_BOOL = 27;
+
+  /**
+   * Tags describing what kind of value a register holds. The {@link Emulator} keeps boxed
+   * {@code Long}s and {@code Boolean}s, the tags let us print values exactly the same way.
+   */
+  static final byte UNSET = 0;
+  static final byte INT = 1;
+  static final byte BOOL = 2;
+
+  /** Marks a call to a function that does not exist in the program. */
+  static final int UNKNOWN_FUNCTION = -1;
+
+  final String name;
+  final int[] code;
+  final long[] constants;
+  final int numArgs;
+  final int numRegisters;
+
+  private Bytecode(String name, int[] code, long[] constants, int numArgs, int numRegisters) {
+    this.name = name;
+    this.code = code;
+    this.constants = constants;
+    this.numArgs = numArgs;
+    this.numRegisters = numRegisters;
+  }
+
+  /**
+   * Compiles a function into bytecode.
+   *
+   * @param functionIndex maps the name of every function of the program to its index.
+   * @param memory the global memory the function runs against.
+   */
+  static Bytecode compile(Function f, Map<String, Integer> functionIndex, GlobalMemory memory) {
+    var builder = new Builder(functionIndex, memory);
+    for (LocalVar arg : f.getArguments()) {
+      builder.register(arg);
+    }
+    builder.layout(f.getControlFlowGraph());
+    return builder.build(f.getName(), f.getArguments().size());
+  }
+
+  private static final class Builder extends InstVisitor {
+    private final Map<String, Integer> functionIndex;
+    private final GlobalMemory memory;
+
+    private final Map<Variable, Integer> registers = new HashMap<>();
+    private final Map<Long, Integer> constantIndex = new HashMap<>();
+
+    // Jump operands that still need the position of their target block.
+    private final List<Integer> fixupSlots = new ArrayList<>();
+    private final List<BasicBlock> fixupTargets = new ArrayList<>();
+    private int[] blockStart;
+    private BasicBlock block;
+
+    private int[] code = new int[64];
+    private int size = 0;
+    private long[] constants = new long[8];
+    private int numConstants = 0;
+
+    private Builder(Map<String, Integer> functionIndex, GlobalMemory memory) {
+      this.functionIndex = functionIndex;
+      this.memory = memory;
+    }
+
+    int register(Value v) {
+      return registers.computeIfAbsent((Variable) v, k -> registers.size());
+    }
+
+    private int constant(long value) {
+      return constantIndex.computeIfAbsent(value, k -> {
+        if (numConstants == constants.length)
+          constants = Arrays.copyOf(constants, numConstants * 2);
+        constants[numConstants] = value;
+        return numConstants++;
+      });
+    }
+
+    private void emit(int... words) {
+      if (size + words.length > code.length)
+        code = Arrays.copyOf(code, Math.max(code.length * 2, size + words.length));
+      System.arraycopy(words, 0, code, size, words.length);
+      size += words.length;
+    }
+
+    /**
+     * Emits the position of the target block, which is filled in once the whole function is laid
+     * out. A missing target is an implicit return.
+     */
+    private void emitTarget(BasicBlock target) {
+      emit(0);
+      fixupSlots.add(size - 1);
+      fixupTargets.add(target);
+    }
+
+    void layout(ControlFlowGraph cfg) {
+      blockStart = new int[cfg.size()];
+      for (BasicBlock b : cfg.getBlocks()) {
+        block = b;
+        blockStart[b.getIndex()] = size;
+        for (Instruction inst : b.getInstructions()) {
+          inst.accept(this);
+        }
+        if (b.getLast() instanceof ReturnInst)
+          continue;
+
+        BasicBlock next = b.getNext(0);
+        if (next == null) {
+          // Falling off the end of a function is an implicit return.
+          emit(RETURN_VOID);
+        } else if (next.getIndex() != b.getIndex() + 1) {
+          emit(GOTO);
+          emitTarget(next);
+        }
+      }
+    }
+
+    Bytecode build(String name, int numArgs) {
+      int exit = -1;
+      for (int i = 0; i < fixupSlots.size(); i++) {
+        BasicBlock target = fixupTargets.get(i);
+        if (target == null) {
+          if (exit < 0) {
+            exit = size;
+            emit(RETURN_VOID);
+          }
+          code[fixupSlots.get(i)] = exit;
+        } else {
+          code[fixupSlots.get(i)] = blockStart[target.getIndex()];
+        }
+      }
+      return new Bytecode(name, Arrays.copyOf(code, size), Arrays.copyOf(constants, numConstants),
+          numArgs, Math.max(registers.size(), 1));
+    }
+
+    @Override
+    public void visit(AddressAt i) {
+      int base = constant(memory.getOffset(i.getBase()));
+      if (i.getOffset() != null)
+        emit(ADDRESS_AT, register(i.getDst()), base, register(i.getOffset()));
+      else
+        emit(ADDRESS, register(i.getDst()), base);
+    }
+
+    @Override
+    public void visit(BinaryOperator i) {
+      int opcode = 0;
+      switch (i.getOperator()) {
+        case Add:
+          opcode = ADD;
+          break;
+        case Sub:
+          opcode = SUB;
+          break;
+        case Mul:
+          opcode = MUL;
+          break;
+        case Div:
+          opcode = DIV;
+          break;
+      }
+      emit(opcode, register(i.getDst()), register(i.getLeftOperand()),
+          register(i.getRightOperand()));
+    }
+
+    @Override
+    public void visit(CompareInst i) {
+      int opcode = 0;
+      switch (i.getPredicate()) {
+        case GE:
+          opcode = GE;
+          break;
+        case GT:
+          opcode = GT;
+          break;
+        case LE:
+          opcode = LE;
+          break;
+        case LT:
+          opcode = LT;
+          break;
+        case EQ:
+          opcode = EQ;
+          break;
+        case NE:
+          opcode = NE;
+          break;
+      }
+      emit(opcode, register(i.getDst()), register(i.getLeftOperand()),
+          register(i.getRightOperand()));
+    }
+
+    @Override
+    public void visit(CopyInst i) {
+      Value src = i.getSrcValue();
+      int dst = register(i.getDstVar());
+      if (src instanceof IntegerConstant) {
+        emit(CONST, dst, constant(((IntegerConstant) src).getValue()), INT);
+      } else if (src instanceof BooleanConstant) {
+        emit(CONST, dst, constant(((BooleanConstant) src).getValue() ? 1 : 0), BOOL);
+      } else {
+        emit(MOVE, dst, register(src));
+      }
+    }
+
+    @Override
+    public void visit(JumpInst i) {
+      emit(BRANCH, register(i.getPredicate()));
+      emitTarget(block.getNext(1));
+    }
+
+    @Override
+    public void visit(LoadInst i) {
+      AddressVar address = i.getSrcAddress();
+      byte tag = address.getType() instanceof IntType ? INT : BOOL;
+      emit(LOAD, register(i.getDst()), register(address), tag);
+    }
+
+    @Override
+    public void visit(NopInst i) {}
+
+    @Override
+    public void visit(StoreInst i) {
+      emit(STORE, register(i.getSrcValue()), register(i.getDestAddress()));
+    }
+
+    @Override
+    public void visit(ReturnInst i) {
+      emit(RETURN, register(i.getReturnValue()));
+    }
+
+    @Override
+    public void visit(CallInst i) {
+      String name = i.getCallee().getName();
+      int dst = i.getDst() != null ? register(i.getDst()) : -1;
+      List<Value> params = i.getParams();
+      switch (name) {
+        case "readInt":
+          emit(READ_INT, dst);
+          return;
+        case "readChar":
+          emit(READ_CHAR, dst);
+          return;
+        case "printBool":
+          emit(PRINT_BOOL, register(params.get(0)));
+          return;
+        case "printInt":
+          emit(PRINT, register(params.get(0)));
+          return;
+        case "printChar":
+          emit(PRINT_CHAR, register(params.get(0)));
+          return;
+        case "println":
+          emit(PRINTLN);
+          return;
+        default:
+          break;
+      }
+
+      emit(CALL, functionIndex.getOrDefault(name, UNKNOWN_FUNCTION), dst, params.size());
+      for (Value param : params) {
+        emit(register(param));
+      }
+    }
+
+    @Override
+    public void visit(UnaryNotInst i) {
+      emit(NOT, register(i.getDst()), register(i.getInner()));
+    }
+  }
+}
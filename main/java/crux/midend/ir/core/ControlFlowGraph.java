@@ -0,0 +1,151 @@
+package crux.midend.ir.core;
+
+import java.util.*;
+
+/**
+ * The basic blocks of a {@link Function}, built from its instruction graph. Blocks are numbered in
+ * reverse postorder starting with the entry block, so every block comes before its successors
+ * unless the edge between them is a back edge of a loop. Instructions that can not be reached from
+ * the start of the function are not part of any block.
+ * <p>
+ * The graph is a snapshot, get it through {@link Function#getControlFlowGraph()} which rebuilds it
+ * after the function or any of the instructions in it has been changed.
+ */
+public final class ControlFlowGraph {
+  private final List<BasicBlock> mBlocks;
+  private final Map<Instruction, BasicBlock> mBlockOf = new HashMap<>();
+  private final int mNumInstructions;
+
+  ControlFlowGraph(Function f) {
+    Instruction start = f.getStart();
+    if (start == null) {
+      mBlocks = List.of();
+      mNumInstructions = 0;
+      return;
+    }
+
+    // Count the edges into every instruction to find the first instruction of every block.
+    Map<Instruction, Integer> numPredecessors = new HashMap<>();
+    Set<Instruction> leaders = new HashSet<>();
+    Deque<Instruction> tovisit = new ArrayDeque<>();
+    numPredecessors.put(start, 1);
+    leaders.add(start);
+    tovisit.push(start);
+    while (!tovisit.isEmpty()) {
+      Instruction inst = tovisit.pop();
+      for (int i = 0; i < inst.numNext(); i++) {
+        Instruction next = inst.getNext(i);
+        if (next == null)
+          continue;
+        if (inst.numNext() > 1)
+          leaders.add(next);
+        if (numPredecessors.merge(next, 1, Integer::sum) == 1)
+          tovisit.push(next);
+      }
+    }
+    for (Map.Entry<Instruction, Integer> entry : numPredecessors.entrySet()) {
+      if (entry.getValue() > 1)
+        leaders.add(entry.getKey());
+    }
+
+    // Collect the blocks in postorder, then reverse them.
+    List<List<Instruction>> postorder = new ArrayList<>();
+    Map<Instruction, Integer> postIndex = new HashMap<>();
+    Set<Instruction> visited = new HashSet<>();
+    Deque<List<Instruction>> stack = new ArrayDeque<>();
+    Deque<Integer> nextEdge = new ArrayDeque<>();
+    stack.push(collectBlock(start, leaders));
+    nextEdge.push(0);
+    visited.add(start);
+    while (!stack.isEmpty()) {
+      List<Instruction> block = stack.peek();
+      Instruction last = block.get(block.size() - 1);
+      int edge = nextEdge.pop();
+      // Visit the true edge of a jump first, so the false edge ends up right after the jump.
+      if (edge < last.numNext()) {
+        nextEdge.push(edge + 1);
+        Instruction next = last.getNext(last.numNext() - 1 - edge);
+        if (next != null && visited.add(next)) {
+          stack.push(collectBlock(next, leaders));
+          nextEdge.push(0);
+        }
+      } else {
+        stack.pop();
+        postIndex.put(block.get(0), postorder.size());
+        postorder.add(block);
+      }
+    }
+
+    BasicBlock[] blocks = new BasicBlock[postorder.size()];
+    int numInstructions = 0;
+    for (int i = 0; i < blocks.length; i++) {
+      List<Instruction> instructions = postorder.get(blocks.length - 1 - i);
+      blocks[i] = new BasicBlock(i, instructions);
+      for (Instruction inst : instructions) {
+        mBlockOf.put(inst, blocks[i]);
+        inst.mFunction = f;
+      }
+      numInstructions += instructions.size();
+    }
+    for (BasicBlock block : blocks) {
+      Instruction last = block.getLast();
+      block.mNext = new BasicBlock[last.numNext()];
+      List<BasicBlock> successors = new ArrayList<>();
+      for (int i = 0; i < last.numNext(); i++) {
+        if (last.getNext(i) == null)
+          continue;
+        BasicBlock next = blocks[blocks.length - 1 - postIndex.get(last.getNext(i))];
+        block.mNext[i] = next;
+        successors.add(next);
+        next.mPredecessors.add(block);
+      }
+      block.mSuccessors = List.copyOf(successors);
+    }
+    for (BasicBlock block : blocks) {
+      block.mPredecessors = List.copyOf(block.mPredecessors);
+    }
+    mBlocks = List.of(blocks);
+    mNumInstructions = numInstructions;
+  }
+
+  private static List<Instruction> collectBlock(Instruction first, Set<Instruction> leaders) {
+    List<Instruction> instructions = new ArrayList<>();
+    Instruction inst = first;
+    while (true) {
+      instructions.add(inst);
+      if (inst.numNext() != 1)
+        break;
+      Instruction next = inst.getNext(0);
+      if (next == null || leaders.contains(next))
+        break;
+      inst = next;
+    }
+    return instructions;
+  }
+
+  public BasicBlock getEntry() {
+    return mBlocks.isEmpty() ? null : mBlocks.get(0);
+  }
+
+  /**
+   * Returns all blocks in reverse postorder, the index of a block is its position in this list.
+   */
+  public List<BasicBlock> getBlocks() {
+    return mBlocks;
+  }
+
+  public int size() {
+    return mBlocks.size();
+  }
+
+  /**
+   * Returns the block containing an instruction, or null if the instruction can not be reached.
+   */
+  public BasicBlock getBlock(Instruction inst) {
+    return mBlockOf.get(inst);
+  }
+
+  public int getNumInstructions() {
+    return mNumInstructions;
+  }
+}
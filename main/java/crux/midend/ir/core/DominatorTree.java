@@ -0,0 +1,121 @@
+package crux.midend.ir.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The dominator tree of a {@link ControlFlowGraph}. A block dominates another block if every path
+ * from the entry to the other block goes through it.
+ * <p>
+ * The immediate dominators are computed with the iterative algorithm of Cooper, Harvey and
+ * Kennedy, which works directly on the reverse postorder numbering of the blocks.
+ */
+public final class DominatorTree {
+  private final ControlFlowGraph mCfg;
+  private final int[] mIdom;
+  private final List<List<BasicBlock>> mChildren = new ArrayList<>();
+  private final List<List<BasicBlock>> mFrontiers = new ArrayList<>();
+
+  public DominatorTree(ControlFlowGraph cfg) {
+    mCfg = cfg;
+    int numBlocks = cfg.size();
+    mIdom = new int[numBlocks];
+    for (int b = 0; b < numBlocks; b++) {
+      mIdom[b] = -1;
+      mChildren.add(new ArrayList<>());
+      mFrontiers.add(new ArrayList<>());
+    }
+    if (numBlocks == 0)
+      return;
+
+    mIdom[0] = 0;
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int b = 1; b < numBlocks; b++) {
+        int idom = -1;
+        for (BasicBlock pred : cfg.getBlocks().get(b).getPredecessors()) {
+          int p = pred.getIndex();
+          if (mIdom[p] == -1)
+            continue;
+          idom = idom == -1 ? p : intersect(p, idom);
+        }
+        if (idom != mIdom[b]) {
+          mIdom[b] = idom;
+          changed = true;
+        }
+      }
+    }
+
+    for (int b = 1; b < numBlocks; b++) {
+      mChildren.get(mIdom[b]).add(cfg.getBlocks().get(b));
+    }
+
+    // A join point is in the frontier of every block on the way up from its predecessors to its
+    // immediate dominator.
+    for (BasicBlock block : cfg.getBlocks()) {
+      if (block.getPredecessors().size() < 2)
+        continue;
+      for (BasicBlock pred : block.getPredecessors()) {
+        int runner = pred.getIndex();
+        while (runner != mIdom[block.getIndex()]) {
+          List<BasicBlock> frontier = mFrontiers.get(runner);
+          if (!frontier.contains(block))
+            frontier.add(block);
+          if (runner == 0)
+            break;
+          runner = mIdom[runner];
+        }
+      }
+    }
+  }
+
+  private int intersect(int a, int b) {
+    while (a != b) {
+      while (a > b) {
+        a = mIdom[a];
+      }
+      while (b > a) {
+        b = mIdom[b];
+      }
+    }
+    return a;
+  }
+
+  /**
+   * Returns the immediate dominator of a block, or null for the entry block.
+   */
+  public BasicBlock getImmediateDominator(BasicBlock block) {
+    if (block.getIndex() == 0)
+      return null;
+    return mCfg.getBlocks().get(mIdom[block.getIndex()]);
+  }
+
+  /**
+   * Returns the blocks whose immediate dominator is the given block.
+   */
+  public List<BasicBlock> getChildren(BasicBlock block) {
+    return Collections.unmodifiableList(mChildren.get(block.getIndex()));
+  }
+
+  /**
+   * Returns whether {@code a} dominates {@code b}. Every block dominates itself.
+   */
+  public boolean dominates(BasicBlock a, BasicBlock b) {
+    int runner = b.getIndex();
+    // Dominators always come first in reverse postorder.
+    while (runner > a.getIndex()) {
+      runner = mIdom[runner];
+    }
+    return runner == a.getIndex();
+  }
+
+  /**
+   * Returns the dominance frontier of a block: the blocks that are not strictly dominated by it but
+   * have a predecessor that is dominated by it.
+   */
+  public List<BasicBlock> getDominanceFrontier(BasicBlock block) {
+    return Collections.unmodifiableList(mFrontiers.get(block.getIndex()));
+  }
+}
@@ -9,14 +9,22 @@ import crux.frontend.types.*;
 public class Emulator {
   HashMap<String, Function> functions = new HashMap<>();
   Stack<CallContext> stack = new Stack<>();
-  HashMap<Long, Long> globalMap = new HashMap<>();
-  HashMap<Symbol, Long> offsetMap = new HashMap<>();
+  GlobalMemory memory;
 
   BufferedReader br;
   PrintStream out;
-  public static boolean DEBUG = false;
+  private final boolean debug;
 
   public Emulator(Program p, InputStream emulatorInput, OutputStream emulatorOutput) {
+    this(p, emulatorInput, emulatorOutput, false);
+  }
+
+  /**
+   * Traces every instruction that is executed to the output as well if {@code debug} is set.
+   */
+  public Emulator(Program p, InputStream emulatorInput, OutputStream emulatorOutput,
+      boolean debug) {
+    this.debug = debug;
     br = new BufferedReader(new InputStreamReader(emulatorInput));
     out = new PrintStream(emulatorOutput);
 
@@ -24,12 +32,7 @@ public class Emulator {
       Function f = func_it.next();
       functions.put(f.getName(), f);
     }
-    long offset = 0;
-    for (Iterator<GlobalDecl> glob_it = p.getGlobals(); glob_it.hasNext();) {
-      GlobalDecl g = glob_it.next();
-      offsetMap.put(g.getSymbol(), offset);
-      offset += ((IntegerConstant) g.getNumElement()).getValue() * 8;
-    }
+    memory = new GlobalMemory(p);
   }
 
   public void run() {
@@ -48,7 +51,7 @@ public class Emulator {
   }
 
   void debug(String msg) {
-    if (DEBUG)
+    if (debug)
       out.println(msg);
   }
 
@@ -73,7 +76,7 @@ public class Emulator {
 
     public void visit(AddressAt i) {
       Symbol base = i.getBase();
-      long address = offsetMap.get(base);
+      long address = memory.getOffset(base);
       Value v = i.getOffset();
       if (v != null) {
         address += 8 * ((Long) localMap.get(v));
@@ -160,11 +163,10 @@ public class Emulator {
     public void visit(LoadInst i) {
       AddressVar var = i.getSrcAddress();
       Long address = (Long) localMap.get(var);
-      Long value = globalMap.get(address);
-      if (value == null) {
+      if (address == null || !memory.isInitialized(address)) {
         out.println("Reading from uninitialized memory");
-        value = Long.valueOf(0);
       }
+      long value = address == null ? 0 : memory.load(address);
 
       Object val;
       if (var.getType() instanceof IntType) {
@@ -191,10 +193,12 @@ public class Emulator {
       Long address = (Long) localMap.get(dst);
       debug("StoreInst: *" + address + "=" + val);
 
-      if (val instanceof Long) {
-        globalMap.put(address, (Long) val);
+      if (address == null) {
+        // An address that was never computed, nothing can read the value back.
+      } else if (val instanceof Long) {
+        memory.store(address, (Long) val);
       } else if (val instanceof Boolean) {
-        globalMap.put(address, ((Boolean) val) ? Long.valueOf(1) : Long.valueOf(0));
+        memory.store(address, ((Boolean) val) ? 1 : 0);
       }
       pc = pc.getNext(0);
     }
@@ -241,7 +245,8 @@ public class Emulator {
           throw new Error("Error in inputting Integer.");
         }
       } else if (fName.equals("printBool")) {
-        out.print(args[0]);
+        // Like the runtime, a bool that was loaded as an int is printed as a bool too.
+        out.print(args[0] instanceof Long ? (Object) ((Long) args[0] != 0) : args[0]);
       } else if (fName.equals("printInt")) {
         out.print(args[0]);
       } else if (fName.equals("printChar")) {
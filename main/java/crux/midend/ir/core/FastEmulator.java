@@ -0,0 +1,312 @@
+package crux.midend.ir.core;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Runs a program like the {@link Emulator}, but compiles every {@link Function} into
+ * {@link Bytecode} first. The values of a function live in a {@code long[]} frame indexed by
+ * register number, so executing an instruction neither hashes nor boxes. The output is the same as
+ * the output of the {@link Emulator}.
+ */
+public final class FastEmulator {
+  private final Bytecode[] functions;
+  private final int main;
+  private final GlobalMemory memory;
+
+  private final BufferedReader br;
+  private final PrintStream out;
+  private final StringBuilder pending = new StringBuilder();
+  private static final int FLUSH_THRESHOLD = 8192;
+
+  public FastEmulator(Program p, InputStream emulatorInput, OutputStream emulatorOutput) {
+    br = new BufferedReader(new InputStreamReader(emulatorInput));
+    out = new PrintStream(emulatorOutput);
+
+    memory = new GlobalMemory(p);
+
+    List<Function> funcs = new ArrayList<>();
+    HashMap<String, Integer> functionIndex = new HashMap<>();
+    for (Iterator<Function> func_it = p.getFunctions(); func_it.hasNext();) {
+      Function f = func_it.next();
+      functionIndex.put(f.getName(), funcs.size());
+      funcs.add(f);
+    }
+
+    functions = new Bytecode[funcs.size()];
+    for (int i = 0; i < functions.length; i++) {
+      functions[i] = Bytecode.compile(funcs.get(i), functionIndex, memory);
+    }
+    main = functionIndex.getOrDefault("main", Bytecode.UNKNOWN_FUNCTION);
+  }
+
+  public void run() {
+    try {
+      execute();
+    } finally {
+      flush();
+    }
+  }
+
+  private static final class Frame {
+    final Bytecode function;
+    final long[] regs;
+    final byte[] tags;
+    final Frame caller;
+    final int returnRegister;
+    int pc;
+
+    Frame(Bytecode function, Frame caller, int returnRegister) {
+      this.function = function;
+      regs = new long[function.numRegisters];
+      tags = new byte[function.numRegisters];
+      this.caller = caller;
+      this.returnRegister = returnRegister;
+    }
+  }
+
+  private void execute() {
+    Frame frame = new Frame(function(main), null, -1);
+    int[] code = frame.function.code;
+    long[] constants = frame.function.constants;
+    long[] regs = frame.regs;
+    byte[] tags = frame.tags;
+    int pc = 0;
+
+    while (true) {
+      switch (code[pc]) {
+        case Bytecode.CONST: {
+          int dst = code[pc + 1];
+          regs[dst] = constants[code[pc + 2]];
+          tags[dst] = (byte) code[pc + 3];
+          pc += 4;
+          break;
+        }
+        case Bytecode.MOVE: {
+          int dst = code[pc + 1], src = code[pc + 2];
+          regs[dst] = regs[src];
+          tags[dst] = tags[src];
+          pc += 3;
+          break;
+        }
+        case Bytecode.ADD:
+          setInt(regs, tags, code[pc + 1], regs[code[pc + 2]] + regs[code[pc + 3]]);
+          pc += 4;
+          break;
+        case Bytecode.SUB:
+          setInt(regs, tags, code[pc + 1], regs[code[pc + 2]] - regs[code[pc + 3]]);
+          pc += 4;
+          break;
+        case Bytecode.MUL:
+          setInt(regs, tags, code[pc + 1], regs[code[pc + 2]] * regs[code[pc + 3]]);
+          pc += 4;
+          break;
+        case Bytecode.DIV:
+          setInt(regs, tags, code[pc + 1], regs[code[pc + 2]] / regs[code[pc + 3]]);
+          pc += 4;
+          break;
+        case Bytecode.GE:
+          setBool(regs, tags, code[pc + 1], regs[code[pc + 2]] >= regs[code[pc + 3]]);
+          pc += 4;
+          break;
+        case Bytecode.GT:
+          setBool(regs, tags, code[pc + 1], regs[code[pc + 2]] > regs[code[pc + 3]]);
+          pc += 4;
+          break;
+        case Bytecode.LE:
+          setBool(regs, tags, code[pc + 1], regs[code[pc + 2]] <= regs[code[pc + 3]]);
+          pc += 4;
+          break;
+        case Bytecode.LT:
+          setBool(regs, tags, code[pc + 1], regs[code[pc + 2]] < regs[code[pc + 3]]);
+          pc += 4;
+          break;
+        case Bytecode.EQ:
+          setBool(regs, tags, code[pc + 1], regs[code[pc + 2]] == regs[code[pc + 3]]);
+          pc += 4;
+          break;
+        case Bytecode.NE:
+          setBool(regs, tags, code[pc + 1], regs[code[pc + 2]] != regs[code[pc + 3]]);
+          pc += 4;
+          break;
+        case Bytecode.NOT:
+          setBool(regs, tags, code[pc + 1], regs[code[pc + 2]] == 0);
+          pc += 3;
+          break;
+        case Bytecode.ADDRESS:
+          setInt(regs, tags, code[pc + 1], constants[code[pc + 2]]);
+          pc += 3;
+          break;
+        case Bytecode.ADDRESS_AT:
+          setInt(regs, tags, code[pc + 1], constants[code[pc + 2]] + 8 * regs[code[pc + 3]]);
+          pc += 4;
+          break;
+        case Bytecode.LOAD: {
+          long address = regs[code[pc + 2]];
+          if (!memory.isInitialized(address))
+            println("Reading from uninitialized memory");
+          long value = memory.load(address);
+          if (code[pc + 3] == Bytecode.INT)
+            setInt(regs, tags, code[pc + 1], value);
+          else
+            setBool(regs, tags, code[pc + 1], value != 0);
+          pc += 4;
+          break;
+        }
+        case Bytecode.STORE: {
+          int src = code[pc + 1];
+          // Storing a value that was never computed leaves the memory untouched.
+          if (tags[src] != Bytecode.UNSET)
+            memory.store(regs[code[pc + 2]], regs[src]);
+          pc += 3;
+          break;
+        }
+        case Bytecode.BRANCH:
+          pc = regs[code[pc + 1]] != 0 ? code[pc + 2] : pc + 3;
+          break;
+        case Bytecode.GOTO:
+          pc = code[pc + 1];
+          break;
+        case Bytecode.CALL: {
+          Bytecode callee = function(code[pc + 1]);
+          Frame next = new Frame(callee, frame, code[pc + 2]);
+          int args = pc + 4;
+          for (int i = 0; i < callee.numArgs; i++) {
+            int src = code[args + i];
+            next.regs[i] = regs[src];
+            next.tags[i] = tags[src];
+          }
+          frame.pc = args + code[pc + 3];
+
+          frame = next;
+          code = callee.code;
+          constants = callee.constants;
+          regs = frame.regs;
+          tags = frame.tags;
+          pc = 0;
+          break;
+        }
+        case Bytecode.READ_INT: {
+          pending.append("int?");
+          flush();
+          long value;
+          try {
+            value = Long.valueOf(br.readLine());
+          } catch (IOException e) {
+            throw new Error("Error in inputting Integer.");
+          }
+          if (code[pc + 1] >= 0)
+            setInt(regs, tags, code[pc + 1], value);
+          pc += 2;
+          break;
+        }
+        case Bytecode.READ_CHAR: {
+          flush();
+          int value;
+          try {
+            value = br.read();
+          } catch (IOException e) {
+            throw new Error("Error in inputting Integer.");
+          }
+          if (value == -1)
+            throw new Error("Reading past end of stream.");
+          if (code[pc + 1] >= 0)
+            setInt(regs, tags, code[pc + 1], value);
+          pc += 2;
+          break;
+        }
+        case Bytecode.PRINT: {
+          int src = code[pc + 1];
+          switch (tags[src]) {
+            case Bytecode.INT:
+              pending.append(regs[src]);
+              break;
+            case Bytecode.BOOL:
+              pending.append(regs[src] != 0);
+              break;
+            default:
+              pending.append("null");
+              break;
+          }
+          pc += 2;
+          break;
+        }
+        case Bytecode.PRINT_BOOL: {
+          // Like the runtime, whatever the value was loaded as.
+          int src = code[pc + 1];
+          pending.append(tags[src] == Bytecode.UNSET ? "null" : regs[src] != 0);
+          pc += 2;
+          break;
+        }
+        case Bytecode.PRINT_CHAR:
+          print((char) regs[code[pc + 1]]);
+          pc += 2;
+          break;
+        case Bytecode.PRINTLN:
+          println("");
+          pc += 1;
+          break;
+        case Bytecode.RETURN:
+        case Bytecode.RETURN_VOID: {
+          Frame caller = frame.caller;
+          if (caller == null)
+            return;
+          int dst = frame.returnRegister;
+          if (code[pc] == Bytecode.RETURN && dst >= 0) {
+            int src = code[pc + 1];
+            caller.regs[dst] = regs[src];
+            caller.tags[dst] = tags[src];
+          }
+
+          frame = caller;
+          code = frame.function.code;
+          constants = frame.function.constants;
+          regs = frame.regs;
+          tags = frame.tags;
+          pc = frame.pc;
+          break;
+        }
+        default:
+          throw new Error("Unknown opcode " + code[pc] + " in " + frame.function.name);
+      }
+    }
+  }
+
+  private Bytecode function(int index) {
+    if (index == Bytecode.UNKNOWN_FUNCTION)
+      throw new Error("Calling a function that does not exist.");
+    return functions[index];
+  }
+
+  private static void setInt(long[] regs, byte[] tags, int dst, long value) {
+    regs[dst] = value;
+    tags[dst] = Bytecode.INT;
+  }
+
+  private static void setBool(long[] regs, byte[] tags, int dst, boolean value) {
+    regs[dst] = value ? 1 : 0;
+    tags[dst] = Bytecode.BOOL;
+  }
+
+  private void println(String s) {
+    pending.append(s).append(System.lineSeparator());
+    if (pending.length() >= FLUSH_THRESHOLD)
+      flush();
+  }
+
+  private void print(char c) {
+    pending.append(c);
+  }
+
+  /**
+   * Output is collected and written in one go, it only has to be flushed before reading input so
+   * prompts show up in order.
+   */
+  private void flush() {
+    if (pending.length() > 0) {
+      out.print(pending);
+      out.flush();
+      pending.setLength(0);
+    }
+  }
+}
@@ -22,6 +22,7 @@ public final class Function implements Formattable {
   private static final int FUNC_FORMAT_INDENT = 2;
   private int mTempVarCounter, mTempAddressVarCounter;
   private Instruction startInstruction;
+  private ControlFlowGraph controlFlowGraph;
 
   public Function(String name, FuncType funcType) {
     mFuncName = name;
@@ -67,6 +68,71 @@ public final class Function implements Formattable {
 
   public void setStart(Instruction inst) {
     startInstruction = inst;
+    invalidateControlFlowGraph();
+  }
+
+  /**
+   * Returns the basic blocks of the function. The graph is built once and kept until the function
+   * or one of the instructions in the graph changes.
+   */
+  public ControlFlowGraph getControlFlowGraph() {
+    if (controlFlowGraph == null)
+      controlFlowGraph = new ControlFlowGraph(this);
+    return controlFlowGraph;
+  }
+
+  /**
+   * Drops the cached {@link ControlFlowGraph}. The setters of the function and of the instructions
+   * in the graph call this themselves. A new instruction only becomes part of the function through
+   * {@link Instruction#setNext} on an instruction that already is.
+   */
+  public void invalidateControlFlowGraph() {
+    controlFlowGraph = null;
+  }
+
+  /**
+   * Returns all instructions that can be reached from the start of the function, in depth-first
+   * order.
+   */
+  public List<Instruction> getInstructions() {
+    List<Instruction> instructions = new ArrayList<>();
+    Set<Instruction> discovered = new HashSet<>();
+    Stack<Instruction> tovisit = new Stack<>();
+    if (startInstruction != null) {
+      tovisit.push(startInstruction);
+      discovered.add(startInstruction);
+    }
+    while (!tovisit.isEmpty()) {
+      Instruction inst = tovisit.pop();
+      instructions.add(inst);
+      for (int i = inst.numNext() - 1; i >= 0; i--) {
+        Instruction next = inst.getNext(i);
+        if (next != null && discovered.add(next))
+          tovisit.push(next);
+      }
+    }
+    return instructions;
+  }
+
+  /**
+   * Redirects every edge to an instruction in the map to its replacement. The replacements must
+   * already be connected to their successors.
+   */
+  public void replaceInstructions(Map<Instruction, Instruction> replacements) {
+    if (replacements.isEmpty())
+      return;
+    List<Instruction> instructions = getInstructions();
+    instructions.addAll(replacements.values());
+    for (Instruction inst : instructions) {
+      for (int i = 0; i < inst.numNext(); i++) {
+        Instruction next = inst.getNext(i);
+        if (replacements.containsKey(next))
+          inst.setNext(i, replacements.get(next));
+      }
+    }
+    if (replacements.containsKey(startInstruction))
+      startInstruction = replacements.get(startInstruction);
+    invalidateControlFlowGraph();
   }
 
   @Override
@@ -0,0 +1,83 @@
+package crux.midend.ir.core;
+
+import crux.frontend.Symbol;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * The global memory of an emulated program. All {@link GlobalDecl}s are laid out one after the
+ * other in a single {@code long[]}, so loads and stores neither hash nor box. Addresses are byte
+ * addresses like in the generated assembly, every word is 8 bytes wide.
+ * <p>
+ * A bitmap remembers which words have been written, so that reading memory that was never
+ * initialized can still be reported. Accesses outside of the declared globals (e.g. an array index
+ * out of bounds) are kept in a map on the side, they behave exactly like accesses inside. So are
+ * the words past the first {@link #MAX_ARRAY_WORDS}, a program with huge arrays only uses memory for
+ * the words it writes.
+ */
+public final class GlobalMemory {
+  static final int MAX_ARRAY_WORDS = 1 << 22;
+
+  // Globals are found by name like in the assembly, so functions lowered from an earlier AST of the
+  // same program find them too.
+  private final HashMap<String, Long> offsets = new HashMap<>();
+  private final long[] words;
+  private final long[] initialized;
+  private final HashMap<Long, Long> outside = new HashMap<>();
+
+  public GlobalMemory(Program p) {
+    long offset = 0;
+    for (Iterator<GlobalDecl> glob_it = p.getGlobals(); glob_it.hasNext();) {
+      GlobalDecl g = glob_it.next();
+      offsets.put(g.getSymbol().getName(), offset);
+      offset += ((IntegerConstant) g.getNumElement()).getValue() * 8;
+    }
+    words = new long[(int) Math.min(offset / 8, MAX_ARRAY_WORDS)];
+    initialized = new long[(words.length + 63) / 64];
+  }
+
+  /**
+   * Returns the address of the first word of a global.
+   */
+  public long getOffset(Symbol global) {
+    return offsets.get(global.getName());
+  }
+
+  public boolean isInitialized(long address) {
+    int index = index(address);
+    if (index < 0)
+      return outside.containsKey(address);
+    return (initialized[index >>> 6] & (1L << index)) != 0;
+  }
+
+  /**
+   * Reads the word at an address, memory that was never written reads as 0.
+   */
+  public long load(long address) {
+    int index = index(address);
+    if (index < 0)
+      return outside.getOrDefault(address, 0L);
+    return words[index];
+  }
+
+  public void store(long address, long value) {
+    int index = index(address);
+    if (index < 0) {
+      outside.put(address, value);
+    } else {
+      words[index] = value;
+      initialized[index >>> 6] |= 1L << index;
+    }
+  }
+
+  /**
+   * Returns the index of the word at an address, or -1 if it lies outside of the array or is not
+   * aligned to a word.
+   */
+  private int index(long address) {
+    if (address < 0 || (address & 7) != 0 || (address >>> 3) >= words.length)
+      return -1;
+    return (int) (address >>> 3);
+  }
+}
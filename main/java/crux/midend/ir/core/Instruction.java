@@ -2,6 +2,7 @@ package crux.midend.ir.core;
 
 import crux.midend.ir.Formattable;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
 import crux.midend.ir.core.insts.InstVisitor;
@@ -16,6 +17,9 @@ public abstract class Instruction implements Formattable {
   protected Variable mDestVar;
   protected List<Value> mOperands;
   protected Vector<Instruction> next;
+  // The function whose control flow graph was last built with this instruction, which is dropped
+  // whenever the instruction changes.
+  Function mFunction;
 
   protected Instruction(Variable destVar, List<Value> operands) {
     mDestVar = destVar;
@@ -31,6 +35,39 @@ public abstract class Instruction implements Formattable {
 
   public abstract void accept(InstVisitor v);
 
+  /**
+   * Returns the variable written by this instruction, or null if it does not write one.
+   */
+  public Variable getDestVar() {
+    return mDestVar;
+  }
+
+  /**
+   * Returns the values read by this instruction.
+   */
+  public List<Value> getOperands() {
+    return mOperands;
+  }
+
+  /**
+   * Replaces the variable written by this instruction, which must be of the same kind. Used to
+   * rename variables, e.g. when converting to SSA form.
+   */
+  public void setDestVar(Variable destVar) {
+    mDestVar = destVar;
+    changed();
+  }
+
+  /**
+   * Replaces the i-th value read by this instruction, which must be of the same kind.
+   */
+  public void setOperand(int i, Value value) {
+    var operands = new ArrayList<>(mOperands);
+    operands.set(i, value);
+    mOperands = List.copyOf(operands);
+    changed();
+  }
+
   public Instruction getNext(int i) {
     if (i >= numNext())
       return null;
@@ -46,5 +83,11 @@ public abstract class Instruction implements Formattable {
     if (next.size() <= i)
       next.setSize(i + 1);
     next.set(i, inst);
+    changed();
+  }
+
+  private void changed() {
+    if (mFunction != null)
+      mFunction.invalidateControlFlowGraph();
   }
 }
@@ -2,17 +2,27 @@ package crux.midend.ir.core;
 
 import crux.frontend.types.IntType;
 
-import java.util.HashMap;
-
 /**
  * A constant integer, e.g. an array offset (like the 2 in a[2]). This is equivalent to
  * {@link crux.frontend.ast.LiteralInt}.
  */
 public final class IntegerConstant extends Constant {
-  private long mValue;
+  // The integers most literals, offsets and extents are made of, shared by every program.
+  private static final int SMALL_MIN = -128;
+  private static final int SMALL_MAX = 1023;
+  private static final IntegerConstant[] SMALL_CONSTANTS =
+      new IntegerConstant[SMALL_MAX - SMALL_MIN + 1];
+
+  static {
+    for (int i = 0; i < SMALL_CONSTANTS.length; i++) {
+      SMALL_CONSTANTS[i] = new IntegerConstant(SMALL_MIN + i);
+    }
+  }
+
+  private final long mValue;
 
-  private IntegerConstant(Program ctx, long val) {
-    super(new IntType());
+  private IntegerConstant(long val) {
+    super(IntType.INSTANCE);
     mValue = val;
   }
 
@@ -20,8 +30,12 @@ public final class IntegerConstant extends Constant {
     return mValue;
   }
 
+  /**
+   * Returns the constant of a value, the same object every time for the same program.
+   */
   public static IntegerConstant get(Program ctx, long value) {
-    var currentMap = mIntConstantPool.computeIfAbsent(ctx, p -> new HashMap<>());
-    return currentMap.computeIfAbsent(value, p -> new IntegerConstant(ctx, value));
+    if (value >= SMALL_MIN && value <= SMALL_MAX)
+      return SMALL_CONSTANTS[(int) value - SMALL_MIN];
+    return ctx.getIntConstants().computeIfAbsent(value, IntegerConstant::new);
   }
 }
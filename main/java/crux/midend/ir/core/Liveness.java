@@ -0,0 +1,92 @@
+package crux.midend.ir.core;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The variables that are live at the end of every basic block, i.e. whose value may still be read
+ * on some path before it is written again. Used by the optimizations and the register allocator.
+ */
+public final class Liveness {
+  private final Map<Variable, Integer> index = new HashMap<>();
+  private final List<Variable> variables = new ArrayList<>();
+  private final BitSet[] liveIn;
+  private final BitSet[] liveOut;
+
+  public Liveness(ControlFlowGraph cfg) {
+    int numBlocks = cfg.size();
+    BitSet[] use = new BitSet[numBlocks];
+    BitSet[] def = new BitSet[numBlocks];
+    for (BasicBlock block : cfg.getBlocks()) {
+      BitSet blockUse = new BitSet();
+      BitSet blockDef = new BitSet();
+      List<Instruction> instructions = block.getInstructions();
+      for (int k = instructions.size() - 1; k >= 0; k--) {
+        Instruction inst = instructions.get(k);
+        if (inst.getDestVar() != null) {
+          blockDef.set(indexOf(inst.getDestVar()));
+          blockUse.clear(indexOf(inst.getDestVar()));
+        }
+        for (Value v : inst.getOperands()) {
+          if (v instanceof Variable)
+            blockUse.set(indexOf((Variable) v));
+        }
+      }
+      use[block.getIndex()] = blockUse;
+      def[block.getIndex()] = blockDef;
+    }
+
+    liveIn = new BitSet[numBlocks];
+    liveOut = new BitSet[numBlocks];
+    for (int b = 0; b < numBlocks; b++) {
+      liveIn[b] = new BitSet();
+      liveOut[b] = new BitSet();
+    }
+    // Going through the blocks backwards visits most successors before their predecessors.
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int b = numBlocks - 1; b >= 0; b--) {
+        BitSet out = liveOut[b];
+        for (BasicBlock next : cfg.getBlocks().get(b).getSuccessors()) {
+          out.or(liveIn[next.getIndex()]);
+        }
+        BitSet in = (BitSet) out.clone();
+        in.andNot(def[b]);
+        in.or(use[b]);
+        if (!in.equals(liveIn[b])) {
+          liveIn[b] = in;
+          changed = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of a variable in the bit sets of this analysis.
+   */
+  public int indexOf(Variable v) {
+    return index.computeIfAbsent(v, k -> {
+      variables.add(k);
+      return index.size();
+    });
+  }
+
+  /**
+   * Returns the variable with a number, see {@link #indexOf(Variable)}.
+   */
+  public Variable getVariable(int index) {
+    return variables.get(index);
+  }
+
+  public BitSet getLiveIn(BasicBlock block) {
+    return liveIn[block.getIndex()];
+  }
+
+  public BitSet getLiveOut(BasicBlock block) {
+    return liveOut[block.getIndex()];
+  }
+}
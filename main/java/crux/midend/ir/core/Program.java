@@ -5,6 +5,8 @@ import crux.midend.ir.Formattable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -13,6 +15,8 @@ import java.util.Iterator;
 public final class Program implements Formattable {
   private List<Function> mFunctions;
   private List<GlobalDecl> mGlobalVars;
+  // The integer constants of the program, except the small ones, see IntegerConstant.get.
+  private final Map<Long, IntegerConstant> mIntConstants = new ConcurrentHashMap<>();
 
   private static final int PROGRAM_FORMAT_INDENT = 2;
 
@@ -37,6 +41,10 @@ public final class Program implements Formattable {
     return mFunctions.iterator();
   }
 
+  Map<Long, IntegerConstant> getIntConstants() {
+    return mIntConstants;
+  }
+
   @Override
   public String format(java.util.function.Function<Value, String> valueFormatter) {
     var builder = new StringBuilder();
@@ -22,4 +22,6 @@ public abstract class InstVisitor {
   public void visit(CallInst i) {}
 
   public void visit(ReturnInst i) {}
+
+  public void visit(PhiInst i) {}
 }
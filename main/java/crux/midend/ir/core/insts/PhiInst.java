@@ -0,0 +1,73 @@
+package crux.midend.ir.core.insts;
+
+import crux.midend.ir.core.Instruction;
+import crux.midend.ir.core.LocalVar;
+import crux.midend.ir.core.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Selects the value that flows in over the edge by which its basic block was entered. Phi
+ * instructions only exist while a function is in SSA form, they are at the start of a basic block
+ * and have one operand for every edge in to the block.
+ * <p>
+ * The edge of an operand is identified by the last instruction of the predecessor block it comes
+ * from. A jump whose both edges lead to the block appears twice, with the same value.
+ * <p>
+ * Operation (pseudo-code): {@code destVar = sources[i]}, if the block was entered from
+ * {@code predecessors[i]}
+ */
+public final class PhiInst extends Instruction {
+  private final List<Instruction> mPredecessors;
+
+  public PhiInst(LocalVar destVar, List<Value> sources, List<Instruction> predecessors) {
+    super(destVar, sources);
+    mPredecessors = new ArrayList<>(predecessors);
+  }
+
+  public LocalVar getDstVar() {
+    return (LocalVar) mDestVar;
+  }
+
+  public int numIncoming() {
+    return mOperands.size();
+  }
+
+  public Value getIncomingValue(int i) {
+    return mOperands.get(i);
+  }
+
+  /**
+   * Returns the last instruction of the predecessor block the i-th operand comes from.
+   */
+  public Instruction getPredecessor(int i) {
+    return mPredecessors.get(i);
+  }
+
+  /**
+   * Sets the value flowing in from a predecessor, for every edge from that predecessor.
+   */
+  public void setIncomingValue(Instruction predecessor, Value value) {
+    for (int i = 0; i < mPredecessors.size(); i++) {
+      if (mPredecessors.get(i) == predecessor)
+        setOperand(i, value);
+    }
+  }
+
+  @Override
+  public void accept(InstVisitor v) {
+    v.visit(this);
+  }
+
+  @Override
+  public String format(Function<Value, String> valueFormatter) {
+    List<String> sources = new ArrayList<>();
+    for (Value source : mOperands) {
+      sources.add(valueFormatter.apply(source));
+    }
+    var dest = valueFormatter.apply(mDestVar);
+    return String.format("%s = phi(%s)", dest, String.join(", ", sources));
+  }
+}
@@ -0,0 +1,212 @@
+package crux.midend.opt;
+
+import crux.midend.ir.core.*;
+import crux.midend.ir.core.insts.*;
+
+import java.util.*;
+
+/**
+ * Finds the variables that hold the same constant on every path reaching an instruction, and
+ * replaces every computation with constant operands by a copy of its result. Conditional jumps on
+ * a constant predicate become a nop leading to the taken successor, so code behind the other edge
+ * is never looked at and disappears from the function.
+ * <p>
+ * Division by zero is never folded, the program still fails when it runs. Variables that are read
+ * before they are ever written are not treated as constants either.
+ */
+public final class ConstantFolding extends InstVisitor implements Pass {
+  private Program program;
+  // The constants known before the instruction that is visited, updated to after it.
+  private Map<Variable, Constant> state;
+  private Constant result;
+
+  @Override
+  public String getName() {
+    return "constant-folding";
+  }
+
+  @Override
+  public int run(Program p, Function f) {
+    program = p;
+    ControlFlowGraph cfg = f.getControlFlowGraph();
+    List<Map<Variable, Constant>> in = analyze(cfg);
+
+    Map<Instruction, Instruction> replacements = new HashMap<>();
+    for (BasicBlock block : cfg.getBlocks()) {
+      if (in.get(block.getIndex()) == null)
+        continue;
+      state = new HashMap<>(in.get(block.getIndex()));
+      for (Instruction inst : block.getInstructions()) {
+        Instruction replacement = fold(inst);
+        if (replacement != null)
+          replacements.put(inst, replacement);
+        transfer(inst);
+      }
+    }
+    f.replaceInstructions(replacements);
+    program = null;
+    state = null;
+    return replacements.size();
+  }
+
+  /**
+   * Computes the constants known at the start of every block, indexed by block. Blocks that can not
+   * be reached because of a constant jump have no entry.
+   */
+  private List<Map<Variable, Constant>> analyze(ControlFlowGraph cfg) {
+    List<Map<Variable, Constant>> in = new ArrayList<>(Collections.nCopies(cfg.size(), null));
+    Deque<BasicBlock> worklist = new ArrayDeque<>();
+    if (cfg.getEntry() == null)
+      return in;
+    in.set(0, new HashMap<>());
+    worklist.push(cfg.getEntry());
+
+    while (!worklist.isEmpty()) {
+      BasicBlock block = worklist.pop();
+      state = new HashMap<>(in.get(block.getIndex()));
+      for (Instruction inst : block.getInstructions()) {
+        transfer(inst);
+      }
+      for (BasicBlock next : successors(block)) {
+        Map<Variable, Constant> known = in.get(next.getIndex());
+        if (known == null) {
+          in.set(next.getIndex(), new HashMap<>(state));
+          worklist.push(next);
+        } else if (known.entrySet().retainAll(state.entrySet())) {
+          worklist.push(next);
+        }
+      }
+    }
+    return in;
+  }
+
+  /**
+   * Updates the state with the variable written by an instruction.
+   */
+  private void transfer(Instruction inst) {
+    result = null;
+    inst.accept(this);
+    Variable dst = inst.getDestVar();
+    if (dst == null)
+      return;
+    if (result != null)
+      state.put(dst, result);
+    else
+      state.remove(dst);
+  }
+
+  private List<BasicBlock> successors(BasicBlock block) {
+    Instruction last = block.getLast();
+    if (last instanceof JumpInst) {
+      Constant predicate = state.get(((JumpInst) last).getPredicate());
+      if (predicate != null) {
+        BasicBlock taken = block.getNext(((BooleanConstant) predicate).getValue() ? 1 : 0);
+        return taken != null ? List.of(taken) : List.of();
+      }
+    }
+    return block.getSuccessors();
+  }
+
+  /**
+   * Returns the instruction that replaces an instruction, or null if it stays.
+   */
+  private Instruction fold(Instruction inst) {
+    if (inst instanceof JumpInst) {
+      Constant predicate = state.get(((JumpInst) inst).getPredicate());
+      if (predicate == null)
+        return null;
+      var nop = new NopInst();
+      Instruction taken = inst.getNext(((BooleanConstant) predicate).getValue() ? 1 : 0);
+      if (taken != null)
+        nop.setNext(0, taken);
+      return nop;
+    }
+
+    result = null;
+    inst.accept(this);
+    if (result == null)
+      return null;
+    if (inst instanceof CopyInst && ((CopyInst) inst).getSrcValue() instanceof Constant)
+      return null;
+
+    var copy = new CopyInst((LocalVar) inst.getDestVar(), result);
+    copy.setNext(0, inst.getNext(0));
+    return copy;
+  }
+
+  private Long intValue(Value v) {
+    Constant c = v instanceof Constant ? (Constant) v : state.get(v);
+    return c instanceof IntegerConstant ? ((IntegerConstant) c).getValue() : null;
+  }
+
+  private Boolean boolValue(Value v) {
+    Constant c = v instanceof Constant ? (Constant) v : state.get(v);
+    return c instanceof BooleanConstant ? ((BooleanConstant) c).getValue() : null;
+  }
+
+  @Override
+  public void visit(BinaryOperator i) {
+    Long lhs = intValue(i.getLeftOperand());
+    Long rhs = intValue(i.getRightOperand());
+    if (lhs == null || rhs == null)
+      return;
+    switch (i.getOperator()) {
+      case Add:
+        result = IntegerConstant.get(program, lhs + rhs);
+        break;
+      case Sub:
+        result = IntegerConstant.get(program, lhs - rhs);
+        break;
+      case Mul:
+        result = IntegerConstant.get(program, lhs * rhs);
+        break;
+      case Div:
+        if (rhs != 0)
+          result = IntegerConstant.get(program, lhs / rhs);
+        break;
+    }
+  }
+
+  @Override
+  public void visit(CompareInst i) {
+    Long lhs = intValue(i.getLeftOperand());
+    Long rhs = intValue(i.getRightOperand());
+    if (lhs == null || rhs == null)
+      return;
+    boolean value = false;
+    switch (i.getPredicate()) {
+      case GE:
+        value = lhs >= rhs;
+        break;
+      case GT:
+        value = lhs > rhs;
+        break;
+      case LE:
+        value = lhs <= rhs;
+        break;
+      case LT:
+        value = lhs < rhs;
+        break;
+      case EQ:
+        value = lhs.longValue() == rhs.longValue();
+        break;
+      case NE:
+        value = lhs.longValue() != rhs.longValue();
+        break;
+    }
+    result = BooleanConstant.get(program, value);
+  }
+
+  @Override
+  public void visit(CopyInst i) {
+    Value src = i.getSrcValue();
+    result = src instanceof Constant ? (Constant) src : state.get(src);
+  }
+
+  @Override
+  public void visit(UnaryNotInst i) {
+    Boolean inner = boolValue(i.getInner());
+    if (inner != null)
+      result = BooleanConstant.get(program, !inner);
+  }
+}
@@ -0,0 +1,120 @@
+package crux.midend.opt;
+
+import crux.midend.ir.core.*;
+import crux.midend.ir.core.insts.*;
+
+import java.util.*;
+
+/**
+ * Removes instructions that have no effect on the program:
+ * <ul>
+ * <li>instructions without side effects whose result is never read,</li>
+ * <li>nops, except a nop that ends the function or spins in an empty loop,</li>
+ * <li>jumps whose both edges lead to the same instruction.</li>
+ * </ul>
+ * Instructions that can not be reached from the start of the function are dropped along the way,
+ * since nothing points to them anymore. Removing an instruction can make the instructions feeding it
+ * dead as well, so the pass repeats until nothing changes.
+ * <p>
+ * Loads count as free of side effects, so a dead load of uninitialized memory no longer makes the
+ * emulator warn about it. Likewise a division whose result is never read is removed even if it
+ * would divide by zero.
+ */
+public final class DeadCodeElimination implements Pass {
+  @Override
+  public String getName() {
+    return "dead-code-elimination";
+  }
+
+  @Override
+  public int run(Program p, Function f) {
+    int removed = 0;
+    while (true) {
+      Map<Instruction, Instruction> bypass = findDeadInstructions(f);
+      Map<Instruction, Instruction> resolved = resolve(bypass);
+      if (resolved.isEmpty())
+        return removed;
+      removed += resolved.size();
+      f.replaceInstructions(resolved);
+    }
+  }
+
+  /**
+   * Maps every instruction that can be removed to the instruction that takes its place, which is
+   * its successor. An instruction that ends the function is replaced by a nop instead.
+   */
+  private Map<Instruction, Instruction> findDeadInstructions(Function f) {
+    ControlFlowGraph cfg = f.getControlFlowGraph();
+    Liveness liveness = new Liveness(cfg);
+    Map<Instruction, Instruction> bypass = new HashMap<>();
+
+    for (BasicBlock block : cfg.getBlocks()) {
+      BitSet live = (BitSet) liveness.getLiveOut(block).clone();
+      List<Instruction> instructions = block.getInstructions();
+      for (int k = instructions.size() - 1; k >= 0; k--) {
+        Instruction inst = instructions.get(k);
+        Variable dst = inst.getDestVar();
+
+        if (inst instanceof NopInst) {
+          if (inst.getNext(0) != null && inst.getNext(0) != inst)
+            bypass.put(inst, inst.getNext(0));
+          continue;
+        }
+        if (inst instanceof JumpInst && inst.getNext(0) == inst.getNext(1)) {
+          var nop = new NopInst();
+          if (inst.getNext(0) != null)
+            nop.setNext(0, inst.getNext(0));
+          bypass.put(inst, nop);
+          continue;
+        }
+        if (dst != null && !live.get(liveness.indexOf(dst)) && isPure(inst)) {
+          bypass.put(inst, inst.getNext(0) != null ? inst.getNext(0) : new NopInst());
+          continue;
+        }
+
+        if (dst != null)
+          live.clear(liveness.indexOf(dst));
+        for (Value v : inst.getOperands()) {
+          if (v instanceof Variable)
+            live.set(liveness.indexOf((Variable) v));
+        }
+      }
+    }
+    return bypass;
+  }
+
+  private static boolean isPure(Instruction inst) {
+    return inst instanceof CopyInst || inst instanceof BinaryOperator
+        || inst instanceof CompareInst || inst instanceof UnaryNotInst
+        || inst instanceof AddressAt || inst instanceof LoadInst;
+  }
+
+  /**
+   * Follows chains of removed instructions to the first instruction that stays. A cycle made only
+   * of removed instructions is an empty infinite loop, it becomes a single nop jumping to itself.
+   */
+  private static Map<Instruction, Instruction> resolve(Map<Instruction, Instruction> bypass) {
+    for (Instruction inst : new ArrayList<>(bypass.keySet())) {
+      Set<Instruction> chain = new HashSet<>();
+      Instruction target = inst;
+      while (bypass.containsKey(target) && chain.add(target)) {
+        target = bypass.get(target);
+      }
+      if (bypass.containsKey(target)) {
+        var spin = new NopInst();
+        spin.setNext(0, spin);
+        bypass.put(target, spin);
+      }
+    }
+
+    Map<Instruction, Instruction> resolved = new HashMap<>();
+    for (Instruction inst : bypass.keySet()) {
+      Instruction target = bypass.get(inst);
+      while (bypass.containsKey(target)) {
+        target = bypass.get(target);
+      }
+      resolved.put(inst, target);
+    }
+    return resolved;
+  }
+}
@@ -0,0 +1,21 @@
+package crux.midend.opt;
+
+import crux.midend.ir.core.Function;
+import crux.midend.ir.core.Program;
+
+/**
+ * A transformation of the IR of a single function. Passes are run by the {@link PassManager}.
+ */
+public interface Pass {
+  /**
+   * Returns the name under which the pass is reported.
+   */
+  String getName();
+
+  /**
+   * Transforms a function of a program.
+   *
+   * @return the number of instructions that were replaced or removed.
+   */
+  int run(Program p, Function f);
+}
@@ -0,0 +1,71 @@
+package crux.midend.opt;
+
+import crux.midend.ir.core.Function;
+import crux.midend.ir.core.Program;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Runs a sequence of {@link Pass}es over every function of a program and keeps track of how the
+ * number of instructions changes with every pass.
+ */
+public final class PassManager {
+  private final List<Pass> passes = new ArrayList<>();
+  private final List<String> report = new ArrayList<>();
+
+  /**
+   * Returns the passes that make up an optimization level, {@code -O0} runs no passes at all.
+   */
+  public static PassManager forLevel(int level) {
+    var manager = new PassManager();
+    if (level >= 1) {
+      manager.add(new ConstantFolding());
+      manager.add(new DeadCodeElimination());
+    }
+    return manager;
+  }
+
+  public void add(Pass pass) {
+    passes.add(pass);
+  }
+
+  public void run(Program p) {
+    run(p, f -> true);
+  }
+
+  /**
+   * Runs the passes over the functions for which {@code include} holds, the others are left alone.
+   */
+  public void run(Program p, Predicate<Function> include) {
+    for (Pass pass : passes) {
+      int before = countInstructions(p);
+      int changed = 0;
+      for (Iterator<Function> func_it = p.getFunctions(); func_it.hasNext();) {
+        Function f = func_it.next();
+        if (include.test(f))
+          changed += pass.run(p, f);
+      }
+      int after = countInstructions(p);
+      report.add(String.format("%s: %d -> %d instructions (%d changed)", pass.getName(), before,
+          after, changed));
+    }
+  }
+
+  public void printReport(PrintStream out) {
+    for (String line : report) {
+      out.println(line);
+    }
+  }
+
+  public static int countInstructions(Program p) {
+    int count = 0;
+    for (Iterator<Function> func_it = p.getFunctions(); func_it.hasNext();) {
+      count += func_it.next().getControlFlowGraph().getNumInstructions();
+    }
+    return count;
+  }
+}
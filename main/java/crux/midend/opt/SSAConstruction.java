@@ -0,0 +1,198 @@
+package crux.midend.opt;
+
+import crux.frontend.types.BoolType;
+import crux.midend.ir.core.*;
+import crux.midend.ir.core.insts.*;
+
+import java.util.*;
+
+/**
+ * Converts a function to SSA form, in which every {@link LocalVar} is written by exactly one
+ * instruction.
+ * <p>
+ * Phi instructions are placed at the iterated dominance frontier of the blocks writing a variable,
+ * but only where the variable is live, so no phi is created for a temporary that dies in its block.
+ * Afterwards every write creates a new version of the variable, and every read is renamed to the
+ * version that reaches it, walking the dominator tree. A read that no write reaches keeps the
+ * original variable, just like arguments do until they are written. A phi operand that no write
+ * reaches is an argument as well, or else zero: the original variable would be read after the phi
+ * is destroyed, on a path where the code generator cannot tell that it is undefined.
+ * <p>
+ * {@link SSADestruction} converts the function back before the code is run or compiled.
+ */
+public final class SSAConstruction implements Pass {
+  private final Map<PhiInst, LocalVar> phiVars = new HashMap<>();
+  private final Map<LocalVar, Deque<LocalVar>> versions = new HashMap<>();
+
+  @Override
+  public String getName() {
+    return "ssa-construction";
+  }
+
+  @Override
+  public int run(Program p, Function f) {
+    if (f.getStart() == null)
+      return 0;
+    // Phis need an entry block that is not the target of a loop.
+    if (!f.getControlFlowGraph().getEntry().getPredecessors().isEmpty()) {
+      var entry = new NopInst();
+      entry.setNext(0, f.getStart());
+      f.setStart(entry);
+    }
+
+    int numPhis = insertPhis(f);
+    rename(p, f);
+    phiVars.clear();
+    versions.clear();
+    return numPhis;
+  }
+
+  private int insertPhis(Function f) {
+    ControlFlowGraph cfg = f.getControlFlowGraph();
+    DominatorTree dominators = new DominatorTree(cfg);
+    Liveness liveness = new Liveness(cfg);
+
+    Map<LocalVar, Set<BasicBlock>> writes = new LinkedHashMap<>();
+    for (BasicBlock block : cfg.getBlocks()) {
+      for (Instruction inst : block.getInstructions()) {
+        if (inst.getDestVar() instanceof LocalVar)
+          writes.computeIfAbsent((LocalVar) inst.getDestVar(), k -> new HashSet<>()).add(block);
+      }
+    }
+
+    List<List<LocalVar>> phisOf = new ArrayList<>();
+    for (int b = 0; b < cfg.size(); b++) {
+      phisOf.add(new ArrayList<>());
+    }
+    for (Map.Entry<LocalVar, Set<BasicBlock>> entry : writes.entrySet()) {
+      LocalVar var = entry.getKey();
+      Deque<BasicBlock> worklist = new ArrayDeque<>(entry.getValue());
+      Set<BasicBlock> hasPhi = new HashSet<>();
+      while (!worklist.isEmpty()) {
+        BasicBlock block = worklist.pop();
+        for (BasicBlock join : dominators.getDominanceFrontier(block)) {
+          if (!liveness.getLiveIn(join).get(liveness.indexOf(var)) || !hasPhi.add(join))
+            continue;
+          phisOf.get(join.getIndex()).add(var);
+          if (!entry.getValue().contains(join))
+            worklist.push(join);
+        }
+      }
+    }
+
+    int numPhis = 0;
+    for (BasicBlock block : cfg.getBlocks()) {
+      List<LocalVar> vars = phisOf.get(block.getIndex());
+      if (vars.isEmpty())
+        continue;
+      List<Instruction> predecessors = new ArrayList<>();
+      for (BasicBlock pred : block.getPredecessors()) {
+        predecessors.add(pred.getLast());
+      }
+
+      Instruction leader = block.getFirst();
+      Instruction first = leader;
+      for (int k = vars.size() - 1; k >= 0; k--) {
+        LocalVar var = vars.get(k);
+        var phi = new PhiInst(var, Collections.nCopies(predecessors.size(), var), predecessors);
+        phi.setNext(0, first);
+        phiVars.put(phi, var);
+        first = phi;
+      }
+      for (Instruction pred : new HashSet<>(predecessors)) {
+        for (int i = 0; i < pred.numNext(); i++) {
+          if (pred.getNext(i) == leader)
+            pred.setNext(i, first);
+        }
+      }
+      numPhis += vars.size();
+    }
+    return numPhis;
+  }
+
+  /**
+   * Renames the variables in a preorder walk of the dominator tree, so the version of a variable
+   * that is on top of its stack is the one that reaches the instruction that is renamed.
+   */
+  private void rename(Program p, Function f) {
+    ControlFlowGraph cfg = f.getControlFlowGraph();
+    DominatorTree dominators = new DominatorTree(cfg);
+    Map<BasicBlock, List<LocalVar>> written = new HashMap<>();
+    Deque<BasicBlock> stack = new ArrayDeque<>();
+    stack.push(cfg.getEntry());
+
+    while (!stack.isEmpty()) {
+      BasicBlock block = stack.peek();
+      if (written.containsKey(block)) {
+        // All blocks dominated by this one are done, forget the versions written here.
+        stack.pop();
+        for (LocalVar var : written.get(block)) {
+          versions.get(var).pop();
+        }
+        continue;
+      }
+
+      List<LocalVar> vars = new ArrayList<>();
+      written.put(block, vars);
+      for (Instruction inst : block.getInstructions()) {
+        if (!(inst instanceof PhiInst)) {
+          List<Value> operands = inst.getOperands();
+          for (int i = 0; i < operands.size(); i++) {
+            if (operands.get(i) instanceof LocalVar)
+              inst.setOperand(i, current((LocalVar) operands.get(i)));
+          }
+        }
+        if (inst.getDestVar() instanceof LocalVar) {
+          var var = (LocalVar) inst.getDestVar();
+          LocalVar version = newVersion(f, var);
+          inst.setDestVar(version);
+          versions.computeIfAbsent(var, k -> new ArrayDeque<>()).push(version);
+          vars.add(var);
+        }
+      }
+
+      Instruction last = block.getLast();
+      for (BasicBlock next : new LinkedHashSet<>(block.getSuccessors())) {
+        for (Instruction inst : next.getInstructions()) {
+          if (!(inst instanceof PhiInst))
+            break;
+          var phi = (PhiInst) inst;
+          phi.setIncomingValue(last, incoming(p, f, phiVars.get(phi)));
+        }
+      }
+
+      for (BasicBlock child : dominators.getChildren(block)) {
+        stack.push(child);
+      }
+    }
+  }
+
+  /**
+   * Returns the version of a variable that is visible at the current point of the renaming, or the
+   * variable itself if it has not been written yet.
+   */
+  private LocalVar current(LocalVar var) {
+    Deque<LocalVar> stack = versions.get(var);
+    return stack == null || stack.isEmpty() ? var : stack.peek();
+  }
+
+  /**
+   * Returns the value of a variable that flows in to a phi over the current edge, zero if the
+   * variable is neither written on the way nor an argument.
+   */
+  private Value incoming(Program p, Function f, LocalVar var) {
+    LocalVar version = current(var);
+    if (version != var || f.getArguments().contains(var))
+      return version;
+    if (var.getType() instanceof BoolType)
+      return BooleanConstant.get(p, false);
+    return IntegerConstant.get(p, 0);
+  }
+
+  private static LocalVar newVersion(Function f, LocalVar var) {
+    String name = var.getName().startsWith("$") ? var.getName().substring(1) : var.getName();
+    if (name.isEmpty())
+      return f.getTempVar(var.getType());
+    return f.getTempVar(var.getType(), name + ".");
+  }
+}
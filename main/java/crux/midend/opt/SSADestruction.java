@@ -0,0 +1,74 @@
+package crux.midend.opt;
+
+import crux.midend.ir.core.*;
+import crux.midend.ir.core.insts.*;
+
+import java.util.*;
+
+/**
+ * Converts a function out of SSA form by replacing its phi instructions with copies.
+ * <p>
+ * Every phi gets a new temporary. On every edge in to the block of the phi a copy of the incoming
+ * value to the temporary is inserted, and the phi itself becomes a copy from the temporary. The
+ * copies on an edge only write temporaries and the phis are only written after all of them were
+ * read, so phis that read each other (swapped values) and versions of a variable that are still
+ * live on another edge (lost copies) stay correct without splitting critical edges.
+ */
+public final class SSADestruction implements Pass {
+  @Override
+  public String getName() {
+    return "ssa-destruction";
+  }
+
+  @Override
+  public int run(Program p, Function f) {
+    ControlFlowGraph cfg = f.getControlFlowGraph();
+    Map<Instruction, Instruction> replacements = new HashMap<>();
+
+    for (BasicBlock block : cfg.getBlocks()) {
+      List<PhiInst> phis = new ArrayList<>();
+      for (Instruction inst : block.getInstructions()) {
+        if (!(inst instanceof PhiInst))
+          break;
+        phis.add((PhiInst) inst);
+      }
+      if (phis.isEmpty())
+        continue;
+
+      List<LocalVar> temps = new ArrayList<>();
+      for (PhiInst phi : phis) {
+        LocalVar temp = f.getTempVar(phi.getDstVar().getType());
+        temps.add(temp);
+        var copy = new CopyInst(phi.getDstVar(), temp);
+        copy.setNext(0, phi.getNext(0));
+        replacements.put(phi, copy);
+      }
+
+      Instruction leader = block.getFirst();
+      for (BasicBlock pred : new LinkedHashSet<>(block.getPredecessors())) {
+        Instruction last = pred.getLast();
+        for (int i = 0; i < last.numNext(); i++) {
+          if (last.getNext(i) != leader)
+            continue;
+          Instruction first = leader;
+          for (int k = phis.size() - 1; k >= 0; k--) {
+            var copy = new CopyInst(temps.get(k), incomingValue(phis.get(k), last));
+            copy.setNext(0, first);
+            first = copy;
+          }
+          last.setNext(i, first);
+        }
+      }
+    }
+    f.replaceInstructions(replacements);
+    return replacements.size();
+  }
+
+  private static Value incomingValue(PhiInst phi, Instruction predecessor) {
+    for (int i = 0; i < phi.numIncoming(); i++) {
+      if (phi.getPredecessor(i) == predecessor)
+        return phi.getIncomingValue(i);
+    }
+    throw new IllegalStateException("phi has no value for a predecessor of its block");
+  }
+}
@@ -5,6 +5,9 @@ import crux.frontend.ast.traversal.DefaultNodeVisitor;
 import crux.frontend.types.TypeChecker;
 
 import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 import java.util.stream.Collectors;
 
 public final class ASTPrinter {
@@ -26,13 +29,24 @@ public final class ASTPrinter {
   }
 
   public void print(Node node) {
-    node.accept(printer);
-
-    ++level;
-    for (var child : node.getChildren()) {
-      print(child);
+    // The AST is as deep as the program, so it is walked with an explicit stack.
+    int start = level;
+    Deque<Node> nodes = new ArrayDeque<>();
+    Deque<Integer> levels = new ArrayDeque<>();
+    nodes.push(node);
+    levels.push(start);
+    while (!nodes.isEmpty()) {
+      Node next = nodes.pop();
+      level = levels.pop();
+      next.accept(printer);
+
+      List<Node> children = next.getChildren();
+      for (int i = children.size() - 1; i >= 0; i--) {
+        nodes.push(children.get(i));
+        levels.push(level + 1);
+      }
     }
-    --level;
+    level = start;
   }
 
   private final class PrinterVisitor extends DefaultNodeVisitor<Void> {
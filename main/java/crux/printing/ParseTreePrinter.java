@@ -4,6 +4,8 @@ import crux.frontend.pt.CruxParser;
 import org.antlr.v4.runtime.ParserRuleContext;
 
 import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 public final class ParseTreePrinter {
   private static final String indent = "  ";
@@ -16,16 +18,27 @@ public final class ParseTreePrinter {
   }
 
   public void print(ParserRuleContext ctx) {
-    var ruleName = CruxParser.ruleNames[ctx.getRuleIndex()];
-    stdout.printf("%s%s%n", indent.repeat(level), ruleName);
+    // The parse tree is as deep as the program, so it is walked with an explicit stack.
+    int start = level;
+    Deque<ParserRuleContext> contexts = new ArrayDeque<>();
+    Deque<Integer> levels = new ArrayDeque<>();
+    contexts.push(ctx);
+    levels.push(start);
+    while (!contexts.isEmpty()) {
+      ParserRuleContext next = contexts.pop();
+      level = levels.pop();
+      var ruleName = CruxParser.ruleNames[next.getRuleIndex()];
+      stdout.printf("%s%s%n", indent.repeat(level), ruleName);
 
-    if (ctx.children != null) {
-      ++level;
-      for (var child : ctx.children) {
-        if (child instanceof ParserRuleContext)
-          print((ParserRuleContext) child);
+      if (next.children != null) {
+        for (int i = next.children.size() - 1; i >= 0; i--) {
+          if (next.children.get(i) instanceof ParserRuleContext) {
+            contexts.push((ParserRuleContext) next.children.get(i));
+            levels.push(level + 1);
+          }
+        }
       }
-      --level;
     }
+    level = start;
   }
 }